@@ -0,0 +1,150 @@
+package ch.epfl.alpano.bench;
+
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+import static java.lang.Math.toRadians;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+
+/**
+ * Benchmarks of the reading of the samples of a hgt file, and of the
+ * elevations and slopes interpolated from them
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DEMBenchmark {
+
+    private static final int POINTS = 4096;
+    private static final int LONGITUDE = 7;
+    private static final int LATITUDE = 46;
+
+    private File directory;
+    private HgtDiscreteElevationModel hgt;
+    private ContinuousElevationModel cem;
+
+    private final int[] xs = new int[POINTS];
+    private final int[] ys = new int[POINTS];
+    private final double[] longitudes = new double[POINTS];
+    private final double[] latitudes = new double[POINTS];
+    private final double[] block = new double[9];
+    private final double[] elevationAndSlope = new double[2];
+    private final double[] samples = new double[9];
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("alpano-bench").toFile();
+        hgt = new HgtDiscreteElevationModel(
+                SyntheticDEM.writeHgtFile(directory, LONGITUDE, LATITUDE));
+        cem = new ContinuousElevationModel(hgt);
+
+        // points spread over the whole tile, far enough from its borders for
+        // the 3x3 blocks
+        Random random = new Random(2017);
+        for (int i = 0; i < POINTS; ++i) {
+            xs[i] = LONGITUDE * SAMPLES_PER_DEGREE
+                    + random.nextInt(SAMPLES_PER_DEGREE - 2);
+            ys[i] = LATITUDE * SAMPLES_PER_DEGREE
+                    + random.nextInt(SAMPLES_PER_DEGREE - 2);
+            longitudes[i] = toRadians(LONGITUDE + random.nextDouble() * 0.99);
+            latitudes[i] = toRadians(LATITUDE + random.nextDouble() * 0.99);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        hgt.close();
+        for (File file : directory.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void hgtElevationSample(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; ++i) {
+            blackhole.consume(hgt.elevationSample(xs[i], ys[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void hgtElevationSamples3x3(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; ++i) {
+            hgt.elevationSamples(xs[i], ys[i], 3, 3, block);
+            blackhole.consume(block);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void elevationAt(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; ++i) {
+            blackhole.consume(cem.elevationAt(longitudes[i], latitudes[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void elevationAtWithSamples(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; ++i) {
+            blackhole.consume(
+                    cem.elevationAt(longitudes[i], latitudes[i], samples));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void slopeAt(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; ++i) {
+            blackhole.consume(cem.slopeAt(longitudes[i], latitudes[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void elevationAndSlopeAt(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; ++i) {
+            cem.elevationAndSlopeAt(longitudes[i], latitudes[i],
+                    elevationAndSlope);
+            blackhole.consume(elevationAndSlope);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void elevationAndSlopeAtWithSamples(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; ++i) {
+            cem.elevationAndSlopeAt(longitudes[i], latitudes[i],
+                    elevationAndSlope, samples);
+            blackhole.consume(elevationAndSlope);
+        }
+    }
+}
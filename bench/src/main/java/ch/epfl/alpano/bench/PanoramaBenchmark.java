@@ -0,0 +1,73 @@
+package ch.epfl.alpano.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.ElevationPyramid;
+
+/**
+ * Benchmarks of the computation of the predefined panoramas, on a synthetic
+ * DEM covering the same area as the hgt files of the application
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PanoramaBenchmark {
+
+    @Param({ "NIESEN", "JURA_ALPS", "MOUNT_RACINE", "FINSTERAARHORN",
+            "SAUVABELIN_TOUR", "PELICAN_BEACH" })
+    public String panorama;
+
+    @Param({ "true", "false" })
+    public boolean pyramid;
+
+    private PanoramaParameters parameters;
+    private PanoramaComputer sequential;
+    private PanoramaComputer parallel;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        parameters = Panoramas.predefined(panorama).panoramaParameters();
+
+        DiscreteElevationModel dem = new SyntheticDEM(SyntheticDEM.ALPS);
+        ContinuousElevationModel cem = new ContinuousElevationModel(dem);
+        if (pyramid) {
+            cem = cem.withPyramid(new ElevationPyramid(dem));
+        }
+        sequential = new PanoramaComputer(cem);
+        parallel = new PanoramaComputer(cem, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public Panorama computePanoramaSequentially() {
+        return sequential.computePanorama(parameters);
+    }
+
+    @Benchmark
+    public Panorama computePanoramaInParallel() {
+        return parallel.computePanorama(parameters);
+    }
+}
@@ -0,0 +1,85 @@
+package ch.epfl.alpano.bench;
+
+import static java.lang.Math.toRadians;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.gui.ChannelPainter;
+import ch.epfl.alpano.gui.ImagePainter;
+import ch.epfl.alpano.gui.PanoramaUserParameters;
+import ch.epfl.alpano.gui.PredefinedPanoramas;
+import ch.epfl.alpano.summit.Summit;
+
+/**
+ * Helpers shared by the benchmarks
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+final class Panoramas {
+    private Panoramas() {
+    }
+
+    /**
+     * Gives a predefined panorama given its name
+     *
+     * @param name
+     *            the name of the constant of PredefinedPanoramas
+     * @return the parameters of the panorama
+     * @throws ReflectiveOperationException
+     *             if there is no such panorama
+     */
+    static PanoramaUserParameters predefined(String name)
+            throws ReflectiveOperationException {
+        return (PanoramaUserParameters) PredefinedPanoramas.class
+                .getField(name).get(null);
+    }
+
+    /**
+     * Gives summits spread randomly over the Alps, on the surface of a dem
+     *
+     * @param cem
+     *            the dem
+     * @param count
+     *            the number of summits
+     * @return the summits
+     */
+    static List<Summit> summits(ContinuousElevationModel cem, int count) {
+        Random random = new Random(2017);
+        List<Summit> summits = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            GeoPoint position = new GeoPoint(
+                    toRadians(6 + 4 * random.nextDouble()),
+                    toRadians(45 + 2 * random.nextDouble()));
+            summits.add(new Summit("SUMMIT " + i, position,
+                    (int) cem.elevationAt(position)));
+        }
+        return summits;
+    }
+
+    /**
+     * Gives the painter used by the application to draw a panorama
+     *
+     * @param panorama
+     *            the panorama
+     * @return the painter
+     */
+    static ImagePainter painter(Panorama panorama) {
+        ChannelPainter dist = ChannelPainter.distance(panorama);
+        ChannelPainter hue = dist.div(100_000).cycle().mul(360);
+        ChannelPainter s = dist.div(200_000).clamp().invert();
+
+        ChannelPainter slo = ChannelPainter.slope(panorama);
+        ChannelPainter b = slo.mul(2).div((float) Math.PI).invert().mul(0.7f)
+                .add(0.3f);
+        ChannelPainter o = dist
+                .map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
+
+        return ImagePainter.hsb(hue, s, b, o);
+    }
+}
@@ -0,0 +1,95 @@
+package ch.epfl.alpano.bench;
+
+import static java.lang.Math.toRadians;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+
+/**
+ * Benchmarks of the construction of an elevation profile, and of the search
+ * of the intersection of a ray with it
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileBenchmark {
+
+    private static final double INTERVAL = 64;
+    private static final double SMALL_INTERVAL = 4;
+    private static final int OBSERVER_ELEVATION = 2000;
+
+    @Param({ "100000", "300000" })
+    public int length;
+
+    private ContinuousElevationModel cem;
+    private GeoPoint observer;
+    private DoubleUnaryOperator ray;
+    private DoubleUnaryOperator rayWithSamples;
+    private double root;
+
+    @Setup
+    public void setup() {
+        cem = new ContinuousElevationModel(
+                new SyntheticDEM(SyntheticDEM.ALPS));
+        observer = new GeoPoint(toRadians(7.5), toRadians(46));
+
+        // a horizontal ray, which meets the terrain after a few waves
+        ray = PanoramaComputer.rayToGroundDistance(newProfile(),
+                OBSERVER_ELEVATION, 0);
+        rayWithSamples = PanoramaComputer.rayToGroundDistance(newProfile(),
+                OBSERVER_ELEVATION, 0, new double[4]);
+        root = Math2.firstIntervalContainingRoot(ray, 0, length, INTERVAL);
+        if (root == Double.POSITIVE_INFINITY) {
+            throw new IllegalStateException("the ray does not meet the terrain");
+        }
+    }
+
+    private ElevationProfile newProfile() {
+        return new ElevationProfile(cem, observer, toRadians(45), length);
+    }
+
+    @Benchmark
+    public ElevationProfile newElevationProfile() {
+        return newProfile();
+    }
+
+    @Benchmark
+    public double firstIntervalContainingRoot() {
+        return Math2.firstIntervalContainingRoot(ray, 0, length, INTERVAL);
+    }
+
+    @Benchmark
+    public double firstIntervalContainingRootWithSamples() {
+        return Math2.firstIntervalContainingRoot(rayWithSamples, 0, length,
+                INTERVAL);
+    }
+
+    @Benchmark
+    public double improveRoot() {
+        return Math2.improveRoot(ray, root, root + INTERVAL, SMALL_INTERVAL);
+    }
+}
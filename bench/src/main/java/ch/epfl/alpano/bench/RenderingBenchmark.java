@@ -0,0 +1,88 @@
+package ch.epfl.alpano.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.ElevationPyramid;
+import ch.epfl.alpano.gui.ImagePainter;
+import ch.epfl.alpano.gui.Labelizer;
+import ch.epfl.alpano.gui.PanoramaRenderer;
+import ch.epfl.alpano.gui.PanoramaUserParameters;
+import ch.epfl.alpano.gui.PredefinedPanoramas;
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+
+/**
+ * Benchmarks of what follows the computation of a panorama in the
+ * application: the labels of the summits and the image
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Dglass.platform=Monocle",
+        "-Dmonocle.platform=Headless", "-Dprism.order=sw" })
+public class RenderingBenchmark {
+
+    private static final int SUMMITS = 2000;
+
+    private PanoramaParameters displayParameters;
+    private Labelizer labelizer;
+    private Panorama panorama;
+    private ImagePainter painter;
+
+    @Setup
+    public void setup() {
+        PanoramaUserParameters parameters = PredefinedPanoramas.NIESEN;
+        displayParameters = parameters.panoramaDisplayParameters();
+
+        DiscreteElevationModel dem = new SyntheticDEM(SyntheticDEM.ALPS);
+        ContinuousElevationModel cem = new ContinuousElevationModel(dem)
+                .withPyramid(new ElevationPyramid(dem));
+
+        labelizer = new Labelizer(cem, Panoramas.summits(cem, SUMMITS));
+        panorama = new PanoramaComputer(cem)
+                .computePanorama(parameters.panoramaParameters());
+        painter = Panoramas.painter(panorama);
+    }
+
+    @Benchmark
+    public List<Node> labels() {
+        return labelizer.labels(displayParameters);
+    }
+
+    @Benchmark
+    public List<Node> labelsFromPanorama() {
+        return labelizer.labels(displayParameters, panorama);
+    }
+
+    @Benchmark
+    public Image renderPanorama() {
+        return PanoramaRenderer.renderPanorama(panorama, painter);
+    }
+
+    @Benchmark
+    public Image renderPanoramaInParallel() {
+        return PanoramaRenderer.renderPanoramaInParallel(panorama, painter);
+    }
+}
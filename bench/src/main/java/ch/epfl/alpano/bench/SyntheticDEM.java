@@ -0,0 +1,113 @@
+package ch.epfl.alpano.bench;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+
+/**
+ * Class that represents a DEM made of waves of two periods, looking like a
+ * mountain range, used to run the benchmarks without the hgt files
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+public final class SyntheticDEM implements DiscreteElevationModel {
+
+    /**
+     * The extent of the hgt files used by the application, around the Alps
+     */
+    public static final Interval2D ALPS = new Interval2D(
+            new Interval1D(6 * SAMPLES_PER_DEGREE, 10 * SAMPLES_PER_DEGREE),
+            new Interval1D(45 * SAMPLES_PER_DEGREE, 47 * SAMPLES_PER_DEGREE));
+
+    private static final double LONG_PERIOD = 1200;
+    private static final double SHORT_PERIOD = 150;
+    private static final double LONG_HEIGHT = 3000;
+    private static final double SHORT_HEIGHT = 600;
+
+    private final Interval2D extent;
+
+    /**
+     * Construct a synthetic DEM
+     *
+     * @param extent
+     *            the extent of the DEM
+     */
+    public SyntheticDEM(Interval2D extent) {
+        this.extent = extent;
+    }
+
+    @Override
+    public Interval2D extent() {
+        return extent;
+    }
+
+    @Override
+    public double elevationSample(int x, int y) {
+        return elevation(x, y);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static double elevation(int x, int y) {
+        double xl = 2 * PI * x / LONG_PERIOD;
+        double yl = 2 * PI * y / LONG_PERIOD;
+        double xs = 2 * PI * x / SHORT_PERIOD;
+        double ys = 2 * PI * y / SHORT_PERIOD;
+        return (1 + sin(xl) * cos(yl)) / 2 * LONG_HEIGHT
+                + (1 + sin(xs) * cos(ys)) / 2 * SHORT_HEIGHT;
+    }
+
+    /**
+     * Writes the hgt file of a one degree tile of the synthetic DEM
+     *
+     * @param directory
+     *            the directory in which the file is written
+     * @param longitude
+     *            the longitude of the south-west corner of the tile, in
+     *            degrees (positive)
+     * @param latitude
+     *            the latitude of the south-west corner of the tile, in degrees
+     *            (positive)
+     * @return the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static File writeHgtFile(File directory, int longitude,
+            int latitude) throws IOException {
+        File file = new File(directory, String.format((Locale) null,
+                "N%02dE%03d.hgt", latitude, longitude));
+        int size = SAMPLES_PER_DEGREE + 1;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ShortBuffer samples = channel
+                    .map(MapMode.READ_WRITE, 0, 2L * size * size)
+                    .asShortBuffer();
+            // the rows of a hgt file go from north to south
+            for (int row = 0; row < size; ++row) {
+                int y = (latitude + 1) * SAMPLES_PER_DEGREE - row;
+                for (int i = 0; i < size; ++i) {
+                    samples.put((short) elevation(
+                            longitude * SAMPLES_PER_DEGREE + i, y));
+                }
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,390 @@
+package ch.epfl.alpano;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import ch.epfl.alpano.Panorama.Channel;
+
+/**
+ * Class that stores the samples of a channel of a panorama, by linear index,
+ * either as floats or in a compact form of 16 bits per sample which is
+ * decoded when read.
+ * <p>
+ * In the compact form, the distance stays a float. The longitude and the
+ * latitude are quantized over the area within the maximal distance of the
+ * observer, in 65535 steps, so that the error is at most of half a step,
+ * i.e. of the maximal distance divided by 65534 (about 9 m for 600 km). The
+ * error is larger for the longitude far from the equator, the meridians
+ * getting closer. The longitude is stored relative to the one of the
+ * observer, so that the area may cross the antimeridian, and read back in
+ * [-π, π[ like the longitudes of the elevation profiles. The elevation is
+ * quantized by steps of 0.25 m from -1000 m to 15383.5 m, with an error of
+ * at most 0.125 m. In both cases, 0 (the value of the samples not set) is
+ * stored exactly and values out of the range are clamped. The slope is
+ * stored as a half-precision float, with a relative error of at most 2^-11
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see Panorama.Builder#Builder(PanoramaParameters, java.util.Set, boolean)
+ */
+abstract class ChannelStorage {
+
+    // the code 0 is the one of 0, the others are the steps of the range
+    private static final int MAX_CODE = 0xFFFF;
+    private static final double MIN_ELEVATION = -1000;
+    private static final double ELEVATION_STEP = 0.25;
+
+    /**
+     * Allocates the storage of a channel in the heap, all its samples being
+     * 0
+     *
+     * @param channel
+     *            the channel
+     * @param parameters
+     *            the parameters of the panorama
+     * @param compact
+     *            true to store the samples in the compact form
+     * @return the storage
+     */
+    static ChannelStorage allocate(Channel channel,
+            PanoramaParameters parameters, boolean compact) {
+        int length = parameters.width() * parameters.height();
+        if (isCompact(channel, compact)) {
+            return compact(channel, parameters,
+                    ShortBuffer.wrap(new short[length]));
+        }
+        return new Floats(FloatBuffer.wrap(new float[length]));
+    }
+
+    /**
+     * Stores the samples of a channel in bytes, for instance mapped in
+     * memory, whose order must already be set
+     *
+     * @param channel
+     *            the channel
+     * @param parameters
+     *            the parameters of the panorama
+     * @param compact
+     *            true if the samples are in the compact form
+     * @param bytes
+     *            the bytes, of the length given by
+     *            {@link #bytesPerSample(Channel, boolean)}
+     * @return the storage
+     */
+    static ChannelStorage wrap(Channel channel, PanoramaParameters parameters,
+            boolean compact, ByteBuffer bytes) {
+        if (isCompact(channel, compact)) {
+            return compact(channel, parameters, bytes.asShortBuffer());
+        }
+        return new Floats(bytes.asFloatBuffer());
+    }
+
+    /**
+     * Gives the number of bytes of a sample of a channel
+     *
+     * @param channel
+     *            the channel
+     * @param compact
+     *            true if the samples are in the compact form
+     * @return the number of bytes
+     */
+    static int bytesPerSample(Channel channel, boolean compact) {
+        return isCompact(channel, compact) ? Short.BYTES : Float.BYTES;
+    }
+
+    private static boolean isCompact(Channel channel, boolean compact) {
+        return compact && channel != Channel.DISTANCE;
+    }
+
+    private static ChannelStorage compact(Channel channel,
+            PanoramaParameters parameters, ShortBuffer codes) {
+        GeoPoint observer = parameters.observerPosition();
+        double radius = Distance.toRadians(parameters.maxDistance());
+        switch (channel) {
+        case LONGITUDE:
+            // the meridians get closer with the latitude, as in
+            // PanoramaComputer#prefetch
+            double maxAbsLatitude = min(PI / 2,
+                    abs(observer.latitude()) + radius);
+            double longitudeRadius = maxAbsLatitude >= PI / 2 ? PI
+                    : min(PI, radius / cos(maxAbsLatitude));
+            return new FixedPoint(codes, observer.longitude(),
+                    -longitudeRadius, longitudeRadius);
+        case LATITUDE:
+            return new FixedPoint(codes,
+                    max(-PI / 2, observer.latitude() - radius),
+                    min(PI / 2, observer.latitude() + radius));
+        case ELEVATION:
+            return new FixedPoint(codes, MIN_ELEVATION,
+                    MIN_ELEVATION + (MAX_CODE - 1) * ELEVATION_STEP);
+        default:
+            // the slope
+            return new HalfFloats(codes);
+        }
+    }
+
+    /**
+     * The number of samples
+     *
+     * @return the number of samples
+     */
+    abstract int length();
+
+    /**
+     * The sample of a linear index, decoded
+     *
+     * @param index
+     *            the linear index
+     * @return the sample
+     */
+    abstract float get(int index);
+
+    /**
+     * Stores a sample, encoded
+     *
+     * @param index
+     *            the linear index
+     * @param value
+     *            the sample
+     */
+    abstract void put(int index, float value);
+
+    /**
+     * The number of bytes of a sample
+     *
+     * @return the number of bytes
+     * @see #bitsAt(int)
+     */
+    abstract int bytesPerSample();
+
+    /**
+     * The encoded sample of a linear index, i.e. the bits stored, on the
+     * number of bytes of a sample
+     *
+     * @param index
+     *            the linear index
+     * @return the bits
+     */
+    abstract int bitsAt(int index);
+
+    /**
+     * Stores an encoded sample
+     *
+     * @param index
+     *            the linear index
+     * @param bits
+     *            the bits, as given by {@link #bitsAt(int)}
+     */
+    abstract void putBits(int index, int bits);
+
+    /**
+     * Gives the half-precision float closest to a float, the ties being
+     * rounded to the even one
+     *
+     * @param value
+     *            the float
+     * @return the bits of the half-precision float
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = bits >>> 16 & 0x8000;
+        int abs = bits & 0x7FFFFFFF;
+
+        // infinity and NaN, then the values too large
+        if (abs >= 0x7F800000) {
+            return (short) (sign | 0x7C00 | (abs > 0x7F800000 ? 0x200 : 0));
+        }
+        if (abs >= 0x47800000) {
+            return (short) (sign | 0x7C00);
+        }
+        // the subnormal ones, by steps of 2^-24
+        if (abs < 0x38800000) {
+            return (short) (sign
+                    | (int) Math.rint(Float.intBitsToFloat(abs) * 0x1p24f));
+        }
+
+        int half = (abs >>> 23) - 112 << 10 | (abs & 0x7FFFFF) >>> 13;
+        int rest = abs & 0x1FFF;
+        // a carry of the mantissa increments the exponent, possibly to the
+        // one of infinity
+        if (rest > 0x1000 || rest == 0x1000 && (half & 1) != 0) {
+            ++half;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * Gives the float of a half-precision float
+     *
+     * @param half
+     *            the bits of the half-precision float
+     * @return the float, which is exact
+     */
+    static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = half >>> 10 & 0x1F;
+        int mantissa = half & 0x3FF;
+
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | mantissa << 13);
+        }
+        if (exponent == 0) {
+            float subnormal = mantissa * 0x1p-24f;
+            return sign == 0 ? subnormal : -subnormal;
+        }
+        return Float.intBitsToFloat(
+                sign | exponent + 112 << 23 | mantissa << 13);
+    }
+
+    private static final class Floats extends ChannelStorage {
+        private final FloatBuffer samples;
+
+        Floats(FloatBuffer samples) {
+            this.samples = samples;
+        }
+
+        @Override
+        int length() {
+            return samples.capacity();
+        }
+
+        @Override
+        float get(int index) {
+            return samples.get(index);
+        }
+
+        @Override
+        void put(int index, float value) {
+            samples.put(index, value);
+        }
+
+        @Override
+        int bytesPerSample() {
+            return Float.BYTES;
+        }
+
+        @Override
+        int bitsAt(int index) {
+            return Float.floatToRawIntBits(samples.get(index));
+        }
+
+        @Override
+        void putBits(int index, int bits) {
+            samples.put(index, Float.intBitsToFloat(bits));
+        }
+    }
+
+    private static final class HalfFloats extends ChannelStorage {
+        private final ShortBuffer codes;
+
+        HalfFloats(ShortBuffer codes) {
+            this.codes = codes;
+        }
+
+        @Override
+        int length() {
+            return codes.capacity();
+        }
+
+        @Override
+        float get(int index) {
+            return fromHalf(codes.get(index));
+        }
+
+        @Override
+        void put(int index, float value) {
+            codes.put(index, toHalf(value));
+        }
+
+        @Override
+        int bytesPerSample() {
+            return Short.BYTES;
+        }
+
+        @Override
+        int bitsAt(int index) {
+            return codes.get(index) & 0xFFFF;
+        }
+
+        @Override
+        void putBits(int index, int bits) {
+            codes.put(index, (short) bits);
+        }
+    }
+
+    // the code 0 is the one of 0, the code c > 0 the one of
+    // min + (c - 1) * step
+    private static final class FixedPoint extends ChannelStorage {
+        private final ShortBuffer codes;
+        // NaN if the values are not angles stored relative to an origin
+        private final double origin;
+        private final double min;
+        private final double step;
+
+        FixedPoint(ShortBuffer codes, double min, double max) {
+            this(codes, Double.NaN, min, max);
+        }
+
+        // the angles are stored as their angular distance to the origin, in
+        // [min, max]
+        FixedPoint(ShortBuffer codes, double origin, double min, double max) {
+            this.codes = codes;
+            this.origin = origin;
+            this.min = min;
+            this.step = (max - min) / (MAX_CODE - 1);
+        }
+
+        @Override
+        int length() {
+            return codes.capacity();
+        }
+
+        @Override
+        float get(int index) {
+            int code = codes.get(index) & 0xFFFF;
+            if (code == 0) {
+                return 0;
+            }
+            double value = min + (code - 1) * step;
+            return (float) (Double.isNaN(origin) ? value
+                    : Math2.angularDistance(0, origin + value));
+        }
+
+        @Override
+        void put(int index, float value) {
+            if (value == 0) {
+                codes.put(index, (short) 0);
+            } else {
+                double relative = Double.isNaN(origin) ? value
+                        : Math2.angularDistance(origin, value);
+                // NaN is clamped to the minimum
+                long steps = Math.round((relative - min) / step);
+                int code = (int) max(0, min(MAX_CODE - 1, steps)) + 1;
+                codes.put(index, (short) code);
+            }
+        }
+
+        @Override
+        int bytesPerSample() {
+            return Short.BYTES;
+        }
+
+        @Override
+        int bitsAt(int index) {
+            return codes.get(index) & 0xFFFF;
+        }
+
+        @Override
+        void putBits(int index, int bits) {
+            codes.put(index, (short) bits);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.alpano.ChannelStorage.fromHalf;
+import static ch.epfl.alpano.ChannelStorage.toHalf;
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Panorama.Channel;
+
+public class ChannelStorageTest {
+    @Test
+    public void everyHalfIsReadBackIdentical() {
+        for (int h = 0; h <= 0xFFFF; ++h) {
+            float f = fromHalf((short) h);
+            if (Float.isNaN(f)) {
+                assertTrue(Float.isNaN(fromHalf(toHalf(f))));
+            } else {
+                assertEquals(h, toHalf(f) & 0xFFFF);
+            }
+        }
+    }
+
+    @Test
+    public void toHalfWorksOnKnownValues() {
+        assertEquals(0x0000, toHalf(0f) & 0xFFFF);
+        assertEquals(0x8000, toHalf(-0f) & 0xFFFF);
+        assertEquals(0x3C00, toHalf(1f) & 0xFFFF);
+        assertEquals(0xC000, toHalf(-2f) & 0xFFFF);
+        assertEquals(0x7BFF, toHalf(65504f) & 0xFFFF);
+        assertEquals(0x7C00, toHalf(65520f) & 0xFFFF);
+        assertEquals(0x7C00, toHalf(Float.POSITIVE_INFINITY) & 0xFFFF);
+        assertEquals(0x0001, toHalf(0x1p-24f) & 0xFFFF);
+        assertEquals(0x0400, toHalf(0x1p-14f) & 0xFFFF);
+        assertTrue(Float.isNaN(fromHalf(toHalf(Float.NaN))));
+    }
+
+    @Test
+    public void toHalfRoundsTiesToEven() {
+        // halfway between 0 and the smallest subnormal, then between 1 and
+        // its successor, then between the successor and the next one
+        assertEquals(0x0000, toHalf(0x1p-25f) & 0xFFFF);
+        assertEquals(0x3C00, toHalf(1 + 0x1p-11f) & 0xFFFF);
+        assertEquals(0x3C02, toHalf(1 + 3 * 0x1p-11f) & 0xFFFF);
+    }
+
+    @Test
+    public void toHalfHasASmallRelativeError() {
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            // a normal half, whose absolute value is in [2^-14, 2^15[
+            float f = (1 + rng.nextFloat()) * (float) Math.pow(2, rng.nextInt(29) - 14);
+            f = rng.nextBoolean() ? f : -f;
+            float h = fromHalf(toHalf(f));
+            assertEquals(f, h, Math.abs(f) * 0x1p-11f);
+        }
+    }
+
+    @Test
+    public void compactLongitudesCrossTheAntimeridian() {
+        int maxDistance = 100_000;
+        for (double observerLongitude : new double[] { 179.9, -179.9 }) {
+            PanoramaParameters ps = new PanoramaParameters(
+                    new GeoPoint(Math.toRadians(observerLongitude), 0), 1000,
+                    0, Math.PI, maxDistance, 10, 10);
+            ChannelStorage longitudes = ChannelStorage.allocate(Channel.LONGITUDE, ps, true);
+            // half a step of the range of the longitudes around the observer
+            double maxError = Distance.toRadians(maxDistance) / 65534 + 1e-6;
+            Random rng = newRandom();
+            for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+                // a longitude within 0.8° of the observer, on either side of the
+                // antimeridian, in [-π, π[
+                double l = Math2.angularDistance(0, Math.toRadians(observerLongitude + (rng.nextDouble() - 0.5) * 1.6));
+                longitudes.put(0, (float) l);
+                float read = longitudes.get(0);
+                assertTrue(-Math.PI <= read && read <= Math.PI);
+                assertEquals(0, Math2.angularDistance(l, read), maxError);
+            }
+        }
+    }
+}
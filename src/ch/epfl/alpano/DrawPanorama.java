@@ -1,23 +1,18 @@
 package ch.epfl.alpano;
 
-import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
-
-import javax.imageio.ImageIO;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.gui.ArgbPainter;
 import ch.epfl.alpano.gui.ChannelPainter;
-import ch.epfl.alpano.gui.ImagePainter;
-import ch.epfl.alpano.gui.PanoramaRenderer;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.Image;
+import ch.epfl.alpano.gui.PanoramaExporter;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
 import static java.lang.Math.toRadians;
-import static java.awt.image.BufferedImage.TYPE_INT_RGB;
 
 final class DrawPanorama {
     final static File HGT_FILE = new File("N46E007.hgt");
@@ -50,59 +45,20 @@ final class DrawPanorama {
         Panorama p = new PanoramaComputer(cDEM)
           .computePanorama(PARAMS);
 
-        /*
-        BufferedImage i =
-          new BufferedImage(IMAGE_WIDTH,
-                            IMAGE_HEIGHT,
-                            TYPE_INT_RGB);
-
-        for (int x = 0; x < IMAGE_WIDTH; ++x) {
-          for (int y = 0; y < IMAGE_HEIGHT; ++y) {
-            float d = p.distanceAt(x, y);
-            int c = (d == Float.POSITIVE_INFINITY)
-              ? 0x87_CE_EB
-              : gray((d - 2_000) / 15_000);
-            i.setRGB(x, y, c);
-          }
-        }
-
-        ImageIO.write(i, "png", new File("niesen.png"));*/
-        
-        /*
-        ChannelPainter gray =
-                ChannelPainter.maxDistanceToNeighbors(p)
-                .sub(500)
-                .div(4500)
-                .clamp()
-                .invert();
-
-              ChannelPainter distance = p::distanceAt;
-              ChannelPainter opacity =
-                distance.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
-
-              ImagePainter l = ImagePainter.gray(gray, opacity);
-
-              Image i = PanoramaRenderer.renderPanorama(p, l);
-              ImageIO.write(SwingFXUtils.fromFXImage(i, null),
-                            "png",
-                            new File("niesen-profile.png"));*/
-        ChannelPainter dist = p::distanceAt;
+        ChannelPainter dist = ChannelPainter.distance(p);
         ChannelPainter hue = dist.div(100000).cycle().mul(360);
         ChannelPainter s = dist.div(200000).clamp().invert();
-        ChannelPainter slo = p::slopeAt;
+        ChannelPainter slo = ChannelPainter.slope(p);
         ChannelPainter b = slo.mul(2).div((float) Math.PI).invert().mul(0.7f).add(0.3f);
-        ChannelPainter o = (x,y) -> dist.valueAt(x, y) == Float.POSITIVE_INFINITY ? 0 : 1; 
-           
-        ImagePainter l = ImagePainter.hsb(hue, s, b, o);
-        Image i = PanoramaRenderer.renderPanorama(p, l);
-        ImageIO.write(SwingFXUtils.fromFXImage(i, null), "png", new File("niesen-color.png"));
+        ChannelPainter o = dist.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
+
+        // written without JavaFX, row by row
+        ArgbPainter l = ArgbPainter.hsb(hue, s, b, o);
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream("niesen-color.png"))) {
+          PanoramaExporter.writePng(p, l, out);
+        }
         
       }
     }
-    
-    private static int gray(double v) {
-        double clampedV = max(0, min(v, 1));
-        int gray = (int) (255.9999 * clampedV);
-        return (gray << 16) | (gray << 8) | gray;
-      }
   }
@@ -1,30 +1,120 @@
 package ch.epfl.alpano;
 
-import java.util.Arrays;
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
- * Represent a panorama
+ * Represent a panorama. Its samples are stored in the heap, or out of it in
+ * a file mapped in memory, as floats or in a compact form which is decoded
+ * by the accessors. Only some of its channels may be stored, the others
+ * cannot be read
  * 
  * @author Mathieu Chevalley (274698)
  * @author Louis Amaudruz (271808)
  */
 public final class Panorama {
 
+    /**
+     * Enumeration of the channels of the samples of a panorama, in the order
+     * in which they are stored
+     * 
+     * @author Mathieu Chevalley (274698)
+     * @author Louis Amaudruz (271808)
+     */
+    public enum Channel {
+        DISTANCE, LONGITUDE, LATITUDE, ELEVATION, SLOPE;
+    }
+
+    // the number of channels of the samples
+    static final int CHANNELS = Channel.values().length;
+
     private final PanoramaParameters panoramaParameters;
-    private final float[] distance;
-    private final float[] longitude;
-    private final float[] latitude;
-    private final float[] elevation;
-    private final float[] slope;
-
-    private Panorama(PanoramaParameters pano, float[] dist, float[] longi,
-            float[] lati, float[] eleva, float[] slo) {
+    private final Set<Channel> channels;
+    private final boolean compact;
+    // the samples of each channel, by ordinal, null if it is not stored
+    private final ChannelStorage[] samples;
+
+    private Panorama(PanoramaParameters pano, boolean compact,
+            ChannelStorage[] samples) {
         panoramaParameters = pano;
-        distance = dist;
-        longitude = longi;
-        latitude = lati;
-        elevation = eleva;
-        slope = slo;
+        this.compact = compact;
+        this.samples = samples;
+        Set<Channel> stored = EnumSet.noneOf(Channel.class);
+        for (Channel c : Channel.values()) {
+            if (samples[c.ordinal()] != null) {
+                stored.add(c);
+            }
+        }
+        channels = Collections.unmodifiableSet(stored);
+    }
+
+    /**
+     * Opens a panorama stored in a file by a builder, its samples staying out
+     * of the heap
+     * 
+     * @param file
+     *            the file of the panorama
+     * @return the panorama
+     * @throws IOException
+     *             if the file cannot be read, or is not the file of a
+     *             panorama built completely
+     * @see Builder#Builder(PanoramaParameters, File)
+     */
+    public static Panorama map(File file) throws IOException {
+        PanoramaFile panoramaFile = PanoramaFile.open(file);
+        ChannelStorage[] samples = new ChannelStorage[CHANNELS];
+        for (Channel c : panoramaFile.channels()) {
+            samples[c.ordinal()] = panoramaFile.channel(c);
+        }
+        return new Panorama(panoramaFile.parameters(),
+                panoramaFile.isCompact(), samples);
+    }
+
+    /**
+     * Gives a set of channels, which is not empty, as a mask whose bit of
+     * index the ordinal of each channel is set
+     * 
+     * @param channels
+     *            the channels
+     * @return the mask
+     * @throws IllegalArgumentException
+     *             if the set is empty
+     */
+    static int maskOf(Set<Channel> channels) {
+        checkArgument(!channels.isEmpty());
+        int mask = 0;
+        for (Channel c : channels) {
+            mask |= 1 << c.ordinal();
+        }
+        return mask;
+    }
+
+    /**
+     * Gives the set of channels of a mask
+     * 
+     * @param mask
+     *            the mask
+     * @return the channels
+     * @throws IllegalArgumentException
+     *             if the mask is not the one of a set of channels which is
+     *             not empty
+     * @see #maskOf(Set)
+     */
+    static Set<Channel> channelsOf(int mask) {
+        checkArgument(mask > 0 && mask < 1 << CHANNELS);
+        Set<Channel> channels = EnumSet.noneOf(Channel.class);
+        for (Channel c : Channel.values()) {
+            if ((mask & 1 << c.ordinal()) != 0) {
+                channels.add(c);
+            }
+        }
+        return channels;
     }
 
     /**
@@ -37,6 +127,25 @@ public final class Panorama {
         return panoramaParameters;
     }
 
+    /**
+     * Channels getter
+     * 
+     * @return the channels stored, which can be read
+     */
+    public Set<Channel> channels() {
+        return channels;
+    }
+
+    /**
+     * Tells if the samples are stored in the compact form
+     * 
+     * @return true if they are in the compact form
+     * @see Builder#Builder(PanoramaParameters, Set, boolean)
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
     /**
      * Distance at an index
      * 
@@ -47,10 +156,13 @@ public final class Panorama {
      * @return the corresponding distance
      * @throws IndexOutOfBoundsException
      *             if the index is out of the field
+     * @throws IllegalStateException
+     *             if the distance is not stored
      */
     public float distanceAt(int x, int y) {
         checkIndex(x, y);
-        return distance[parameters().linearSampleIndex(x, y)];
+        return channel(Channel.DISTANCE)
+                .get(parameters().linearSampleIndex(x, y));
     }
 
     /**
@@ -63,10 +175,13 @@ public final class Panorama {
      * @return the corresponding longitude
      * @throws IndexOutOfBoundsException
      *             if the index is out of the field
+     * @throws IllegalStateException
+     *             if the longitude is not stored
      */
     public float longitudeAt(int x, int y) {
         checkIndex(x, y);
-        return longitude[parameters().linearSampleIndex(x, y)];
+        return channel(Channel.LONGITUDE)
+                .get(parameters().linearSampleIndex(x, y));
     }
 
     /**
@@ -79,10 +194,13 @@ public final class Panorama {
      * @return the corresponding latitude
      * @throws IndexOutOfBoundsException
      *             if the index is out of the field
+     * @throws IllegalStateException
+     *             if the latitude is not stored
      */
     public float latitudeAt(int x, int y) {
         checkIndex(x, y);
-        return latitude[parameters().linearSampleIndex(x, y)];
+        return channel(Channel.LATITUDE)
+                .get(parameters().linearSampleIndex(x, y));
     }
 
     /**
@@ -95,10 +213,13 @@ public final class Panorama {
      * @return the corresponding elevation
      * @throws IndexOutOfBoundsException
      *             if the index is out of the field
+     * @throws IllegalStateException
+     *             if the elevation is not stored
      */
     public float elevationAt(int x, int y) {
         checkIndex(x, y);
-        return elevation[parameters().linearSampleIndex(x, y)];
+        return channel(Channel.ELEVATION)
+                .get(parameters().linearSampleIndex(x, y));
 
     }
 
@@ -112,10 +233,13 @@ public final class Panorama {
      * @return the corresponding slope
      * @throws IndexOutOfBoundsException
      *             if the index is out of the field
+     * @throws IllegalStateException
+     *             if the slope is not stored
      */
     public float slopeAt(int x, int y) {
         checkIndex(x, y);
-        return slope[parameters().linearSampleIndex(x, y)];
+        return channel(Channel.SLOPE)
+                .get(parameters().linearSampleIndex(x, y));
     }
 
     /**
@@ -128,14 +252,45 @@ public final class Panorama {
      * @param d
      *            the default value
      * @return the corresponding distance
+     * @throws IllegalStateException
+     *             if the distance is not stored
      */
     public float distanceAt(int x, int y, float d) {
+        ChannelStorage distance = channel(Channel.DISTANCE);
         if (parameters().isValidSampleIndex(x, y)) {
-            return distance[parameters().linearSampleIndex(x, y)];
+            return distance.get(parameters().linearSampleIndex(x, y));
         }
         return d;
     }
 
+    // writes the samples in a file, which can then be mapped
+    void writeTo(File file) throws IOException {
+        PanoramaFile panoramaFile = PanoramaFile.create(parameters(),
+                channels(), isCompact(), file);
+        for (Channel c : channels()) {
+            copyBits(channel(c), panoramaFile.channel(c));
+        }
+        panoramaFile.complete();
+    }
+
+    private static void copyBits(ChannelStorage from, ChannelStorage to) {
+        for (int i = 0; i < from.length(); ++i) {
+            to.putBits(i, from.bitsAt(i));
+        }
+    }
+
+    // the samples of a stored channel, not to be modified
+    ChannelStorage channel(Channel channel) {
+        return stored(samples[channel.ordinal()]);
+    }
+
+    private static ChannelStorage stored(ChannelStorage samples) {
+        if (samples == null) {
+            throw new IllegalStateException("channel not stored");
+        }
+        return samples;
+    }
+
     // check the indexes
     private void checkIndex(int x, int y) {
         if (!panoramaParameters.isValidSampleIndex(x, y)) {
@@ -152,15 +307,15 @@ public final class Panorama {
     public static final class Builder {
 
         private final PanoramaParameters parameters;
-        private float[] distance;
-        private float[] longitude;
-        private float[] latitude;
-        private float[] elevation;
-        private float[] slope;
+        private final Set<Channel> channels;
+        private final boolean compact;
+        private final PanoramaFile file;
+        // the samples of each channel, by ordinal, null if it is not stored
+        private ChannelStorage[] samples = new ChannelStorage[CHANNELS];
         private boolean build = false;
 
         /**
-         * Construct the builder
+         * Construct the builder of a panorama storing all the channels
          * 
          * @param parameters
          *            The parameters of the panorama
@@ -168,17 +323,191 @@ public final class Panorama {
          *             if parameters is null
          */
         public Builder(PanoramaParameters parameters) {
+            this(parameters, EnumSet.allOf(Channel.class));
+        }
 
-            this.parameters = parameters;
+        /**
+         * Construct the builder of a panorama storing some channels only, the
+         * memory of the others being saved
+         * 
+         * @param parameters
+         *            The parameters of the panorama
+         * @param channels
+         *            the channels stored
+         * @throws NullPointerException
+         *             if parameters or channels is null
+         * @throws IllegalArgumentException
+         *             if channels is empty
+         */
+        public Builder(PanoramaParameters parameters, Set<Channel> channels) {
+            this(parameters, channels, false);
+        }
 
-            int length = parameters.height() * parameters.width();
+        /**
+         * Construct the builder of a panorama storing some channels only,
+         * possibly in a compact form of 16 bits per sample for all the
+         * channels but the distance. The samples are then rounded when set:
+         * the longitude and the latitude to at most the maximal distance
+         * divided by 65534 (about 9 m for 600 km, more for the longitude far
+         * from the equator), the elevation to 0.125 m between -1000 m and
+         * 15383.5 m, and the slope to a relative error of 2^-11
+         * 
+         * @param parameters
+         *            The parameters of the panorama
+         * @param channels
+         *            the channels stored
+         * @param compact
+         *            true to store the samples in the compact form
+         * @throws NullPointerException
+         *             if parameters or channels is null
+         * @throws IllegalArgumentException
+         *             if channels is empty
+         */
+        public Builder(PanoramaParameters parameters, Set<Channel> channels,
+                boolean compact) {
 
-            distance = new float[length];
-            Arrays.fill(distance, Float.POSITIVE_INFINITY);
-            longitude = new float[length];
-            latitude = new float[length];
-            elevation = new float[length];
-            slope = new float[length];
+            this.parameters = requireNonNull(parameters);
+            this.channels = copyOf(channels);
+            this.compact = compact;
+            this.file = null;
+
+            for (Channel c : this.channels) {
+                samples[c.ordinal()] = ChannelStorage.allocate(c, parameters,
+                        compact);
+            }
+            fillDistances();
+        }
+
+        /**
+         * Construct a builder of a panorama storing all the channels, whose
+         * samples are stored out of the heap, in a file mapped in memory. The
+         * file is replaced, and can be opened again once the panorama is
+         * built
+         * 
+         * @param parameters
+         *            The parameters of the panorama
+         * @param file
+         *            the file of the panorama
+         * @throws IOException
+         *             if the file cannot be written
+         * @throws NullPointerException
+         *             if parameters or file is null
+         * @throws IllegalArgumentException
+         *             if the panorama has 2^29 samples or more
+         * @see Panorama#map(File)
+         */
+        public Builder(PanoramaParameters parameters, File file)
+                throws IOException {
+            this(parameters, EnumSet.allOf(Channel.class), file);
+        }
+
+        /**
+         * Construct a builder of a panorama storing some channels only, whose
+         * samples are stored out of the heap, in a file mapped in memory. The
+         * file is replaced, and can be opened again once the panorama is
+         * built
+         * 
+         * @param parameters
+         *            The parameters of the panorama
+         * @param channels
+         *            the channels stored
+         * @param file
+         *            the file of the panorama
+         * @throws IOException
+         *             if the file cannot be written
+         * @throws NullPointerException
+         *             if parameters, channels or file is null
+         * @throws IllegalArgumentException
+         *             if channels is empty, or if the panorama has 2^29
+         *             samples or more
+         * @see Panorama#map(File)
+         */
+        public Builder(PanoramaParameters parameters, Set<Channel> channels,
+                File file) throws IOException {
+            this(parameters, channels, false, file);
+        }
+
+        /**
+         * Construct a builder of a panorama storing some channels only,
+         * possibly in a compact form, whose samples are stored out of the
+         * heap, in a file mapped in memory. The file is replaced, and can be
+         * opened again once the panorama is built
+         * 
+         * @param parameters
+         *            The parameters of the panorama
+         * @param channels
+         *            the channels stored
+         * @param compact
+         *            true to store the samples in the compact form
+         * @param file
+         *            the file of the panorama
+         * @throws IOException
+         *             if the file cannot be written
+         * @throws NullPointerException
+         *             if parameters, channels or file is null
+         * @throws IllegalArgumentException
+         *             if channels is empty, or if the panorama has 2^29
+         *             samples or more
+         * @see #Builder(PanoramaParameters, Set, boolean)
+         * @see Panorama#map(File)
+         */
+        public Builder(PanoramaParameters parameters, Set<Channel> channels,
+                boolean compact, File file) throws IOException {
+
+            this.parameters = requireNonNull(parameters);
+            this.channels = copyOf(channels);
+            this.compact = compact;
+            this.file = PanoramaFile.create(parameters, this.channels,
+                    compact, file);
+
+            for (Channel c : this.channels) {
+                samples[c.ordinal()] = this.file.channel(c);
+            }
+            fillDistances();
+        }
+
+        private static Set<Channel> copyOf(Set<Channel> channels) {
+            checkArgument(!channels.isEmpty());
+            Set<Channel> copy = EnumSet.noneOf(Channel.class);
+            copy.addAll(channels);
+            return Collections.unmodifiableSet(copy);
+        }
+
+        // the distance of the samples not set is infinite
+        private void fillDistances() {
+            ChannelStorage distance = samples[Channel.DISTANCE.ordinal()];
+            if (distance != null) {
+                for (int i = 0; i < distance.length(); ++i) {
+                    distance.put(i, Float.POSITIVE_INFINITY);
+                }
+            }
+        }
+
+        /**
+         * Parameters getter
+         * 
+         * @return the parameters of the panorama
+         */
+        public PanoramaParameters parameters() {
+            return parameters;
+        }
+
+        /**
+         * Channels getter
+         * 
+         * @return the channels stored, which can be set
+         */
+        public Set<Channel> channels() {
+            return channels;
+        }
+
+        /**
+         * Tells if the samples are stored in the compact form
+         * 
+         * @return true if they are in the compact form
+         */
+        public boolean isCompact() {
+            return compact;
         }
 
         /**
@@ -195,11 +524,14 @@ public final class Panorama {
          *             if already built
          * @throws IndexOutOfBoundsException
          *             if the index are out of the field
+         * @throws IllegalStateException
+         *             if the distance is not stored
          */
         public Builder setDistanceAt(int x, int y, float distance) {
             requireNonBuild();
             checkIndex(x, y);
-            this.distance[parameters.linearSampleIndex(x, y)] = distance;
+            channel(Channel.DISTANCE).put(parameters.linearSampleIndex(x, y),
+                    distance);
             return this;
         }
 
@@ -217,11 +549,14 @@ public final class Panorama {
          *             if already built
          * @throws IndexOutOfBoundsException
          *             if the index are out of the field
+         * @throws IllegalStateException
+         *             if the longitude is not stored
          */
         public Builder setLongitudeAt(int x, int y, float longitude) {
             requireNonBuild();
             checkIndex(x, y);
-            this.longitude[parameters.linearSampleIndex(x, y)] = longitude;
+            channel(Channel.LONGITUDE).put(parameters.linearSampleIndex(x, y),
+                    longitude);
             return this;
         }
 
@@ -239,11 +574,14 @@ public final class Panorama {
          *             if already built
          * @throws IndexOutOfBoundsException
          *             if the index are out of the field
+         * @throws IllegalStateException
+         *             if the latitude is not stored
          */
         public Builder setLatitudeAt(int x, int y, float latitude) {
             requireNonBuild();
             checkIndex(x, y);
-            this.latitude[parameters.linearSampleIndex(x, y)] = latitude;
+            channel(Channel.LATITUDE).put(parameters.linearSampleIndex(x, y),
+                    latitude);
             return this;
         }
 
@@ -261,11 +599,14 @@ public final class Panorama {
          *             if already built
          * @throws IndexOutOfBoundsException
          *             if the index are out of the field
+         * @throws IllegalStateException
+         *             if the elevation is not stored
          */
         public Builder setElevationAt(int x, int y, float elevation) {
             requireNonBuild();
             checkIndex(x, y);
-            this.elevation[parameters.linearSampleIndex(x, y)] = elevation;
+            channel(Channel.ELEVATION).put(parameters.linearSampleIndex(x, y),
+                    elevation);
             return this;
         }
 
@@ -283,16 +624,20 @@ public final class Panorama {
          *             if already built
          * @throws IndexOutOfBoundsException
          *             if the index are out of the field
+         * @throws IllegalStateException
+         *             if the slope is not stored
          */
         public Builder setSlopeAt(int x, int y, float slope) {
             requireNonBuild();
             checkIndex(x, y);
-            this.slope[parameters.linearSampleIndex(x, y)] = slope;
+            channel(Channel.SLOPE).put(parameters.linearSampleIndex(x, y),
+                    slope);
             return this;
         }
 
         /**
-         * Build the panorama
+         * Build the panorama. If its samples are stored in a file, they are
+         * written on the disk first
          * 
          * @return the panorama
          * @throws IllegalStateException
@@ -302,15 +647,84 @@ public final class Panorama {
             requireNonBuild();
 
             build = true;
-            Panorama p = new Panorama(parameters, distance, longitude, latitude,
-                    elevation, slope);
-            distance = null;
-            longitude = null;
-            elevation = null;
-            slope = null;
+            if (file != null) {
+                file.complete();
+            }
+            Panorama p = new Panorama(parameters, compact, samples);
+            samples = null;
             return p;
         }
 
+        /**
+         * Gives a panorama made of one sample out of a given number in both
+         * directions, which must have been set, without building the
+         * panorama. Its parameters are the ones of the same view with less
+         * samples. Its columns are the ones of the panorama multiple of the
+         * stride, and its rows are centered like the ones of the panorama, so
+         * that the altitude of each of its samples is the one of the sample
+         * it holds, or half a row of the panorama away if the number of rows
+         * left over is odd
+         * 
+         * @param stride
+         *            the distance between two samples kept, in both
+         *            directions
+         * @return the reduced panorama
+         * @throws IllegalStateException
+         *             if already built
+         * @throws IllegalArgumentException
+         *             if the stride is not strictly positive, or so large that
+         *             less than two samples are kept in a direction
+         */
+        Panorama preview(int stride) {
+            requireNonBuild();
+            checkArgument(stride > 0 && stride < parameters.width()
+                    && stride < parameters.height());
+
+            int width = (parameters.width() - 1) / stride + 1;
+            int height = (parameters.height() - 1) / stride + 1;
+            PanoramaParameters previewParameters = new PanoramaParameters(
+                    parameters.observerPosition(),
+                    parameters.observerElevation(),
+                    parameters.azimuthForX((width - 1) * stride / 2d),
+                    parameters.anglePerPixels() * stride * (width - 1),
+                    parameters.maxDistance(), width, height);
+
+            // the rows left over are split between the top and the bottom,
+            // the altitude 0 being in the middle of both panoramas
+            int firstRow = ((parameters.height() - 1) % stride) / 2;
+
+            ChannelStorage[] subsampled = new ChannelStorage[CHANNELS];
+            for (Channel c : channels) {
+                subsampled[c.ordinal()] = subsample(c, previewParameters,
+                        stride, firstRow);
+            }
+            return new Panorama(previewParameters, compact, subsampled);
+        }
+
+        // the samples are copied encoded, the area of the compact form being
+        // the same for the preview
+        private ChannelStorage subsample(Channel channel,
+                PanoramaParameters previewParameters, int stride,
+                int firstRow) {
+            ChannelStorage from = samples[channel.ordinal()];
+            ChannelStorage to = ChannelStorage.allocate(channel,
+                    previewParameters, compact);
+            for (int y = 0; y < previewParameters.height(); ++y) {
+                for (int x = 0; x < previewParameters.width(); ++x) {
+                    to.putBits(previewParameters.linearSampleIndex(x, y),
+                            from.bitsAt(parameters.linearSampleIndex(
+                                    x * stride, firstRow + y * stride)));
+                }
+            }
+            return to;
+        }
+
+        // the samples of a stored channel
+        ChannelStorage channel(Channel channel) {
+            requireNonBuild();
+            return stored(samples[channel.ordinal()]);
+        }
+
         private void requireNonBuild() {
             if (build) {
                 throw new IllegalStateException("already built");
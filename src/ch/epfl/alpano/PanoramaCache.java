@@ -0,0 +1,287 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.epfl.alpano.Panorama.Channel;
+
+/**
+ * Class that represents a cache of computed panoramas, on the disk and in
+ * memory. A panorama is identified by a hash of its parameters, of its
+ * channels and their form, and of the identity of the elevation model it was
+ * computed from, so that a panorama of other tiles is never given back.
+ * <p>
+ * The panoramas on the disk are files which are mapped in memory when read,
+ * the least recently used ones being deleted once their total size exceeds a
+ * maximum. The most recently used panoramas are also kept in memory, up to a
+ * maximal number
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see Panorama#map(File)
+ */
+public final class PanoramaCache {
+
+    private static final String EXTENSION = ".panorama";
+    // changed with the format of the keys or of the files
+    private static final int KEY_VERSION = 3;
+
+    private final File directory;
+    private final String demIdentity;
+    private final long maxDiskSize;
+    private final Map<String, Panorama> inMemory;
+
+    /**
+     * Construct a cache of panoramas, creating its directory if needed
+     *
+     * @param directory
+     *            the directory of the files of the panoramas, used by this
+     *            cache only
+     * @param demIdentity
+     *            the identity of the elevation model the panoramas are
+     *            computed from
+     * @param maxDiskSize
+     *            the maximal total size of the files, in bytes
+     * @param maxInMemory
+     *            the maximal number of panoramas kept in memory
+     * @throws IOException
+     *             if the directory cannot be created
+     * @throws NullPointerException
+     *             if the directory or the identity is null
+     * @throws IllegalArgumentException
+     *             if a maximum is negative
+     * @see #identityOf(List)
+     */
+    public PanoramaCache(File directory, String demIdentity, long maxDiskSize,
+            int maxInMemory) throws IOException {
+        checkArgument(maxDiskSize >= 0 && maxInMemory >= 0);
+        this.directory = requireNonNull(directory);
+        this.demIdentity = requireNonNull(demIdentity);
+        this.maxDiskSize = maxDiskSize;
+        Files.createDirectories(directory.toPath());
+
+        // in the order of access, the eldest being the least recently used
+        inMemory = new LinkedHashMap<String, Panorama>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Panorama> eldest) {
+                return size() > maxInMemory;
+            }
+        };
+    }
+
+    /**
+     * Gives the identity of an elevation model made of tiles read from
+     * files, which changes as soon as a file is replaced or modified
+     *
+     * @param tiles
+     *            the files of the tiles
+     * @return the identity, made of the name, the length and the modification
+     *         date of each file
+     */
+    public static String identityOf(List<File> tiles) {
+        StringBuilder identity = new StringBuilder();
+        for (File tile : tiles) {
+            identity.append(tile.getName()).append(':').append(tile.length())
+                    .append(':').append(tile.lastModified()).append(';');
+        }
+        return identity.toString();
+    }
+
+    /**
+     * Gives the panorama of some parameters storing all the channels, if it
+     * is in the cache
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @return the panorama, or null if it is not in the cache
+     */
+    public Panorama get(PanoramaParameters parameters) {
+        return get(parameters, EnumSet.allOf(Channel.class));
+    }
+
+    /**
+     * Gives the panorama of some parameters storing exactly some channels as
+     * floats, if it is in the cache
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @param channels
+     *            the channels of the panorama
+     * @return the panorama, or null if it is not in the cache
+     * @throws IllegalArgumentException
+     *             if channels is empty
+     */
+    public Panorama get(PanoramaParameters parameters,
+            Set<Channel> channels) {
+        return get(parameters, channels, false);
+    }
+
+    /**
+     * Gives the panorama of some parameters storing exactly some channels, in
+     * the compact form or not, if it is in the cache
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @param channels
+     *            the channels of the panorama
+     * @param compact
+     *            true if the samples of the panorama are in the compact form
+     * @return the panorama, or null if it is not in the cache
+     * @throws IllegalArgumentException
+     *             if channels is empty
+     * @see Panorama#isCompact()
+     */
+    public synchronized Panorama get(PanoramaParameters parameters,
+            Set<Channel> channels, boolean compact) {
+        String key = keyOf(parameters, channels, compact);
+        Panorama panorama = inMemory.get(key);
+        if (panorama != null) {
+            return panorama;
+        }
+
+        File file = fileOf(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            panorama = Panorama.map(file);
+        } catch (IOException e) {
+            // a file not written completely
+            file.delete();
+            return null;
+        }
+        if (!keyOf(panorama).equals(key)) {
+            return null;
+        }
+
+        // the date of the file is the one of its last use
+        file.setLastModified(System.currentTimeMillis());
+        inMemory.put(key, panorama);
+        return panorama;
+    }
+
+    /**
+     * Adds a computed panorama to the cache, deleting the files of the least
+     * recently used panoramas if the cache is too large
+     *
+     * @param panorama
+     *            the panorama
+     * @throws IOException
+     *             if the panorama cannot be written on the disk, in which
+     *             case it is kept in memory only
+     * @throws NullPointerException
+     *             if the panorama is null
+     */
+    public synchronized void put(Panorama panorama) throws IOException {
+        String key = keyOf(panorama);
+        inMemory.put(key, panorama);
+
+        File file = fileOf(key);
+        File temporary = File.createTempFile(key, null, directory);
+        try {
+            panorama.writeTo(temporary);
+            try {
+                Files.move(temporary.toPath(), file.toPath(),
+                        REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), file.toPath(),
+                        REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+        evict();
+    }
+
+    // deletes the least recently used files until the cache is small enough
+    private void evict() {
+        File[] files = directory
+                .listFiles(f -> f.getName().endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File f : files) {
+            size += f.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && size > maxDiskSize; ++i) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File fileOf(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    private String keyOf(Panorama panorama) {
+        return keyOf(panorama.parameters(), panorama.channels(),
+                panorama.isCompact());
+    }
+
+    // the hexadecimal SHA-256 hash of the parameters, of the channels and
+    // their form and of the identity of the dem, the doubles being hashed by
+    // their bits
+    private String keyOf(PanoramaParameters parameters,
+            Set<Channel> channels, boolean compact) {
+        int mask = Panorama.maskOf(channels);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(KEY_VERSION);
+            out.writeDouble(parameters.observerPosition().longitude());
+            out.writeDouble(parameters.observerPosition().latitude());
+            out.writeInt(parameters.observerElevation());
+            out.writeDouble(parameters.centerAzimuth());
+            out.writeDouble(parameters.horizontalFieldOfView());
+            out.writeInt(parameters.maxDistance());
+            out.writeInt(parameters.width());
+            out.writeInt(parameters.height());
+            out.writeInt(mask);
+            out.writeBoolean(compact);
+            out.write(demIdentity.getBytes(UTF_8));
+        } catch (IOException e) {
+            // a stream in memory cannot fail
+            throw new AssertionError(e);
+        }
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(bytes.toByteArray());
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new AssertionError(e);
+        }
+    }
+}
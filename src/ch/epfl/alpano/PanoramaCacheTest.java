@@ -0,0 +1,195 @@
+package ch.epfl.alpano;
+
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Panorama.Channel;
+
+public class PanoramaCacheTest {
+    private static PanoramaParameters params(int observerElevation) {
+        return new PanoramaParameters(new GeoPoint(toRadians(7), toRadians(46)), observerElevation,
+                toRadians(180), toRadians(60), 100_000, 9, 7);
+    }
+
+    private static Panorama panorama(PanoramaParameters ps) {
+        Panorama.Builder b = new Panorama.Builder(ps);
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                b.setDistanceAt(x, y, 1000 * x + y).setElevationAt(x, y, ps.observerElevation() + y)
+                .setLongitudeAt(x, y, x).setLatitudeAt(x, y, y).setSlopeAt(x, y, x * y);
+            }
+        }
+        return b.build();
+    }
+
+    private static File tempDirectory() throws IOException {
+        File d = Files.createTempDirectory("panoramas").toFile();
+        d.deleteOnExit();
+        return d;
+    }
+
+    private static File[] cacheFiles(File directory) {
+        File[] files = directory.listFiles(f -> f.getName().endsWith(".panorama"));
+        for (File f : files) {
+            f.deleteOnExit();
+        }
+        return files;
+    }
+
+    private static void assertSameSamples(Panorama expected, Panorama actual) {
+        PanoramaParameters ps = expected.parameters();
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                assertEquals(expected.distanceAt(x, y), actual.distanceAt(x, y), 0);
+                assertEquals(expected.longitudeAt(x, y), actual.longitudeAt(x, y), 0);
+                assertEquals(expected.latitudeAt(x, y), actual.latitudeAt(x, y), 0);
+                assertEquals(expected.elevationAt(x, y), actual.elevationAt(x, y), 0);
+                assertEquals(expected.slopeAt(x, y), actual.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    // the file of the panorama put, given the files before
+    private static File putFile(PanoramaCache cache, PanoramaParameters ps, File d) throws IOException {
+        List<File> before = Arrays.asList(cacheFiles(d));
+        cache.put(panorama(ps));
+        for (File f : cacheFiles(d)) {
+            if (!before.contains(f)) {
+                return f;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    @Test
+    public void getGivesNullForAPanoramaNotPut() throws IOException {
+        assertNull(new PanoramaCache(tempDirectory(), "dem", 1 << 20, 2).get(params(1000)));
+    }
+
+    @Test
+    public void getGivesThePanoramaPutFromMemory() throws IOException {
+        PanoramaCache cache = new PanoramaCache(tempDirectory(), "dem", 1 << 20, 2);
+        Panorama p = panorama(params(1000));
+        cache.put(p);
+        assertSame(p, cache.get(params(1000)));
+    }
+
+    @Test
+    public void getGivesThePanoramaPutFromTheDisk() throws IOException {
+        File d = tempDirectory();
+        Panorama p = panorama(params(1000));
+        new PanoramaCache(d, "dem", 1 << 20, 2).put(p);
+        assertEquals(1, cacheFiles(d).length);
+
+        Panorama q = new PanoramaCache(d, "dem", 1 << 20, 2).get(params(1000));
+        assertNotNull(q);
+        assertFalse(p == q);
+        assertSameSamples(p, q);
+    }
+
+    @Test
+    public void panoramasOfAnotherDemAreNotGiven() throws IOException {
+        File d = tempDirectory();
+        new PanoramaCache(d, "dem", 1 << 20, 2).put(panorama(params(1000)));
+        assertNull(new PanoramaCache(d, "other dem", 1 << 20, 2).get(params(1000)));
+        cacheFiles(d);
+    }
+
+    @Test
+    public void panoramasOfOtherChannelsAreNotGiven() throws IOException {
+        File d = tempDirectory();
+        PanoramaParameters ps = params(1000);
+        Panorama p = new Panorama.Builder(ps, EnumSet.of(Channel.DISTANCE)).build();
+        new PanoramaCache(d, "dem", 1 << 20, 2).put(p);
+        PanoramaCache cache = new PanoramaCache(d, "dem", 1 << 20, 2);
+        assertNull(cache.get(ps));
+        assertNull(cache.get(ps, EnumSet.of(Channel.DISTANCE, Channel.SLOPE)));
+        assertEquals(EnumSet.of(Channel.DISTANCE), cache.get(ps, EnumSet.of(Channel.DISTANCE)).channels());
+        cacheFiles(d);
+    }
+
+    @Test
+    public void compactPanoramasAreNotGivenForFloats() throws IOException {
+        File d = tempDirectory();
+        PanoramaParameters ps = params(1000);
+        new PanoramaCache(d, "dem", 1 << 20, 2).put(new Panorama.Builder(ps, EnumSet.allOf(Channel.class), true).build());
+        PanoramaCache cache = new PanoramaCache(d, "dem", 1 << 20, 2);
+        assertNull(cache.get(ps));
+        assertTrue(cache.get(ps, EnumSet.allOf(Channel.class), true).isCompact());
+        cacheFiles(d);
+    }
+
+    @Test
+    public void leastRecentlyUsedPanoramasAreRemovedFromMemory() throws IOException {
+        PanoramaCache cache = new PanoramaCache(tempDirectory(), "dem", 0, 2);
+        Panorama p1 = panorama(params(1000));
+        Panorama p2 = panorama(params(2000));
+        Panorama p3 = panorama(params(3000));
+        cache.put(p1);
+        cache.put(p2);
+        cache.get(params(1000));
+        cache.put(p3);
+        assertSame(p1, cache.get(params(1000)));
+        assertNull(cache.get(params(2000)));
+        assertSame(p3, cache.get(params(3000)));
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreDeleted() throws IOException {
+        File d = tempDirectory();
+        File sized = putFile(new PanoramaCache(d, "dem", Long.MAX_VALUE, 0), params(0), d);
+        long fileSize = sized.length();
+        sized.delete();
+
+        PanoramaCache cache = new PanoramaCache(d, "dem", 2 * fileSize, 0);
+        putFile(cache, params(1000), d).setLastModified(1_000_000);
+        putFile(cache, params(2000), d).setLastModified(2_000_000);
+        // the panorama read becomes the most recently used
+        assertNotNull(cache.get(params(1000)));
+        putFile(cache, params(3000), d);
+
+        assertEquals(2, cacheFiles(d).length);
+        assertNull(cache.get(params(2000)));
+        assertNotNull(cache.get(params(1000)));
+        assertNotNull(cache.get(params(3000)));
+    }
+
+    @Test
+    public void truncatedFilesAreIgnoredAndDeleted() throws IOException {
+        File d = tempDirectory();
+        new PanoramaCache(d, "dem", 1 << 20, 0).put(panorama(params(1000)));
+        File f = cacheFiles(d)[0];
+        Files.write(f.toPath(), new byte[10]);
+        assertNull(new PanoramaCache(d, "dem", 1 << 20, 0).get(params(1000)));
+        assertFalse(f.exists());
+    }
+
+    @Test
+    public void identityChangesWithTheFiles() throws IOException {
+        File f = Files.createTempFile("N46E007", ".hgt").toFile();
+        f.deleteOnExit();
+        String identity = PanoramaCache.identityOf(Collections.singletonList(f));
+        Files.write(f.toPath(), new byte[8]);
+        assertFalse(identity.equals(PanoramaCache.identityOf(Collections.singletonList(f))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithNegativeSize() throws IOException {
+        new PanoramaCache(tempDirectory(), "dem", -1, 2);
+    }
+}
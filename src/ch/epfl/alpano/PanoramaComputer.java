@@ -1,14 +1,25 @@
 package ch.epfl.alpano;
 
+import ch.epfl.alpano.Panorama.Channel;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
 import static ch.epfl.alpano.Distance.EARTH_RADIUS;
 import static ch.epfl.alpano.Math2.*;
+import static ch.epfl.alpano.Preconditions.checkArgument;
 
 import static java.util.Objects.requireNonNull;
 import static java.lang.Math.*;
 
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * Class that computes a panorama
@@ -17,17 +28,24 @@ import java.util.function.DoubleUnaryOperator;
  * @author Louis Amaudruz (271808)
  * @see Panorama
  */
-public final class PanoramaComputer {
+public final class PanoramaComputer implements AutoCloseable {
 
     private static final double REFRACTION_CONSTANT = 0.13;
     private static final double D = (1.0 - REFRACTION_CONSTANT)
             / (2 * EARTH_RADIUS);
     private static final int SMALL_INTERVAL = 4;
     private static final int INTERVAL = 64;
+    private static final int COLUMNS_PER_TASK = 8;
+    private static final int STRIDE_DIVISOR = 4;
+    private static final int[] SKIPPED_INTERVALS = { 64, 8 };
+    private static final double SKIP_MARGIN = 1;
     private final ContinuousElevationModel dem;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
 
     /**
-     * Create a panorama computer from a continuous dem
+     * Create a panorama computer from a continuous dem, the columns of the
+     * panorama are computed one after the other
      * 
      * @param dem
      *            a continuous elevation model used to compute the panorama
@@ -36,6 +54,67 @@ public final class PanoramaComputer {
      */
     public PanoramaComputer(ContinuousElevationModel dem) {
         this.dem = requireNonNull(dem);
+        this.pool = null;
+        this.ownsPool = false;
+    }
+
+    /**
+     * Create a panorama computer from a continuous dem, the columns of the
+     * panorama are spread over the threads of a fork/join pool. The resulting
+     * panorama is identical to the one computed sequentially. The pool
+     * belongs to the caller, it is not shut down when the computer is closed
+     * 
+     * @param dem
+     *            a continuous elevation model used to compute the panorama
+     * @param pool
+     *            the pool in which the columns are computed
+     * @throws NullPointerException
+     *             if the dem or the pool is null
+     */
+    public PanoramaComputer(ContinuousElevationModel dem, ForkJoinPool pool) {
+        this(dem, requireNonNull(pool), false);
+    }
+
+    /**
+     * Create a panorama computer from a continuous dem, the columns of the
+     * panorama are spread over a given number of threads, which belong to the
+     * computer and are stopped when it is closed
+     * 
+     * @param dem
+     *            a continuous elevation model used to compute the panorama
+     * @param parallelism
+     *            the number of threads used to compute the panorama
+     * @throws NullPointerException
+     *             if the dem is null
+     * @throws IllegalArgumentException
+     *             if parallelism is not positive
+     */
+    public PanoramaComputer(ContinuousElevationModel dem, int parallelism) {
+        this(dem, newPool(parallelism), true);
+    }
+
+    private PanoramaComputer(ContinuousElevationModel dem, ForkJoinPool pool,
+            boolean ownsPool) {
+        this.dem = requireNonNull(dem);
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    private static ForkJoinPool newPool(int parallelism) {
+        checkArgument(parallelism > 0);
+        return new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Stops the threads of the pool created by the computer, if any, a pool
+     * given by the caller being left as is. The computer can not compute
+     * panoramas in parallel anymore afterwards
+     */
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
     }
 
     /**
@@ -46,59 +125,321 @@ public final class PanoramaComputer {
      * @return the panorama
      */
     public Panorama computePanorama(PanoramaParameters parameters) {
+        return computePanorama(parameters, p -> {
+        }, () -> false);
+    }
 
-        Panorama.Builder panoBuilder = new Panorama.Builder(parameters);
+    /**
+     * Function that computes the panorama, reporting its progress and
+     * stopping as soon as it is cancelled
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param progress
+     *            called with the fraction of the columns computed after each
+     *            column, possibly from several threads at the same time
+     * @param cancelled
+     *            tells if the computation is cancelled, checked before each
+     *            column
+     * @return the panorama
+     * @throws CancellationException
+     *             if the computation was cancelled before its end
+     * @throws NullPointerException
+     *             if progress or cancelled is null
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            DoubleConsumer progress, BooleanSupplier cancelled) {
+        return computePanoramaProgressively(parameters, 1, p -> {
+        }, progress, cancelled);
+    }
+
+    /**
+     * Function that computes the panorama progressively: a first pass
+     * computes one column out of a given stride, each following pass the
+     * columns of a stride four times smaller (but the ones already computed)
+     * until all the columns are computed. After each pass but the last, a
+     * preview made of one sample out of the stride of the pass in both
+     * directions is given to a consumer
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param firstStride
+     *            the stride of the columns of the first pass, 1 for a single
+     *            pass
+     * @param previews
+     *            called with the preview of each pass but the last, in the
+     *            thread calling this method
+     * @param progress
+     *            called with the fraction of the columns computed after each
+     *            column, possibly from several threads at the same time
+     * @param cancelled
+     *            tells if the computation is cancelled, checked before each
+     *            column
+     * @return the panorama
+     * @throws IllegalArgumentException
+     *             if the first stride is not strictly positive
+     * @throws CancellationException
+     *             if the computation was cancelled before its end
+     * @throws NullPointerException
+     *             if previews, progress or cancelled is null
+     * @see Panorama.Builder#preview(int)
+     */
+    public Panorama computePanoramaProgressively(PanoramaParameters parameters,
+            int firstStride, Consumer<Panorama> previews,
+            DoubleConsumer progress, BooleanSupplier cancelled) {
+        checkArgument(firstStride > 0);
+        requireNonNull(previews);
+
+        return computePanorama(new Panorama.Builder(parameters), firstStride,
+                previews, progress, cancelled);
+    }
+
+    /**
+     * Function that computes the panorama of the parameters of a builder in
+     * it, for instance to store its samples out of the heap or to compute
+     * some channels only, the work needed by the others only being skipped.
+     * The builder must not have been given samples
+     * 
+     * @param builder
+     *            the builder of the panorama
+     * @return the panorama built
+     * @throws IllegalStateException
+     *             if the builder was already built
+     * @throws NullPointerException
+     *             if the builder is null
+     * @see Panorama.Builder#Builder(PanoramaParameters, java.io.File)
+     */
+    public Panorama computePanorama(Panorama.Builder builder) {
+        return computePanorama(builder, 1, p -> {
+        }, p -> {
+        }, () -> false);
+    }
+
+    private Panorama computePanorama(Panorama.Builder panoBuilder,
+            int firstStride, Consumer<Panorama> previews,
+            DoubleConsumer progress, BooleanSupplier cancelled) {
+        PanoramaParameters parameters = panoBuilder.parameters();
+        Computation computation = new Computation(parameters, panoBuilder,
+                requireNonNull(progress), requireNonNull(cancelled));
+
+        int previousStride = 0;
+        for (int stride = firstStride; previousStride != 1; stride = max(1,
+                stride / STRIDE_DIVISOR)) {
+            int[] columns = passColumns(parameters.width(), stride,
+                    previousStride);
+
+            if (pool == null) {
+                // iteration on all samples
+                for (int x : columns) {
+                    computation.computeColumn(x);
+                }
+            } else {
+                pool.invoke(new ColumnsTask(computation, columns, 0,
+                        columns.length));
+            }
+
+            // the preview needs at least two samples in each direction
+            if (stride > 1 && stride < parameters.width()
+                    && stride < parameters.height()) {
+                previews.accept(panoBuilder.preview(stride));
+            }
+            previousStride = stride;
+        }
+
+        return panoBuilder.build();
+    }
+
+    // the columns multiple of the stride of a pass which are not multiple of
+    // the stride of the previous pass, already computed
+    private static int[] passColumns(int width, int stride,
+            int previousStride) {
+        return IntStream.range(0, width)
+                .filter(x -> x % stride == 0
+                        && (previousStride == 0 || x % previousStride != 0))
+                .toArray();
+    }
+
+    /**
+     * Prepares the samples of the dem that can be reached by the rays of a
+     * panorama, i.e. the ones at most at the maximal distance of the observer,
+     * to be read as fast as possible. Calling it is optional, the panorama
+     * computed afterwards is the same
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @see ContinuousElevationModel#prefetch(double, double, double, double)
+     */
+    public void prefetch(PanoramaParameters parameters) {
+        GeoPoint observer = parameters.observerPosition();
+        double radius = Distance.toRadians(parameters.maxDistance());
+
+        double minLatitude = max(observer.latitude() - radius, -PI / 2);
+        double maxLatitude = min(observer.latitude() + radius, PI / 2);
+
+        // the meridians get closer with the latitude, the circle being the
+        // widest at the latitude the farthest from the equator
+        double maxAbsLatitude = max(abs(minLatitude), abs(maxLatitude));
+        double longitudeRadius = maxAbsLatitude >= PI / 2 ? PI
+                : min(PI, radius / cos(maxAbsLatitude));
+
+        dem.prefetch(observer.longitude() - longitudeRadius, minLatitude,
+                observer.longitude() + longitudeRadius, maxLatitude);
+    }
 
-        // iteration on all samples
-        for (int x = 0; x <= parameters.width() - 1; ++x) {
+    // compute all the samples of a column, each column being independent of
+    // the others, for the channels of the builder only
+    private void computeColumn(PanoramaParameters parameters,
+            Panorama.Builder panoBuilder, int x) {
 
-            ElevationProfile profile = new ElevationProfile(dem,
-                    parameters.observerPosition(), parameters.azimuthForX(x),
-                    parameters.maxDistance());
+        Set<Channel> channels = panoBuilder.channels();
+        boolean withDistance = channels.contains(Channel.DISTANCE);
+        boolean withLongitude = channels.contains(Channel.LONGITUDE);
+        boolean withLatitude = channels.contains(Channel.LATITUDE);
+        boolean withElevation = channels.contains(Channel.ELEVATION);
+        boolean withSlope = channels.contains(Channel.SLOPE);
+        boolean withPosition = withLongitude || withLatitude
+                || withElevation || withSlope;
 
-            double lastAbcissa = 0;
-            boolean notInfinity = true;
+        ElevationProfile profile = new ElevationProfile(dem,
+                parameters.observerPosition(), parameters.azimuthForX(x),
+                parameters.maxDistance());
 
-            for (int y = parameters.height() - 1; y >= 0 && notInfinity; y--) {
+        double lastAbcissa = 0;
+        boolean notInfinity = true;
+        double[] elevationAndSlope = new double[2];
+        // the samples of the dem read at each evaluation of the ray
+        double[] samples = new double[9];
 
-                double altitudeForY = parameters.altitudeForY(y);
-                // The function
-                DoubleUnaryOperator function = rayToGroundDistance(profile,
-                        parameters.observerElevation(), tan(altitudeForY));
+        for (int y = parameters.height() - 1; y >= 0 && notInfinity; y--) {
 
-                // first approximation
-                double abscissa = firstIntervalContainingRoot(function,
-                        lastAbcissa, parameters.maxDistance(), INTERVAL);
+            double altitudeForY = parameters.altitudeForY(y);
+            // The function
+            DoubleUnaryOperator function = rayToGroundDistance(profile,
+                    parameters.observerElevation(), tan(altitudeForY),
+                    samples);
 
-                // only if the abscissa is finite
-                if (abscissa == Double.POSITIVE_INFINITY) {
-                    notInfinity = false;
-                } else {
-                    // improvement of the first approximation
-                    abscissa = improveRoot(function, abscissa,
-                            abscissa + INTERVAL, SMALL_INTERVAL);
+            // first approximation
+            double abscissa = firstIntervalContainingRoot(profile, function,
+                    parameters.observerElevation(), tan(altitudeForY),
+                    lastAbcissa, parameters.maxDistance());
 
+            // only if the abscissa is finite
+            if (abscissa == Double.POSITIVE_INFINITY) {
+                notInfinity = false;
+            } else {
+                // improvement of the first approximation
+                abscissa = improveRoot(function, abscissa, abscissa + INTERVAL,
+                        SMALL_INTERVAL);
+
+                if (withDistance) {
                     // distance from observer to the point, using the angle
                     // between the function and the axe
                     double distance = abscissa / cos(altitudeForY);
+                    panoBuilder.setDistanceAt(x, y, (float) distance);
+                }
 
-                    // set all found datum
-                    GeoPoint position = profile.positionAt(abscissa);
-                    panoBuilder.setDistanceAt(x, y, (float) distance)
-                            .setElevationAt(x, y,
-                                    (float) dem.elevationAt(position))
-                            .setLatitudeAt(x, y, (float) position.latitude())
-                            .setLongitudeAt(x, y, (float) position.longitude())
-                            .setSlopeAt(x, y, (float) dem.slopeAt(position));
+                if (withPosition) {
+                    double longitude = profile.longitudeAt(abscissa);
+                    double latitude = profile.latitudeAt(abscissa);
+                    if (withLongitude) {
+                        panoBuilder.setLongitudeAt(x, y, (float) longitude);
+                    }
+                    if (withLatitude) {
+                        panoBuilder.setLatitudeAt(x, y, (float) latitude);
+                    }
 
+                    // the slope needs the samples of the elevation anyway
+                    if (withSlope) {
+                        dem.elevationAndSlopeAt(longitude, latitude,
+                                elevationAndSlope, samples);
+                    } else if (withElevation) {
+                        elevationAndSlope[0] = dem.elevationAt(longitude,
+                                latitude, samples);
+                    }
+                    if (withElevation) {
+                        panoBuilder.setElevationAt(x, y,
+                                (float) elevationAndSlope[0]);
+                    }
+                    if (withSlope) {
+                        panoBuilder.setSlopeAt(x, y,
+                                (float) elevationAndSlope[1]);
+                    }
                 }
+            }
+
+            lastAbcissa = abscissa;
+
+        }
+    }
+
+    // Same result as Math2.firstIntervalContainingRoot with an interval of
+    // INTERVAL, but the stretches of the profile over which the ray is
+    // provably above the ground are skipped without evaluating the function
+    private static double firstIntervalContainingRoot(ElevationProfile profile,
+            DoubleUnaryOperator function, double ray0, double raySlope,
+            double minX, double maxX) {
+
+        double x = minX;
+        int smallestSkip = SKIPPED_INTERVALS[SKIPPED_INTERVALS.length - 1];
+
+        while (x <= maxX - INTERVAL) {
 
-                lastAbcissa = abscissa;
+            int skipped = skippableIntervals(profile, ray0, raySlope, x, maxX);
 
+            if (skipped > 0) {
+                // same accumulation as the sequential search
+                for (int i = 0; i < skipped; ++i) {
+                    x = x + INTERVAL;
+                }
+            } else {
+                // the value at the end of an interval is the one at the
+                // beginning of the next one
+                double valueAtX = function.applyAsDouble(x);
+                for (int i = 0; i < smallestSkip && x <= maxX - INTERVAL; ++i) {
+                    double valueAtNext = function.applyAsDouble(x + INTERVAL);
+                    if (valueAtX * valueAtNext <= 0) {
+                        return x;
+                    }
+                    valueAtX = valueAtNext;
+                    x = x + INTERVAL;
+                }
             }
         }
 
-        return panoBuilder.build();
+        return Double.POSITIVE_INFINITY;
+    }
+
+    // number of intervals starting at x over which the ray is provably above
+    // the ground, 0 if none
+    private static int skippableIntervals(ElevationProfile profile,
+            double ray0, double raySlope, double x, double maxX) {
+
+        int available = (int) floor((maxX - x) / INTERVAL);
+
+        for (int intervals : SKIPPED_INTERVALS) {
+            int n = min(intervals, available);
+            if (n <= 0) {
+                return 0;
+            }
+
+            double to = min(x + n * INTERVAL, maxX);
+            double maxElevation = profile.maxElevationBetween(x, to);
+
+            if (minRayElevation(ray0, raySlope, x, to)
+                    - maxElevation > SKIP_MARGIN) {
+                return n;
+            }
+        }
+
+        return 0;
+    }
+
+    // minimal elevation of the ray between two abscissas, the ray being a
+    // parabola due to the curvature of the earth
+    private static double minRayElevation(double ray0, double raySlope,
+            double from, double to) {
+        double vertex = max(from, min(to, -raySlope / (2 * D)));
+        return ray0 + vertex * raySlope + sq(vertex) * D;
     }
 
     /**
@@ -116,7 +457,138 @@ public final class PanoramaComputer {
      */
     public static DoubleUnaryOperator rayToGroundDistance(
             ElevationProfile profile, double ray0, double raySlope) {
-        return x -> ray0 + x * raySlope - profile.elevationAt(x) + sq(x) * D;
+        return x -> ray0 + x * raySlope - profile.elevationAt(x)
+                + curvatureAndRefraction(x);
+
+    }
+
+    /**
+     * Give a function computing the distance between a ray and the ground,
+     * reading the samples of the profile in a given array. The function gives
+     * the same results as the one of rayToGroundDistance without array, but
+     * it cannot be used by several threads at the same time
+     * 
+     * @param profile
+     *            the profile
+     * @param ray0
+     *            initial elevation
+     * @param raySlope
+     *            slope of the function
+     * @param samples
+     *            the array in which the samples are read, of at least four
+     *            elements
+     * @return a function computing the distance between the ground and the ray
+     * @throws NullPointerException
+     *             if profile or samples is null
+     * @see ElevationProfile#elevationAt(double, double[])
+     */
+    public static DoubleUnaryOperator rayToGroundDistance(
+            ElevationProfile profile, double ray0, double raySlope,
+            double[] samples) {
+        requireNonNull(profile);
+        requireNonNull(samples);
+        return x -> ray0 + x * raySlope - profile.elevationAt(x, samples)
+                + curvatureAndRefraction(x);
+    }
 
+    /**
+     * Gives the beginning of the first interval along a profile in which a ray
+     * meets the ground, the same as Math2.firstIntervalContainingRoot applied
+     * to the function of rayToGroundDistance with an interval of 64 m, but
+     * the stretches over which the pyramid of the elevation model proves the
+     * ray to be above the ground are skipped
+     * 
+     * @param profile
+     *            the profile
+     * @param ray0
+     *            initial elevation
+     * @param raySlope
+     *            slope of the ray
+     * @param maxX
+     *            the distance at which the search stops, at most the length
+     *            of the profile
+     * @return the beginning of the interval, positive infinity if the ray
+     *         does not meet the ground before maxX
+     * @throws NullPointerException
+     *             if profile is null
+     * @see ContinuousElevationModel#withPyramid(ch.epfl.alpano.dem.ElevationPyramid)
+     */
+    public static double firstIntervalContainingRoot(ElevationProfile profile,
+            double ray0, double raySlope, double maxX) {
+        return firstIntervalContainingRoot(profile,
+                rayToGroundDistance(profile, ray0, raySlope, new double[4]),
+                ray0, raySlope, 0, maxX);
+    }
+
+    /**
+     * Gives how much lower the ground seems at a distance from the observer,
+     * due to the curvature of the earth and the refraction of the air
+     * 
+     * @param distance
+     *            the horizontal distance from the observer
+     * @return the apparent lowering of the ground at this distance
+     */
+    public static double curvatureAndRefraction(double distance) {
+        return sq(distance) * D;
+    }
+
+    // the state of the computation of a panorama, shared by all its columns
+    private final class Computation {
+
+        private final PanoramaParameters parameters;
+        private final Panorama.Builder panoBuilder;
+        private final DoubleConsumer progress;
+        private final BooleanSupplier cancelled;
+        private final AtomicInteger computedColumns;
+
+        Computation(PanoramaParameters parameters, Panorama.Builder panoBuilder,
+                DoubleConsumer progress, BooleanSupplier cancelled) {
+            this.parameters = parameters;
+            this.panoBuilder = panoBuilder;
+            this.progress = progress;
+            this.cancelled = cancelled;
+            this.computedColumns = new AtomicInteger();
+        }
+
+        void computeColumn(int x) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+
+            PanoramaComputer.this.computeColumn(parameters, panoBuilder, x);
+            progress.accept(computedColumns.incrementAndGet()
+                    / (double) parameters.width());
+        }
+    }
+
+    // Task computing the columns of indexes [from, to[, split in halves until the
+    // range is small enough so that idle threads can steal the other half
+    @SuppressWarnings("serial")
+    private static final class ColumnsTask extends RecursiveAction {
+
+        private final Computation computation;
+        private final int[] columns;
+        private final int from;
+        private final int to;
+
+        ColumnsTask(Computation computation, int[] columns, int from, int to) {
+            this.computation = computation;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= COLUMNS_PER_TASK) {
+                for (int i = from; i < to; ++i) {
+                    computation.computeColumn(columns[i]);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ColumnsTask(computation, columns, from, middle),
+                        new ColumnsTask(computation, columns, middle, to));
+            }
+        }
     }
 }
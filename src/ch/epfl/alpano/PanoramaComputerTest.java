@@ -6,15 +6,28 @@ import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 import static java.lang.Math.toRadians;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleUnaryOperator;
 
 import org.junit.Test;
 
+import ch.epfl.alpano.Panorama.Channel;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.ElevationPyramid;
 
 public class PanoramaComputerTest {
     @Test(expected = NullPointerException.class)
@@ -63,6 +76,215 @@ public class PanoramaComputerTest {
         }
     }
 
+    @Test
+    public void computationInAMappedBuilderGivesSamePanorama() throws IOException {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        File f = Files.createTempFile("panorama", ".bin").toFile();
+        f.deleteOnExit();
+        Panorama p1 = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        Panorama p2;
+        try (PanoramaComputer c = new PanoramaComputer(wavyContDEM(), 4)) {
+            p2 = c.computePanorama(new Panorama.Builder(pp, f));
+        }
+        Panorama p3 = Panorama.map(f);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(p1.distanceAt(x, y), p2.distanceAt(x, y), 0);
+                assertEquals(p1.distanceAt(x, y), p3.distanceAt(x, y), 0);
+                assertEquals(p1.longitudeAt(x, y), p3.longitudeAt(x, y), 0);
+                assertEquals(p1.latitudeAt(x, y), p3.latitudeAt(x, y), 0);
+                assertEquals(p1.elevationAt(x, y), p3.elevationAt(x, y), 0);
+                assertEquals(p1.slopeAt(x, y), p3.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void computationOfSomeChannelsGivesTheSameSamples() {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaComputer c = new PanoramaComputer(wavyContDEM());
+        Panorama p1 = c.computePanorama(pp);
+        Panorama p2 = c.computePanorama(new Panorama.Builder(pp, EnumSet.of(Channel.DISTANCE, Channel.SLOPE)));
+        Panorama p3 = c.computePanorama(new Panorama.Builder(pp, EnumSet.of(Channel.LONGITUDE, Channel.ELEVATION)));
+        Panorama p4 = c.computePanorama(new Panorama.Builder(pp, EnumSet.of(Channel.LATITUDE)));
+        assertEquals(EnumSet.of(Channel.DISTANCE, Channel.SLOPE), p2.channels());
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(p1.distanceAt(x, y), p2.distanceAt(x, y), 0);
+                assertEquals(p1.slopeAt(x, y), p2.slopeAt(x, y), 0);
+                assertEquals(p1.longitudeAt(x, y), p3.longitudeAt(x, y), 0);
+                assertEquals(p1.elevationAt(x, y), p3.elevationAt(x, y), 0);
+                assertEquals(p1.latitudeAt(x, y), p4.latitudeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void computationInACompactBuilderGivesCloseSamples() {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaComputer c = new PanoramaComputer(wavyContDEM());
+        Panorama p1 = c.computePanorama(pp);
+        Panorama p2 = c.computePanorama(new Panorama.Builder(pp, EnumSet.allOf(Channel.class), true));
+        double angleError = Distance.toRadians(pp.maxDistance()) / 65534 + 1e-7;
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(p1.distanceAt(x, y), p2.distanceAt(x, y), 0);
+                assertEquals(p1.longitudeAt(x, y), p2.longitudeAt(x, y), angleError);
+                assertEquals(p1.latitudeAt(x, y), p2.latitudeAt(x, y), angleError);
+                assertEquals(p1.elevationAt(x, y), p2.elevationAt(x, y), 0.126);
+                assertEquals(p1.slopeAt(x, y), p2.slopeAt(x, y), p1.slopeAt(x, y) * 0x1p-11);
+            }
+        }
+    }
+
+    @Test
+    public void parallelComputationGivesSamePanoramaAsSequential() {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama p1 = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        Panorama p2;
+        try (PanoramaComputer c = new PanoramaComputer(wavyContDEM(), 4)) {
+            p2 = c.computePanorama(pp);
+        }
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(p1.distanceAt(x, y), p2.distanceAt(x, y), 0);
+                assertEquals(p1.longitudeAt(x, y), p2.longitudeAt(x, y), 0);
+                assertEquals(p1.latitudeAt(x, y), p2.latitudeAt(x, y), 0);
+                assertEquals(p1.elevationAt(x, y), p2.elevationAt(x, y), 0);
+                assertEquals(p1.slopeAt(x, y), p2.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void elevationPyramidDoesNotChangeThePanorama() {
+        int w = 40, h = 30;
+        GeoPoint o = new GeoPoint(toRadians(0.5), toRadians(0.5));
+        PanoramaParameters pp = new PanoramaParameters(o, 1200, toRadians(30), toRadians(h), 100_000, w, h);
+        DiscreteElevationModel dDEM = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600),
+                new Interval1D(0, 3600)));
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        Panorama p1 = new PanoramaComputer(cDEM).computePanorama(pp);
+        Panorama p2 = new PanoramaComputer(cDEM.withPyramid(new ElevationPyramid(dDEM))).computePanorama(pp);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(p1.distanceAt(x, y), p2.distanceAt(x, y), 0);
+                assertEquals(p1.longitudeAt(x, y), p2.longitudeAt(x, y), 0);
+                assertEquals(p1.latitudeAt(x, y), p2.latitudeAt(x, y), 0);
+                assertEquals(p1.elevationAt(x, y), p2.elevationAt(x, y), 0);
+                assertEquals(p1.slopeAt(x, y), p2.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void progressIncreasesUpToOne() {
+        int w = 30, h = 10;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        for (PanoramaComputer c : new PanoramaComputer[] { new PanoramaComputer(wavyContDEM()), new PanoramaComputer(wavyContDEM(), 4) }) {
+            AtomicInteger calls = new AtomicInteger();
+            double[] maxProgress = new double[1];
+            c.computePanorama(pp, p -> {
+                calls.incrementAndGet();
+                synchronized (maxProgress) {
+                    maxProgress[0] = Math.max(maxProgress[0], p);
+                }
+            }, () -> false);
+            assertEquals(w, calls.get());
+            assertEquals(1, maxProgress[0], 1e-9);
+            c.close();
+        }
+    }
+
+    @Test
+    public void cancelledComputationStops() {
+        int w = 30, h = 10;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        for (PanoramaComputer c : new PanoramaComputer[] { new PanoramaComputer(wavyContDEM()), new PanoramaComputer(wavyContDEM(), 4) }) {
+            AtomicInteger columns = new AtomicInteger();
+            try {
+                c.computePanorama(pp, p -> columns.incrementAndGet(), () -> columns.get() >= 5);
+                fail();
+            } catch (CancellationException e) {
+                assertTrue(columns.get() < w);
+            }
+            c.close();
+        }
+    }
+
+    @Test
+    public void progressiveComputationGivesTheSamePanorama() {
+        int w = 37, h = 21;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        for (PanoramaComputer c : new PanoramaComputer[] { new PanoramaComputer(wavyContDEM()), new PanoramaComputer(wavyContDEM(), 4) }) {
+            Panorama p1 = c.computePanorama(pp);
+            List<Panorama> previews = new ArrayList<>();
+            AtomicInteger columns = new AtomicInteger();
+            Panorama p2 = c.computePanoramaProgressively(pp, 16, previews::add, p -> columns.incrementAndGet(), () -> false);
+            assertEquals(w, columns.get());
+            for (int x = 0; x < w; ++x) {
+                for (int y = 0; y < h; ++y) {
+                    assertEquals(p1.distanceAt(x, y), p2.distanceAt(x, y), 0);
+                    assertEquals(p1.elevationAt(x, y), p2.elevationAt(x, y), 0);
+                    assertEquals(p1.slopeAt(x, y), p2.slopeAt(x, y), 0);
+                }
+            }
+
+            // strides 16 and 4, the last pass giving the panorama
+            assertEquals(2, previews.size());
+            int[] strides = { 16, 4 };
+            for (int i = 0; i < strides.length; ++i) {
+                Panorama preview = previews.get(i);
+                int s = strides[i];
+                assertEquals((w - 1) / s + 1, preview.parameters().width());
+                assertEquals((h - 1) / s + 1, preview.parameters().height());
+                // the rows left over are split between the top and the bottom
+                int firstRow = ((h - 1) % s) / 2;
+                for (int x = 0; x < preview.parameters().width(); ++x) {
+                    for (int y = 0; y < preview.parameters().height(); ++y) {
+                        assertEquals(p1.distanceAt(x * s, firstRow + y * s), preview.distanceAt(x, y), 0);
+                    }
+                }
+            }
+            c.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void progressiveComputationFailsWithZeroStride() {
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(10), 300_000, 30, 10);
+        new PanoramaComputer(zeroContDEM()).computePanoramaProgressively(pp, 0, p -> {}, p -> {}, () -> false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroParallelism() {
+        new PanoramaComputer(zeroContDEM(), 0);
+    }
+
+    @Test
+    public void closeLeavesTheCallerPoolRunning() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        new PanoramaComputer(zeroContDEM(), pool).close();
+        assertFalse(pool.isShutdown());
+        pool.shutdown();
+    }
+
+    @Test
+    public void closeCanBeCalledTwice() {
+        PanoramaComputer c = new PanoramaComputer(zeroContDEM(), 2);
+        c.close();
+        c.close();
+    }
+
     @Test
     public void rayToGroundDistanceAccountsForEarthCurvatureAndRefraction() {
         double dropPerM2 = (1d - 0.13d) / (2d * 6_371_000d);
@@ -77,6 +299,23 @@ public class PanoramaComputerTest {
         }
     }
 
+    @Test
+    public void firstIntervalContainingRootOverThePyramidIsTheSequentialOne() {
+        DiscreteElevationModel dDEM = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600),
+                new Interval1D(0, 3600)));
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM)
+                .withPyramid(new ElevationPyramid(dDEM));
+        GeoPoint o = new GeoPoint(toRadians(0.2), toRadians(0.3));
+        ElevationProfile p = new ElevationProfile(cDEM, o, toRadians(40), 80_000);
+        for (int k = -20; k <= 20; ++k) {
+            double raySlope = k / 200d;
+            double expected = Math2.firstIntervalContainingRoot(
+                    PanoramaComputer.rayToGroundDistance(p, 1500, raySlope), 0, 80_000, 64);
+            assertEquals(expected, PanoramaComputer.firstIntervalContainingRoot(p, 1500, raySlope, 80_000), 0);
+        }
+    }
+
     private static Interval2D positiveQuadrant() {
         return new Interval2D(
                 new Interval1D(0, 3600 * 179),
@@ -0,0 +1,253 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Set;
+
+import ch.epfl.alpano.Panorama.Channel;
+
+/**
+ * Class that represents a file containing the samples of a panorama, mapped
+ * in memory so that they are stored out of the heap. After a header giving
+ * the parameters of the panorama, its channels and whether they are in the
+ * compact form, the file contains the samples of each channel stored one
+ * after the other, in the order of {@link Channel}, each channel being mapped
+ * separately.
+ * <p>
+ * A file is complete once all its samples have been written, only complete
+ * files can be opened
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see Panorama#map(File)
+ */
+final class PanoramaFile {
+
+    // "ALPN"
+    private static final int MAGIC = 0x414C504E;
+    private static final int VERSION = 3;
+    private static final int COMPLETE_INDEX = 8;
+    // the header is followed by the channels, aligned on a cache line
+    private static final int HEADER_LENGTH = 128;
+    private static final int CHANNELS = Panorama.CHANNELS;
+
+    private final PanoramaParameters parameters;
+    private final Set<Channel> channels;
+    private final boolean compact;
+    private final MappedByteBuffer header;
+    // the samples of each channel, by ordinal, null if it is not stored
+    private final MappedByteBuffer[] samples;
+
+    private PanoramaFile(PanoramaParameters parameters, Set<Channel> channels,
+            boolean compact, MappedByteBuffer header,
+            MappedByteBuffer[] samples) {
+        this.parameters = parameters;
+        this.channels = channels;
+        this.compact = compact;
+        this.header = header;
+        this.samples = samples;
+    }
+
+    /**
+     * Creates the file of a panorama, replacing it if it exists, all its
+     * samples being 0
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @param channels
+     *            the channels stored, not empty
+     * @param compact
+     *            true if the samples are in the compact form
+     * @param file
+     *            the file
+     * @return the file, not complete
+     * @throws IOException
+     *             if the file cannot be written
+     * @throws IllegalArgumentException
+     *             if a channel is larger than 2 GiB
+     */
+    static PanoramaFile create(PanoramaParameters parameters,
+            Set<Channel> channels, boolean compact, File file)
+            throws IOException {
+        checkArgument(samplesLength(parameters) * Float.BYTES
+                <= Integer.MAX_VALUE);
+        int mask = Panorama.maskOf(channels);
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(0);
+            out.setLength(
+                    HEADER_LENGTH + length(parameters, channels, compact));
+            FileChannel channel = out.getChannel();
+
+            MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0,
+                    HEADER_LENGTH);
+            header.order(LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(0);
+            header.putDouble(parameters.observerPosition().longitude())
+                    .putDouble(parameters.observerPosition().latitude())
+                    .putInt(parameters.observerElevation())
+                    .putDouble(parameters.centerAzimuth())
+                    .putDouble(parameters.horizontalFieldOfView())
+                    .putInt(parameters.maxDistance())
+                    .putInt(parameters.width()).putInt(parameters.height())
+                    .putInt(mask).putInt(compact ? 1 : 0);
+
+            return new PanoramaFile(parameters, channels, compact, header,
+                    mapChannels(channel, MapMode.READ_WRITE, parameters,
+                            channels, compact));
+        }
+    }
+
+    /**
+     * Opens a complete file of a panorama
+     *
+     * @param file
+     *            the file
+     * @return the file
+     * @throws IOException
+     *             if the file cannot be read, is not the file of a panorama
+     *             or is not complete
+     */
+    static PanoramaFile open(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            if (channel.size() < HEADER_LENGTH) {
+                throw new IOException("not a panorama file");
+            }
+
+            MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0,
+                    HEADER_LENGTH);
+            header.order(LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("not a panorama file");
+            }
+            if (header.getInt() == 0) {
+                throw new IOException("incomplete panorama file");
+            }
+
+            PanoramaParameters parameters;
+            try {
+                GeoPoint observer = new GeoPoint(header.getDouble(),
+                        header.getDouble());
+                parameters = new PanoramaParameters(observer,
+                        header.getInt(), header.getDouble(),
+                        header.getDouble(), header.getInt(), header.getInt(),
+                        header.getInt());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("invalid panorama parameters", e);
+            }
+            Set<Channel> channels;
+            try {
+                channels = Panorama.channelsOf(header.getInt());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("invalid panorama channels", e);
+            }
+            boolean compact = header.getInt() != 0;
+
+            if (samplesLength(parameters) * Float.BYTES > Integer.MAX_VALUE
+                    || channel.size() != HEADER_LENGTH
+                            + length(parameters, channels, compact)) {
+                throw new IOException("truncated panorama file");
+            }
+            return new PanoramaFile(parameters, channels, compact, header,
+                    mapChannels(channel, MapMode.READ_ONLY, parameters,
+                            channels, compact));
+        }
+    }
+
+    private static long samplesLength(PanoramaParameters parameters) {
+        return (long) parameters.width() * parameters.height();
+    }
+
+    private static long channelLength(PanoramaParameters parameters,
+            Channel channel, boolean compact) {
+        return ChannelStorage.bytesPerSample(channel, compact)
+                * samplesLength(parameters);
+    }
+
+    // the length of the samples of all the channels
+    private static long length(PanoramaParameters parameters,
+            Set<Channel> channels, boolean compact) {
+        long length = 0;
+        for (Channel c : channels) {
+            length += channelLength(parameters, c, compact);
+        }
+        return length;
+    }
+
+    private static MappedByteBuffer[] mapChannels(FileChannel channel,
+            MapMode mode, PanoramaParameters parameters,
+            Set<Channel> channels, boolean compact) throws IOException {
+        MappedByteBuffer[] samples = new MappedByteBuffer[CHANNELS];
+        long position = HEADER_LENGTH;
+        for (Channel c : channels) {
+            long length = channelLength(parameters, c, compact);
+            MappedByteBuffer s = channel.map(mode, position, length);
+            s.order(LITTLE_ENDIAN);
+            samples[c.ordinal()] = s;
+            position += length;
+        }
+        return samples;
+    }
+
+    /**
+     * The parameters of the panorama
+     *
+     * @return the parameters
+     */
+    PanoramaParameters parameters() {
+        return parameters;
+    }
+
+    /**
+     * The channels stored in the file
+     *
+     * @return the channels
+     */
+    Set<Channel> channels() {
+        return channels;
+    }
+
+    /**
+     * Tells if the samples are in the compact form
+     *
+     * @return true if they are in the compact form
+     */
+    boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * The samples of a channel, indexed as in
+     * {@link PanoramaParameters#linearSampleIndex(int, int)}
+     *
+     * @param channel
+     *            the channel
+     * @return the samples, writable if the file was created, or null if the
+     *         channel is not stored
+     */
+    ChannelStorage channel(Channel channel) {
+        MappedByteBuffer s = samples[channel.ordinal()];
+        return s == null ? null
+                : ChannelStorage.wrap(channel, parameters, compact, s);
+    }
+
+    /**
+     * Writes the samples on the disk, then marks the file as complete
+     */
+    void complete() {
+        for (Channel c : channels) {
+            samples[c.ordinal()].force();
+        }
+        header.putInt(COMPLETE_INDEX, 1);
+        header.force();
+    }
+}
@@ -0,0 +1,426 @@
+package ch.epfl.alpano;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import ch.epfl.alpano.Panorama.Channel;
+
+/**
+ * Class that writes and reads panoramas in a versioned binary format, so that
+ * a panorama can be computed once and loaded elsewhere (cannot be
+ * instantiated). Panoramas are written and read sequentially, row by row, so
+ * that a stream can be read as it arrives and that only a row is buffered.
+ * <p>
+ * After a header giving the version of the format, the parameters of the
+ * panorama, its channels and whether they are in the compact form, each
+ * channel stored is written in a block, raw or compressed, its samples being
+ * written as they are stored (4 or 2 bytes per sample). In a compressed
+ * block, each sample is replaced by the difference between its bits and the
+ * ones of the previous sample, the bytes of a row being grouped by weight
+ * before being deflated, which is lossless. The deflated bytes are
+ * written in chunks preceded by their length, the last one being empty
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see Panorama
+ */
+public final class PanoramaFormat {
+
+    // "ALPS"
+    private static final int MAGIC = 0x414C5053;
+    private static final int VERSION = 3;
+    private static final int RAW = 0;
+    private static final int COMPRESSED = 1;
+    private static final int CHUNK_LENGTH = 1 << 16;
+
+    // private builder, this class cannot be instantiated
+    private PanoramaFormat() {
+    }
+
+    /**
+     * Writes a panorama in a stream, which is neither buffered nor closed
+     *
+     * @param panorama
+     *            the panorama
+     * @param out
+     *            the stream
+     * @param compressed
+     *            true to compress the samples, false to write them raw,
+     *            which is faster but several times larger
+     * @throws IOException
+     *             if the stream cannot be written
+     * @throws NullPointerException
+     *             if the panorama or the stream is null
+     */
+    public static void write(Panorama panorama, OutputStream out,
+            boolean compressed) throws IOException {
+        PanoramaParameters parameters = panorama.parameters();
+        DataOutputStream data = new DataOutputStream(requireNonNull(out));
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeDouble(parameters.observerPosition().longitude());
+        data.writeDouble(parameters.observerPosition().latitude());
+        data.writeInt(parameters.observerElevation());
+        data.writeDouble(parameters.centerAzimuth());
+        data.writeDouble(parameters.horizontalFieldOfView());
+        data.writeInt(parameters.maxDistance());
+        data.writeInt(parameters.width());
+        data.writeInt(parameters.height());
+        data.writeByte(Panorama.maskOf(panorama.channels()));
+        data.writeBoolean(panorama.isCompact());
+
+        int width = parameters.width();
+        int[] bits = new int[width];
+        for (Channel c : panorama.channels()) {
+            ChannelStorage samples = panorama.channel(c);
+            int bytes = samples.bytesPerSample();
+            byte[] row = new byte[bytes * width];
+            data.writeByte(c.ordinal());
+            data.writeByte(compressed ? COMPRESSED : RAW);
+
+            if (compressed) {
+                // the fastest level, the deltas being already small
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try (DeflaterOutputStream block = new DeflaterOutputStream(
+                        new ChunkOutputStream(data), deflater,
+                        CHUNK_LENGTH)) {
+                    int previous = 0;
+                    for (int y = 0; y < parameters.height(); ++y) {
+                        readRow(samples, y * width, bits);
+                        previous = encodeDeltas(bits, previous, row);
+                        block.write(row);
+                    }
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                for (int y = 0; y < parameters.height(); ++y) {
+                    readRow(samples, y * width, bits);
+                    for (int x = 0; x < width; ++x) {
+                        putBits(row, bytes * x, bytes, bits[x]);
+                    }
+                    data.write(row);
+                }
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a panorama from a stream, its samples being stored in the heap.
+     * The stream is read up to the end of the panorama, and is not closed
+     *
+     * @param in
+     *            the stream
+     * @return the panorama
+     * @throws IOException
+     *             if the stream cannot be read, or does not contain a
+     *             panorama in a version of the format which can be read
+     * @throws NullPointerException
+     *             if the stream is null
+     */
+    public static Panorama read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(requireNonNull(in));
+        PanoramaParameters parameters = readHeader(data);
+        Set<Channel> channels = readChannels(data);
+        return readSamples(data, new Panorama.Builder(parameters, channels,
+                data.readBoolean()));
+    }
+
+    /**
+     * Reads a panorama from a stream, its samples being stored out of the
+     * heap in a file, as by
+     * {@link Panorama.Builder#Builder(PanoramaParameters, File)}. The stream
+     * is read up to the end of the panorama, and is not closed
+     *
+     * @param in
+     *            the stream
+     * @param file
+     *            the file of the panorama
+     * @return the panorama
+     * @throws IOException
+     *             if the stream cannot be read, or does not contain a
+     *             panorama in a version of the format which can be read, or
+     *             if the file cannot be written
+     * @throws NullPointerException
+     *             if the stream or the file is null
+     */
+    public static Panorama read(InputStream in, File file)
+            throws IOException {
+        DataInputStream data = new DataInputStream(requireNonNull(in));
+        requireNonNull(file);
+        PanoramaParameters parameters = readHeader(data);
+        Set<Channel> channels = readChannels(data);
+        return readSamples(data, new Panorama.Builder(parameters, channels,
+                data.readBoolean(), file));
+    }
+
+    private static PanoramaParameters readHeader(DataInputStream data)
+            throws IOException {
+        if (data.readInt() != MAGIC) {
+            throw new IOException("not a panorama");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported version " + version);
+        }
+
+        try {
+            GeoPoint observer = new GeoPoint(data.readDouble(),
+                    data.readDouble());
+            return new PanoramaParameters(observer, data.readInt(),
+                    data.readDouble(), data.readDouble(), data.readInt(),
+                    data.readInt(), data.readInt());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid panorama parameters", e);
+        }
+    }
+
+    private static Set<Channel> readChannels(DataInputStream data)
+            throws IOException {
+        int mask = data.readUnsignedByte();
+        try {
+            return Panorama.channelsOf(mask);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid channels " + mask, e);
+        }
+    }
+
+    private static Panorama readSamples(DataInputStream data,
+            Panorama.Builder builder) throws IOException {
+        PanoramaParameters parameters = builder.parameters();
+
+        int width = parameters.width();
+        int[] bits = new int[width];
+        for (Channel expected : builder.channels()) {
+            // the blocks are in the order of the channels
+            int c = data.readUnsignedByte();
+            if (c != expected.ordinal()) {
+                throw new IOException("invalid channel " + c);
+            }
+            ChannelStorage samples = builder.channel(expected);
+            int bytes = samples.bytesPerSample();
+            byte[] row = new byte[bytes * width];
+
+            int encoding = data.readUnsignedByte();
+            if (encoding == COMPRESSED) {
+                Inflater inflater = new Inflater();
+                ChunkInputStream chunks = new ChunkInputStream(data);
+                try (InflaterInputStream block = new InflaterInputStream(
+                        chunks, inflater, CHUNK_LENGTH)) {
+                    DataInputStream blockData = new DataInputStream(block);
+                    int previous = 0;
+                    for (int y = 0; y < parameters.height(); ++y) {
+                        blockData.readFully(row);
+                        previous = decodeDeltas(row, previous, bits);
+                        writeRow(bits, samples, y * width);
+                    }
+                    // the block must end with its last row, the chunks
+                    // being read up to the empty one
+                    if (block.read() >= 0 || chunks.skipToEnd() > 0) {
+                        throw new IOException("invalid block length");
+                    }
+                } finally {
+                    inflater.end();
+                }
+            } else if (encoding == RAW) {
+                for (int y = 0; y < parameters.height(); ++y) {
+                    data.readFully(row);
+                    for (int x = 0; x < width; ++x) {
+                        bits[x] = getBits(row, bytes * x, bytes);
+                    }
+                    writeRow(bits, samples, y * width);
+                }
+            } else {
+                throw new IOException("invalid encoding " + encoding);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void readRow(ChannelStorage samples, int index,
+            int[] bits) {
+        for (int x = 0; x < bits.length; ++x) {
+            bits[x] = samples.bitsAt(index + x);
+        }
+    }
+
+    private static void writeRow(int[] bits, ChannelStorage samples,
+            int index) {
+        for (int x = 0; x < bits.length; ++x) {
+            samples.putBits(index + x, bits[x]);
+        }
+    }
+
+    // replaces the bits of each sample by their difference with the previous
+    // ones, the i-th byte of each difference (of the size of the samples of
+    // the row) being in the i-th part of the row, returns the bits of the
+    // last sample
+    private static int encodeDeltas(int[] bits, int previous, byte[] row) {
+        int n = bits.length;
+        int bytes = row.length / n;
+        for (int x = 0; x < n; ++x) {
+            int delta = bits[x] - previous;
+            previous = bits[x];
+            for (int i = 0; i < bytes; ++i) {
+                row[i * n + x] = (byte) (delta >>> 8 * (bytes - 1 - i));
+            }
+        }
+        return previous;
+    }
+
+    // the differences being computed modulo the size of the samples
+    private static int decodeDeltas(byte[] row, int previous, int[] bits) {
+        int n = bits.length;
+        int bytes = row.length / n;
+        int mask = -1 >>> 8 * (Integer.BYTES - bytes);
+        for (int x = 0; x < n; ++x) {
+            int delta = 0;
+            for (int i = 0; i < bytes; ++i) {
+                delta = delta << 8 | row[i * n + x] & 0xFF;
+            }
+            previous = previous + delta & mask;
+            bits[x] = previous;
+        }
+        return previous;
+    }
+
+    // the bytes of a sample, the most significant first
+    private static void putBits(byte[] row, int index, int bytes, int bits) {
+        for (int i = 0; i < bytes; ++i) {
+            row[index + i] = (byte) (bits >>> 8 * (bytes - 1 - i));
+        }
+    }
+
+    private static int getBits(byte[] row, int index, int bytes) {
+        int bits = 0;
+        for (int i = 0; i < bytes; ++i) {
+            bits = bits << 8 | row[index + i] & 0xFF;
+        }
+        return bits;
+    }
+
+    // stream writing the bytes written to it in chunks preceded by their
+    // length, an empty chunk being written when it is closed
+    private static final class ChunkOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[CHUNK_LENGTH];
+        private int length;
+
+        ChunkOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == buffer.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        // the underlying stream stays open
+        @Override
+        public void close() throws IOException {
+            if (length > 0) {
+                writeChunk();
+            }
+            writeChunk();
+        }
+
+        private void writeChunk() throws IOException {
+            out.writeInt(length);
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    // stream reading the chunks written by a ChunkOutputStream, which ends
+    // with the empty chunk, so that the bytes after it are not read
+    private static final class ChunkInputStream extends InputStream {
+        private final DataInputStream in;
+        // the number of bytes of the current chunk not read yet
+        private int remaining;
+        private boolean ended;
+
+        ChunkInputStream(DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("truncated chunk");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        // skips the bytes up to the end of the chunks, returns their number
+        long skipToEnd() throws IOException {
+            long skipped = 0;
+            while (nextChunk()) {
+                in.readFully(new byte[remaining]);
+                skipped += remaining;
+                remaining = 0;
+            }
+            return skipped;
+        }
+
+        // tells if bytes remain, reading the length of the next chunk if
+        // needed
+        private boolean nextChunk() throws IOException {
+            while (remaining == 0 && !ended) {
+                remaining = in.readInt();
+                if (remaining < 0 || remaining > CHUNK_LENGTH) {
+                    throw new IOException("invalid chunk length");
+                }
+                ended = remaining == 0;
+            }
+            return !ended;
+        }
+
+        // the underlying stream stays open
+        @Override
+        public void close() {
+        }
+    }
+}
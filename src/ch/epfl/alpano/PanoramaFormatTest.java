@@ -0,0 +1,183 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Panorama.Channel;
+
+public class PanoramaFormatTest {
+    private static PanoramaParameters params(int width, int height) {
+        return new PanoramaParameters(new GeoPoint(toRadians(7), toRadians(46)), 1500,
+                toRadians(120), toRadians(60), 100_000, width, height);
+    }
+
+    // a smooth panorama, with infinite distances at the top and a few NaN
+    private static Panorama panorama(PanoramaParameters ps, Random rng) {
+        Panorama.Builder b = new Panorama.Builder(ps);
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = ps.height() / 3; y < ps.height(); ++y) {
+                b.setDistanceAt(x, y, 50_000f / (1 + y) + rng.nextFloat())
+                .setLongitudeAt(x, y, 0.12f + x * 1e-5f)
+                .setLatitudeAt(x, y, 0.8f + y * 1e-5f)
+                .setElevationAt(x, y, 1000 + 10 * (float) Math.sin(x * 0.1) + y)
+                .setSlopeAt(x, y, rng.nextInt(50) == 0 ? Float.NaN : rng.nextFloat());
+            }
+        }
+        return b.build();
+    }
+
+    private static void assertSameBits(Panorama expected, Panorama actual) {
+        PanoramaParameters ps = expected.parameters(), as = actual.parameters();
+        assertEquals(ps.observerPosition().longitude(), as.observerPosition().longitude(), 0);
+        assertEquals(ps.observerPosition().latitude(), as.observerPosition().latitude(), 0);
+        assertEquals(ps.observerElevation(), as.observerElevation());
+        assertEquals(ps.centerAzimuth(), as.centerAzimuth(), 0);
+        assertEquals(ps.horizontalFieldOfView(), as.horizontalFieldOfView(), 0);
+        assertEquals(ps.maxDistance(), as.maxDistance());
+        assertEquals(ps.width(), as.width());
+        assertEquals(ps.height(), as.height());
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                assertEquals(Float.floatToRawIntBits(expected.distanceAt(x, y)), Float.floatToRawIntBits(actual.distanceAt(x, y)));
+                assertEquals(Float.floatToRawIntBits(expected.longitudeAt(x, y)), Float.floatToRawIntBits(actual.longitudeAt(x, y)));
+                assertEquals(Float.floatToRawIntBits(expected.latitudeAt(x, y)), Float.floatToRawIntBits(actual.latitudeAt(x, y)));
+                assertEquals(Float.floatToRawIntBits(expected.elevationAt(x, y)), Float.floatToRawIntBits(actual.elevationAt(x, y)));
+                assertEquals(Float.floatToRawIntBits(expected.slopeAt(x, y)), Float.floatToRawIntBits(actual.slopeAt(x, y)));
+            }
+        }
+    }
+
+    private static byte[] bytes(Panorama p, boolean compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PanoramaFormat.write(p, out, compressed);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void rawPanoramaIsReadBackIdentical() throws IOException {
+        Panorama p = panorama(params(31, 17), newRandom());
+        assertSameBits(p, PanoramaFormat.read(new ByteArrayInputStream(bytes(p, false))));
+    }
+
+    @Test
+    public void compressedPanoramaIsReadBackIdentical() throws IOException {
+        Panorama p = panorama(params(31, 17), newRandom());
+        assertSameBits(p, PanoramaFormat.read(new ByteArrayInputStream(bytes(p, true))));
+    }
+
+    @Test
+    public void compressedPanoramaSpanningSeveralChunksIsReadBackIdentical() throws IOException {
+        Panorama p = panorama(params(400, 300), newRandom());
+        assertSameBits(p, PanoramaFormat.read(new ByteArrayInputStream(bytes(p, true))));
+    }
+
+    @Test
+    public void compressedPanoramaIsSmallerThanRaw() throws IOException {
+        Panorama p = panorama(params(200, 100), newRandom());
+        assertTrue(bytes(p, true).length < bytes(p, false).length / 2);
+    }
+
+    @Test
+    public void panoramasFollowingEachOtherInAStreamAreRead() throws IOException {
+        Random rng = newRandom();
+        Panorama p1 = panorama(params(31, 17), rng);
+        Panorama p2 = panorama(params(12, 40), rng);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PanoramaFormat.write(p1, out, true);
+        PanoramaFormat.write(p2, out, false);
+        PanoramaFormat.write(p1, out, true);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertSameBits(p1, PanoramaFormat.read(in));
+        assertSameBits(p2, PanoramaFormat.read(in));
+        assertSameBits(p1, PanoramaFormat.read(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void panoramaIsReadInAFile() throws IOException {
+        File f = Files.createTempFile("panorama", ".bin").toFile();
+        f.deleteOnExit();
+        Panorama p = panorama(params(31, 17), newRandom());
+        assertSameBits(p, PanoramaFormat.read(new ByteArrayInputStream(bytes(p, true)), f));
+        assertSameBits(p, Panorama.map(f));
+    }
+
+    @Test
+    public void panoramaWithSomeChannelsIsReadBackIdentical() throws IOException {
+        PanoramaParameters ps = params(31, 17);
+        Panorama.Builder b = new Panorama.Builder(ps, EnumSet.of(Channel.LONGITUDE, Channel.SLOPE));
+        Random rng = newRandom();
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                b.setLongitudeAt(x, y, rng.nextFloat()).setSlopeAt(x, y, rng.nextFloat());
+            }
+        }
+        Panorama p = b.build();
+        for (boolean compressed : new boolean[] { false, true }) {
+            Panorama q = PanoramaFormat.read(new ByteArrayInputStream(bytes(p, compressed)));
+            assertEquals(p.channels(), q.channels());
+            for (int x = 0; x < ps.width(); ++x) {
+                for (int y = 0; y < ps.height(); ++y) {
+                    assertEquals(p.longitudeAt(x, y), q.longitudeAt(x, y), 0);
+                    assertEquals(p.slopeAt(x, y), q.slopeAt(x, y), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compactPanoramaIsReadBackIdentical() throws IOException {
+        PanoramaParameters ps = params(31, 17);
+        Panorama.Builder b = new Panorama.Builder(ps, EnumSet.allOf(Channel.class), true);
+        Random rng = newRandom();
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                b.setDistanceAt(x, y, rng.nextFloat() * 1e5f)
+                .setLongitudeAt(x, y, (float) toRadians(7) + rng.nextFloat() * 1e-3f)
+                .setLatitudeAt(x, y, (float) toRadians(46) + rng.nextFloat() * 1e-3f)
+                .setElevationAt(x, y, rng.nextFloat() * 4000)
+                .setSlopeAt(x, y, rng.nextFloat());
+            }
+        }
+        Panorama p = b.build();
+        for (boolean compressed : new boolean[] { false, true }) {
+            byte[] bytes = bytes(p, compressed);
+            Panorama q = PanoramaFormat.read(new ByteArrayInputStream(bytes));
+            assertTrue(q.isCompact());
+            assertSameBits(p, q);
+        }
+        assertTrue(bytes(p, false).length < ps.width() * ps.height() * (4 + 4 * 2) + 100);
+    }
+
+    @Test(expected = EOFException.class)
+    public void readFailsOnATruncatedStream() throws IOException {
+        byte[] bytes = bytes(panorama(params(31, 17), newRandom()), true);
+        PanoramaFormat.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsOnAnUnknownVersion() throws IOException {
+        byte[] bytes = bytes(panorama(params(31, 17), newRandom()), false);
+        bytes[7] = 99;
+        PanoramaFormat.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsOnAStreamWhichIsNotAPanorama() throws IOException {
+        PanoramaFormat.read(new ByteArrayInputStream(new byte[100]));
+    }
+}
@@ -3,12 +3,22 @@ package ch.epfl.alpano;
 import static ch.epfl.test.TestRandomizer.newRandom;
 import static java.lang.Math.toRadians;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Random;
 
 import org.junit.Test;
 
+import ch.epfl.alpano.Panorama.Channel;
+
 public class PanoramaTest {
     private static PanoramaParameters PARAMS() {
         return new PanoramaParameters(
@@ -101,4 +111,318 @@ public class PanoramaTest {
             }
         }
     }
+
+    @Test
+    public void previewKeepsOneSampleOutOfStride() {
+        PanoramaParameters ps = PARAMS();
+        Panorama.Builder b = new Panorama.Builder(ps);
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                b.setDistanceAt(x, y, x * 100 + y).setElevationAt(x, y, y);
+            }
+        }
+
+        Panorama p = b.preview(3);
+        PanoramaParameters pp = p.parameters();
+        assertEquals(3, pp.width());
+        assertEquals(3, pp.height());
+        assertEquals(ps.azimuthForX(0), pp.azimuthForX(0), 1e-9);
+        assertEquals(ps.azimuthForX(6), pp.azimuthForX(2), 1e-9);
+        assertEquals(ps.altitudeForY(6), pp.altitudeForY(2), 1e-9);
+        for (int x = 0; x < 3; ++x) {
+            for (int y = 0; y < 3; ++y) {
+                assertEquals(x * 300 + y * 3, p.distanceAt(x, y), 0);
+                assertEquals(y * 3, p.elevationAt(x, y), 0);
+            }
+        }
+
+        // the builder can still be used
+        b.setDistanceAt(0, 0, 1);
+        assertEquals(0, p.distanceAt(0, 0), 0);
+    }
+
+    @Test
+    public void previewRowsHaveTheAltitudesOfTheirSamples() {
+        // 11 rows, two of them left over with a stride of 4
+        PanoramaParameters ps = new PanoramaParameters(
+                new GeoPoint(toRadians(46), toRadians(6)), 1000, toRadians(180),
+                toRadians(60), 100_000, 9, 11);
+        Panorama.Builder b = new Panorama.Builder(ps);
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                b.setElevationAt(x, y, y);
+            }
+        }
+
+        Panorama p = b.preview(4);
+        PanoramaParameters pp = p.parameters();
+        assertEquals(3, pp.height());
+        for (int y = 0; y < pp.height(); ++y) {
+            int sourceY = (int) p.elevationAt(0, y);
+            assertEquals(ps.altitudeForY(sourceY), pp.altitudeForY(y), 1e-9);
+        }
+
+        // 10 rows, one of them left over: the altitudes are half a row away
+        ps = new PanoramaParameters(ps.observerPosition(), 1000, toRadians(180),
+                toRadians(60), 100_000, 9, 10);
+        b = new Panorama.Builder(ps);
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                b.setElevationAt(x, y, y);
+            }
+        }
+
+        p = b.preview(4);
+        pp = p.parameters();
+        for (int y = 0; y < pp.height(); ++y) {
+            int sourceY = (int) p.elevationAt(0, y);
+            assertEquals(ps.altitudeForY(sourceY), pp.altitudeForY(y), ps.anglePerPixels() / 2 + 1e-9);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void previewFailsWithStrideAsLargeAsTheWidth() {
+        new Panorama.Builder(PARAMS()).preview(9);
+    }
+
+    private static File tempFile() throws IOException {
+        File f = Files.createTempFile("panorama", ".bin").toFile();
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static void setRandomSamples(Panorama.Builder b, PanoramaParameters ps, Random rng) {
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                if (rng.nextInt(4) != 0) {
+                    b.setDistanceAt(x, y, rng.nextFloat() * 1e5f);
+                }
+                b.setLongitudeAt(x, y, rng.nextFloat())
+                .setLatitudeAt(x, y, rng.nextFloat())
+                .setElevationAt(x, y, rng.nextFloat() * 4000)
+                .setSlopeAt(x, y, rng.nextFloat());
+            }
+        }
+    }
+
+    private static void assertSamePanorama(Panorama expected, Panorama actual) {
+        PanoramaParameters ps = expected.parameters();
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                assertEquals(expected.distanceAt(x, y), actual.distanceAt(x, y), 0);
+                assertEquals(expected.longitudeAt(x, y), actual.longitudeAt(x, y), 0);
+                assertEquals(expected.latitudeAt(x, y), actual.latitudeAt(x, y), 0);
+                assertEquals(expected.elevationAt(x, y), actual.elevationAt(x, y), 0);
+                assertEquals(expected.slopeAt(x, y), actual.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void mappedBuilderGivesTheSamePanoramaAsInTheHeap() throws IOException {
+        PanoramaParameters ps = PARAMS();
+        Panorama.Builder inHeap = new Panorama.Builder(ps);
+        Panorama.Builder mapped = new Panorama.Builder(ps, tempFile());
+        setRandomSamples(inHeap, ps, new Random(1));
+        setRandomSamples(mapped, ps, new Random(1));
+        Panorama p = mapped.build();
+        assertSame(ps, p.parameters());
+        assertSamePanorama(inHeap.build(), p);
+    }
+
+    @Test
+    public void mappedPanoramaCanBeOpenedAgain() throws IOException {
+        PanoramaParameters ps = PARAMS();
+        File f = tempFile();
+        Panorama.Builder b = new Panorama.Builder(ps, f);
+        setRandomSamples(b, ps, newRandom());
+        Panorama p = b.build();
+
+        Panorama q = Panorama.map(f);
+        PanoramaParameters qs = q.parameters();
+        assertEquals(ps.observerPosition().longitude(), qs.observerPosition().longitude(), 0);
+        assertEquals(ps.observerPosition().latitude(), qs.observerPosition().latitude(), 0);
+        assertEquals(ps.observerElevation(), qs.observerElevation());
+        assertEquals(ps.centerAzimuth(), qs.centerAzimuth(), 0);
+        assertEquals(ps.horizontalFieldOfView(), qs.horizontalFieldOfView(), 0);
+        assertEquals(ps.maxDistance(), qs.maxDistance());
+        assertEquals(ps.width(), qs.width());
+        assertEquals(ps.height(), qs.height());
+        assertSamePanorama(p, q);
+    }
+
+    @Test
+    public void builderStoresAllChannelsByDefault() {
+        assertEquals(EnumSet.allOf(Channel.class), new Panorama.Builder(PARAMS()).build().channels());
+    }
+
+    @Test
+    public void panoramaWithSomeChannelsGivesTheirSamples() {
+        Panorama.Builder b = new Panorama.Builder(PARAMS(), EnumSet.of(Channel.DISTANCE, Channel.SLOPE));
+        b.setDistanceAt(1, 2, 3).setSlopeAt(4, 5, 6);
+        Panorama p = b.build();
+        assertEquals(EnumSet.of(Channel.DISTANCE, Channel.SLOPE), p.channels());
+        assertEquals(3, p.distanceAt(1, 2), 0);
+        assertEquals(Float.POSITIVE_INFINITY, p.distanceAt(0, 0), 0);
+        assertEquals(6, p.slopeAt(4, 5), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void accessorFailsOnAChannelNotStored() {
+        new Panorama.Builder(PARAMS(), EnumSet.of(Channel.DISTANCE)).build().elevationAt(0, 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void setterFailsOnAChannelNotStored() {
+        new Panorama.Builder(PARAMS(), EnumSet.of(Channel.DISTANCE)).setLongitudeAt(0, 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void builderFailsWithNoChannels() {
+        new Panorama.Builder(PARAMS(), Collections.emptySet());
+    }
+
+    @Test
+    public void previewHasTheChannelsOfTheBuilder() {
+        Panorama.Builder b = new Panorama.Builder(PARAMS(), EnumSet.of(Channel.ELEVATION));
+        b.setElevationAt(2, 2, 1500);
+        Panorama p = b.preview(2);
+        assertEquals(EnumSet.of(Channel.ELEVATION), p.channels());
+        assertEquals(1500, p.elevationAt(1, 1), 0);
+    }
+
+    @Test
+    public void mappedPanoramaWithSomeChannelsCanBeOpenedAgain() throws IOException {
+        File f = tempFile();
+        new Panorama.Builder(PARAMS(), f).build();
+        long allChannelsLength = f.length();
+
+        Panorama.Builder b = new Panorama.Builder(PARAMS(), EnumSet.of(Channel.LATITUDE, Channel.SLOPE), f);
+        b.setLatitudeAt(3, 4, 0.5f).setSlopeAt(5, 6, 0.25f);
+        b.build();
+        assertTrue(f.length() < allChannelsLength);
+
+        Panorama p = Panorama.map(f);
+        assertEquals(EnumSet.of(Channel.LATITUDE, Channel.SLOPE), p.channels());
+        assertEquals(0.5f, p.latitudeAt(3, 4), 0);
+        assertEquals(0.25f, p.slopeAt(5, 6), 0);
+    }
+
+    // the samples of the area around the observer, in the range of the
+    // compact form
+    private static void setSamplesAroundObserver(Panorama.Builder b, PanoramaParameters ps, Random rng) {
+        double radius = Distance.toRadians(ps.maxDistance()) / 2;
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                b.setDistanceAt(x, y, rng.nextFloat() * 1e5f)
+                .setLongitudeAt(x, y, (float) (ps.observerPosition().longitude() + (2 * rng.nextDouble() - 1) * radius))
+                .setLatitudeAt(x, y, (float) (ps.observerPosition().latitude() + (2 * rng.nextDouble() - 1) * radius))
+                .setElevationAt(x, y, rng.nextFloat() * 4000)
+                .setSlopeAt(x, y, rng.nextFloat() * (float) Math.PI / 2);
+            }
+        }
+    }
+
+    @Test
+    public void compactPanoramaHasSmallErrors() {
+        PanoramaParameters ps = PARAMS();
+        Panorama.Builder full = new Panorama.Builder(ps);
+        Panorama.Builder compact = new Panorama.Builder(ps, EnumSet.allOf(Channel.class), true);
+        setSamplesAroundObserver(full, ps, new Random(1));
+        setSamplesAroundObserver(compact, ps, new Random(1));
+        Panorama p = full.build(), q = compact.build();
+        assertFalse(p.isCompact());
+        assertTrue(q.isCompact());
+
+        // half a step of the latitude, and of the longitude at the equator
+        double angleError = Distance.toRadians(ps.maxDistance()) / 65534 + 1e-7;
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                assertEquals(p.distanceAt(x, y), q.distanceAt(x, y), 0);
+                assertEquals(p.longitudeAt(x, y), q.longitudeAt(x, y), angleError);
+                assertEquals(p.latitudeAt(x, y), q.latitudeAt(x, y), angleError);
+                assertEquals(p.elevationAt(x, y), q.elevationAt(x, y), 0.125 + 1e-3);
+                assertEquals(p.slopeAt(x, y), q.slopeAt(x, y), p.slopeAt(x, y) * 0x1p-11);
+            }
+        }
+    }
+
+    @Test
+    public void compactPanoramaKeepsTheSamplesNotSet() {
+        Panorama p = new Panorama.Builder(PARAMS(), EnumSet.allOf(Channel.class), true).build();
+        assertEquals(Float.POSITIVE_INFINITY, p.distanceAt(2, 3), 0);
+        assertEquals(0, p.longitudeAt(2, 3), 0);
+        assertEquals(0, p.latitudeAt(2, 3), 0);
+        assertEquals(0, p.elevationAt(2, 3), 0);
+        assertEquals(0, p.slopeAt(2, 3), 0);
+    }
+
+    @Test
+    public void compactPanoramaClampsTheValuesOutOfItsRange() {
+        Panorama.Builder b = new Panorama.Builder(PARAMS(), EnumSet.of(Channel.ELEVATION), true);
+        b.setElevationAt(0, 0, -5000).setElevationAt(1, 0, 20_000).setElevationAt(2, 0, 1234.1f);
+        Panorama p = b.build();
+        assertEquals(-1000, p.elevationAt(0, 0), 0);
+        assertEquals(15383.5, p.elevationAt(1, 0), 0);
+        assertEquals(1234, p.elevationAt(2, 0), 0);
+    }
+
+    @Test
+    public void previewOfACompactPanoramaHasTheSameSamples() {
+        PanoramaParameters ps = PARAMS();
+        Panorama.Builder b = new Panorama.Builder(ps, EnumSet.allOf(Channel.class), true);
+        setSamplesAroundObserver(b, ps, newRandom());
+        Panorama preview = b.preview(2);
+        Panorama p = b.build();
+        assertTrue(preview.isCompact());
+        for (int x = 0; x < preview.parameters().width(); ++x) {
+            for (int y = 0; y < preview.parameters().height(); ++y) {
+                assertEquals(p.longitudeAt(2 * x, 2 * y), preview.longitudeAt(x, y), 0);
+                assertEquals(p.latitudeAt(2 * x, 2 * y), preview.latitudeAt(x, y), 0);
+                assertEquals(p.elevationAt(2 * x, 2 * y), preview.elevationAt(x, y), 0);
+                assertEquals(p.slopeAt(2 * x, 2 * y), preview.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void mappedCompactPanoramaCanBeOpenedAgain() throws IOException {
+        PanoramaParameters ps = PARAMS();
+        File f = tempFile();
+        new Panorama.Builder(ps, f).build();
+        long floatsLength = f.length();
+
+        Panorama.Builder b = new Panorama.Builder(ps, EnumSet.allOf(Channel.class), true, f);
+        setSamplesAroundObserver(b, ps, newRandom());
+        Panorama p = b.build();
+        assertTrue(f.length() < floatsLength);
+
+        Panorama q = Panorama.map(f);
+        assertTrue(q.isCompact());
+        assertSamePanorama(p, q);
+    }
+
+    @Test(expected = IOException.class)
+    public void mapFailsOnAPanoramaNotBuilt() throws IOException {
+        File f = tempFile();
+        new Panorama.Builder(PARAMS(), f).setDistanceAt(0, 0, 1);
+        Panorama.map(f);
+    }
+
+    @Test(expected = IOException.class)
+    public void mapFailsOnATruncatedFile() throws IOException {
+        File f = tempFile();
+        new Panorama.Builder(PARAMS(), f).build();
+        try (RandomAccessFile r = new RandomAccessFile(f, "rw")) {
+            r.setLength(r.length() - 4);
+        }
+        Panorama.map(f);
+    }
+
+    @Test(expected = IOException.class)
+    public void mapFailsOnAFileWhichIsNotAPanorama() throws IOException {
+        File f = tempFile();
+        Files.write(f.toPath(), new byte[100]);
+        Panorama.map(f);
+    }
 }
@@ -57,6 +57,38 @@ final class CompositeDiscreteElevationModel implements DiscreteElevationModel {
 
     }
 
+    @Override
+    public void elevationSamples(int x, int y, int width, int height,
+            double[] elevations) {
+        // the whole block is read from one of the dems if possible, dem2 only
+        // if no sample of the block is in dem1, which is read first
+        if (DiscreteElevationModel.containsBlock(dem1.extent(), x, y, width,
+                height)) {
+            dem1.elevationSamples(x, y, width, height, elevations);
+        } else if (DiscreteElevationModel.containsBlock(dem2.extent(), x, y,
+                width, height)
+                && !intersectsBlock(dem1.extent(), x, y, width, height)) {
+            dem2.elevationSamples(x, y, width, height, elevations);
+        } else {
+            DiscreteElevationModel.super.elevationSamples(x, y, width, height,
+                    elevations);
+        }
+    }
+
+    @Override
+    public void prefetch(Interval2D area) {
+        dem1.prefetch(area);
+        dem2.prefetch(area);
+    }
+
+    private static boolean intersectsBlock(Interval2D area, int x, int y,
+            int width, int height) {
+        return x <= area.iX().includedTo()
+                && x + width - 1 >= area.iX().includedFrom()
+                && y <= area.iY().includedTo()
+                && y + height - 1 >= area.iY().includedFrom();
+    }
+
     @Override
     public void close() throws Exception {
         dem1.close();
@@ -3,6 +3,7 @@ package ch.epfl.alpano.dem;
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
 import static ch.epfl.test.TestRandomizer.newRandom;
 import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -84,6 +85,27 @@ public class CompositeDiscreteElevationModelTest {
         assertEquals(2, dem12.elevationSample(-100_000, 200_000), 0);
     }
 
+    @SuppressWarnings("resource")
+    @Test
+    public void elevationSamplesWorksAcrossBothSubDEMs() {
+        ConstantElevationDEM dem1 = new ConstantElevationDEM(ext1, 1);
+        ConstantElevationDEM dem2 = new ConstantElevationDEM(ext2, 2);
+        DiscreteElevationModel dem12 = dem1.union(dem2);
+        double[] z = new double[6];
+        dem12.elevationSamples(0, 99_999, 2, 3, z);
+        assertArrayEquals(new double[] { 1, 1, 1, 1, 2, 2 }, z, 0);
+        dem12.elevationSamples(0, 150_000, 3, 2, z);
+        assertArrayEquals(new double[] { 2, 2, 2, 2, 2, 2 }, z, 0);
+    }
+
+    @SuppressWarnings("resource")
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationSamplesFailsWhenBlockLeavesExtent() {
+        ConstantElevationDEM dem1 = new ConstantElevationDEM(ext1, 1);
+        ConstantElevationDEM dem2 = new ConstantElevationDEM(ext2, 2);
+        dem1.union(dem2).elevationSamples(100_000, 199_999, 2, 2, new double[4]);
+    }
+
     @SuppressWarnings("resource")
     @Test
     public void closeClosesBothSubDEMs() throws Exception {
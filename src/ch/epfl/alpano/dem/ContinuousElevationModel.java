@@ -1,13 +1,17 @@
 package ch.epfl.alpano.dem;
 
 import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
 import static ch.epfl.alpano.Math2.*;
 import static ch.epfl.alpano.Distance.*;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_RADIAN;
 import static java.lang.Math.*;
 import static java.util.Objects.requireNonNull;
+import static ch.epfl.alpano.Preconditions.checkArgument;
 import static ch.epfl.alpano.dem.DiscreteElevationModel.sampleIndex;
+import static ch.epfl.alpano.dem.DiscreteElevationModel.containsBlock;
 
 /**
  * Class that represents a continuous elevation model which gives the elevation
@@ -21,6 +25,8 @@ import static ch.epfl.alpano.dem.DiscreteElevationModel.sampleIndex;
 final public class ContinuousElevationModel {
 
     private final DiscreteElevationModel dem;
+    private final ElevationPyramid pyramid;
+    private final SlopeGrid slopes;
     private static final double d = toMeters(1 / SAMPLES_PER_RADIAN);
 
     /**
@@ -33,6 +39,51 @@ final public class ContinuousElevationModel {
      */
     public ContinuousElevationModel(DiscreteElevationModel dem) {
         this.dem = requireNonNull(dem);
+        this.pyramid = null;
+        this.slopes = null;
+    }
+
+    private ContinuousElevationModel(DiscreteElevationModel dem,
+            ElevationPyramid pyramid, SlopeGrid slopes) {
+        this.dem = dem;
+        this.pyramid = pyramid;
+        this.slopes = slopes;
+    }
+
+    /**
+     * Gives the same continuous elevation model, using a pyramid of maximum
+     * elevations to bound the elevation of large areas
+     * 
+     * @param pyramid
+     *            the pyramid built on the DEM of this model
+     * @return the model using the pyramid
+     * @throws NullPointerException
+     *             if the pyramid is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the pyramid was not built on the DEM of this model
+     * @see #maxElevationBetween(double, double, double, double)
+     */
+    public ContinuousElevationModel withPyramid(ElevationPyramid pyramid) {
+        checkArgument(requireNonNull(pyramid).dem() == dem);
+        return new ContinuousElevationModel(dem, pyramid, slopes);
+    }
+
+    /**
+     * Gives the same continuous elevation model, reading the slopes of the
+     * samples in a precomputed grid instead of computing them
+     * 
+     * @param slopes
+     *            the slope grid built on the DEM of this model
+     * @return the model using the slope grid
+     * @throws NullPointerException
+     *             if the grid is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the grid was not built on the DEM of this model
+     * @see SlopeGrid#MAX_ERROR
+     */
+    public ContinuousElevationModel withSlopeGrid(SlopeGrid slopes) {
+        checkArgument(requireNonNull(slopes).dem() == dem);
+        return new ContinuousElevationModel(dem, pyramid, slopes);
     }
 
     /**
@@ -45,10 +96,59 @@ final public class ContinuousElevationModel {
      * 
      */
     public double elevationAt(GeoPoint p) {
-        // indexes of the point
-        double xp = sampleIndex(p.longitude());
-        double yp = sampleIndex(p.latitude());
+        return elevationAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Gives the elevation at a longitude and a latitude using bilinear
+     * interpolation, without creating any object
+     * 
+     * @param longitude
+     *            : the longitude of the location, in radians
+     * @param latitude
+     *            : the latitude of the location, in radians
+     * @return the elevation at the wanted location
+     */
+    public double elevationAt(double longitude, double latitude) {
+        return elevationAtSample(sampleIndex(longitude), sampleIndex(latitude));
+    }
+
+    /**
+     * Gives the elevation at a longitude and a latitude using bilinear
+     * interpolation, reading its four samples at once in a given array. The
+     * result is the same as the one of elevationAt, but the samples are only
+     * checked once, which makes repeated calls cheaper
+     * 
+     * @param longitude
+     *            : the longitude of the location, in radians
+     * @param latitude
+     *            : the latitude of the location, in radians
+     * @param samples
+     *            : the array in which the samples are read, of at least four
+     *            elements, whose content is overwritten
+     * @return the elevation at the wanted location
+     * @throws IllegalArgumentException
+     *             if the array has less than four elements
+     * @see #elevationAt(double, double)
+     */
+    public double elevationAt(double longitude, double latitude,
+            double[] samples) {
+        return elevationAtSample(sampleIndex(longitude), sampleIndex(latitude),
+                samples);
+    }
 
+    /**
+     * Gives the elevation at fractional sample indexes using bilinear
+     * interpolation
+     * 
+     * @param xp
+     *            : the first index of the location
+     * @param yp
+     *            : the second index of the location
+     * @return the elevation at the wanted location
+     * @see DiscreteElevationModel#sampleIndex(double)
+     */
+    public double elevationAtSample(double xp, double yp) {
         int x = (int) floor(xp);
         int y = (int) floor(yp);
 
@@ -61,6 +161,31 @@ final public class ContinuousElevationModel {
         return bilerp(z00, z10, z01, z11, xp - x, yp - y);
     }
 
+    /**
+     * Gives the elevation at fractional sample indexes using bilinear
+     * interpolation, reading its four samples at once in a given array
+     * 
+     * @param xp
+     *            : the first index of the location
+     * @param yp
+     *            : the second index of the location
+     * @param samples
+     *            : the array in which the samples are read, of at least four
+     *            elements, whose content is overwritten
+     * @return the elevation at the wanted location
+     * @throws IllegalArgumentException
+     *             if the array has less than four elements
+     * @see #elevationAtSample(double, double)
+     */
+    public double elevationAtSample(double xp, double yp, double[] samples) {
+        int x = (int) floor(xp);
+        int y = (int) floor(yp);
+
+        samplesAround(x, y, 2, samples);
+        return bilerp(samples[0], samples[1], samples[2], samples[3], xp - x,
+                yp - y);
+    }
+
     /**
      * Gives the slope at any point in the boundaries of the DEM using bilinear
      * interpolation
@@ -70,10 +195,35 @@ final public class ContinuousElevationModel {
      * @return the elevation at the wanted location
      */
     public double slopeAt(GeoPoint p) {
-        // indexes of the point
-        double xp = sampleIndex(p.longitude());
-        double yp = sampleIndex(p.latitude());
+        return slopeAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Gives the slope at a longitude and a latitude using bilinear
+     * interpolation, without creating any object
+     * 
+     * @param longitude
+     *            : the longitude of the location, in radians
+     * @param latitude
+     *            : the latitude of the location, in radians
+     * @return the slope at the wanted location
+     */
+    public double slopeAt(double longitude, double latitude) {
+        return slopeAtSample(sampleIndex(longitude), sampleIndex(latitude));
+    }
 
+    /**
+     * Gives the slope at fractional sample indexes using bilinear
+     * interpolation
+     * 
+     * @param xp
+     *            : the first index of the location
+     * @param yp
+     *            : the second index of the location
+     * @return the slope at the wanted location
+     * @see DiscreteElevationModel#sampleIndex(double)
+     */
+    public double slopeAtSample(double xp, double yp) {
         int x = (int) floor(xp);
         int y = (int) floor(yp);
 
@@ -86,6 +236,193 @@ final public class ContinuousElevationModel {
         return bilerp(z00, z10, z01, z11, xp - x, yp - y);
     }
 
+    /**
+     * Gives both the elevation and the slope at a longitude and a latitude,
+     * reading the samples around the location only once. The results are the
+     * same as the ones of elevationAt and slopeAt
+     * 
+     * @param longitude
+     *            : the longitude of the location, in radians
+     * @param latitude
+     *            : the latitude of the location, in radians
+     * @param elevationAndSlope
+     *            : the array in which the elevation (at index 0) and the slope
+     *            (at index 1) are written
+     * @throws IllegalArgumentException
+     *             if the array has less than two elements
+     * @see #elevationAt(double, double)
+     * @see #slopeAt(double, double)
+     */
+    public void elevationAndSlopeAt(double longitude, double latitude,
+            double[] elevationAndSlope) {
+        checkArgument(elevationAndSlope.length >= 2);
+
+        double xp = sampleIndex(longitude);
+        double yp = sampleIndex(latitude);
+
+        // the slopes are read from the grid, only the elevations are needed
+        if (slopes != null) {
+            elevationAndSlope[0] = elevationAtSample(xp, yp);
+            elevationAndSlope[1] = slopeAtSample(xp, yp);
+            return;
+        }
+
+        int x = (int) floor(xp);
+        int y = (int) floor(yp);
+        double dx = xp - x;
+        double dy = yp - y;
+
+        // the 3x3 samples (but the corner (2, 2)) used by the interpolation of
+        // the elevation and by the slopes of its four points
+        double z00 = elevationAtIndex(x, y);
+        double z10 = elevationAtIndex(x + 1, y);
+        double z20 = elevationAtIndex(x + 2, y);
+        double z01 = elevationAtIndex(x, y + 1);
+        double z11 = elevationAtIndex(x + 1, y + 1);
+        double z21 = elevationAtIndex(x + 2, y + 1);
+        double z02 = elevationAtIndex(x, y + 2);
+        double z12 = elevationAtIndex(x + 1, y + 2);
+
+        interpolate(z00, z10, z20, z01, z11, z21, z02, z12, dx, dy,
+                elevationAndSlope);
+    }
+
+    /**
+     * Gives both the elevation and the slope at a longitude and a latitude,
+     * reading the samples around the location at once in a given array. The
+     * results are the same as the ones of elevationAt and slopeAt, but the
+     * samples are only checked once, which makes repeated calls cheaper
+     * 
+     * @param longitude
+     *            : the longitude of the location, in radians
+     * @param latitude
+     *            : the latitude of the location, in radians
+     * @param elevationAndSlope
+     *            : the array in which the elevation (at index 0) and the slope
+     *            (at index 1) are written
+     * @param samples
+     *            : the array in which the samples are read, of at least nine
+     *            elements, whose content is overwritten
+     * @throws IllegalArgumentException
+     *             if the first array has less than two elements, or the
+     *             second one less than nine
+     * @see #elevationAndSlopeAt(double, double, double[])
+     */
+    public void elevationAndSlopeAt(double longitude, double latitude,
+            double[] elevationAndSlope, double[] samples) {
+        checkArgument(elevationAndSlope.length >= 2);
+
+        double xp = sampleIndex(longitude);
+        double yp = sampleIndex(latitude);
+
+        // the slopes are read from the grid, only the elevations are needed
+        if (slopes != null) {
+            elevationAndSlope[0] = elevationAtSample(xp, yp, samples);
+            elevationAndSlope[1] = slopeAtSample(xp, yp);
+            return;
+        }
+
+        int x = (int) floor(xp);
+        int y = (int) floor(yp);
+
+        samplesAround(x, y, 3, samples);
+        interpolate(samples[0], samples[1], samples[2], samples[3], samples[4],
+                samples[5], samples[6], samples[7], xp - x, yp - y,
+                elevationAndSlope);
+    }
+
+    // the elevation and the slope interpolated from the 3x3 samples (but the
+    // corner (2, 2)) starting at the sample below the location
+    private static void interpolate(double z00, double z10, double z20,
+            double z01, double z11, double z21, double z02, double z12,
+            double dx, double dy, double[] elevationAndSlope) {
+        elevationAndSlope[0] = bilerp(z00, z10, z01, z11, dx, dy);
+        elevationAndSlope[1] = bilerp(slope(z00, z10, z01),
+                slope(z10, z20, z11), slope(z01, z11, z02),
+                slope(z11, z21, z12), dx, dy);
+    }
+
+    /**
+     * Gives an upper bound of the elevation of all the points of an area,
+     * delimited by its minimal and maximal longitudes and latitudes
+     * 
+     * @param minLongitude
+     *            the minimal longitude of the area
+     * @param minLatitude
+     *            the minimal latitude of the area
+     * @param maxLongitude
+     *            the maximal longitude of the area
+     * @param maxLatitude
+     *            the maximal latitude of the area
+     * @return an upper bound of the elevation in the area, infinity if this
+     *         model has no pyramid covering the area
+     * @throws IllegalArgumentException
+     *             if the minimal coordinates are greater than the maximal ones
+     */
+    public double maxElevationBetween(double minLongitude, double minLatitude,
+            double maxLongitude, double maxLatitude) {
+        checkArgument(
+                minLongitude <= maxLongitude && minLatitude <= maxLatitude);
+
+        if (pyramid == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        // the samples used by the interpolation of the points in the area
+        return pyramid.maxElevation((int) floor(sampleIndex(minLongitude)),
+                (int) floor(sampleIndex(minLatitude)),
+                (int) floor(sampleIndex(maxLongitude)) + 1,
+                (int) floor(sampleIndex(maxLatitude)) + 1);
+    }
+
+    /**
+     * Prepares the samples used to compute the elevation and the slope of all
+     * the points of an area to be read as fast as possible, delimited by its
+     * minimal and maximal longitudes and latitudes
+     * 
+     * @param minLongitude
+     *            the minimal longitude of the area
+     * @param minLatitude
+     *            the minimal latitude of the area
+     * @param maxLongitude
+     *            the maximal longitude of the area
+     * @param maxLatitude
+     *            the maximal latitude of the area
+     * @throws IllegalArgumentException
+     *             if the minimal coordinates are greater than the maximal ones
+     * @see DiscreteElevationModel#prefetch(Interval2D)
+     */
+    public void prefetch(double minLongitude, double minLatitude,
+            double maxLongitude, double maxLatitude) {
+        checkArgument(
+                minLongitude <= maxLongitude && minLatitude <= maxLatitude);
+
+        // the slopes of the last points also need the next samples
+        Interval2D area = new Interval2D(
+                new Interval1D((int) floor(sampleIndex(minLongitude)),
+                        (int) floor(sampleIndex(maxLongitude)) + 2),
+                new Interval1D((int) floor(sampleIndex(minLatitude)),
+                        (int) floor(sampleIndex(maxLatitude)) + 2));
+        dem.prefetch(area);
+    }
+
+    // read the square block of samples starting at (x, y) row by row, at once
+    // when it is in the dem, the samples outside of it having an elevation of 0
+    private void samplesAround(int x, int y, int size, double[] samples) {
+        checkArgument(samples.length >= size * size);
+
+        if (containsBlock(dem.extent(), x, y, size, size)) {
+            dem.elevationSamples(x, y, size, size, samples);
+            return;
+        }
+
+        for (int j = 0; j < size; ++j) {
+            for (int i = 0; i < size; ++i) {
+                samples[i + j * size] = elevationAtIndex(x + i, y + j);
+            }
+        }
+    }
+
     private double elevationAtIndex(int x, int y) {
         if (dem.extent().contains(x, y)) {
             return dem.elevationSample(x, y);
@@ -95,11 +432,17 @@ final public class ContinuousElevationModel {
     }
 
     private double slopeAtIndex(int x, int y) {
-        return acos(
-                d / (sqrt(
-                        sq(elevationAtIndex(x, y) - elevationAtIndex(x + 1, y))
-                                + sq(elevationAtIndex(x, y)
-                                        - elevationAtIndex(x, y + 1))
-                                + sq(d))));
+        if (slopes != null && dem.extent().contains(x, y)) {
+            return slopes.slopeSample(x, y);
+        }
+
+        return slope(elevationAtIndex(x, y), elevationAtIndex(x + 1, y),
+                elevationAtIndex(x, y + 1));
+    }
+
+    // slope at a sample given its elevation and the ones of its neighbours
+    // along both axes
+    static double slope(double z, double zNextX, double zNextY) {
+        return acos(d / (sqrt(sq(z - zNextX) + sq(z - zNextY) + sq(d))));
     }
 }
@@ -108,6 +108,69 @@ public class ContinuousElevationModelTest {
         }
     }
 
+    @Test
+    public void elevationAndSlopeAtGivesSameValuesAsSeparateCalls() {
+        DiscreteElevationModel dDEM = new RandomElevationDEM(EXT_13_13, 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        double[] elevationAndSlope = new double[2];
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            double x = rng.nextDouble() * 16 - 1;
+            double y = rng.nextDouble() * 16 - 1;
+            GeoPoint p = pointForSampleIndex(x, y);
+            cDEM.elevationAndSlopeAt(p.longitude(), p.latitude(), elevationAndSlope);
+            assertEquals(cDEM.elevationAt(p), elevationAndSlope[0], 0);
+            assertEquals(cDEM.slopeAt(p), elevationAndSlope[1], 0);
+        }
+    }
+
+    @Test
+    public void readingSamplesInAnArrayGivesSameValues() {
+        DiscreteElevationModel dDEM = new RandomElevationDEM(EXT_13_13, 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        double[] expected = new double[2];
+        double[] actual = new double[2];
+        double[] samples = new double[9];
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            // some of the blocks are partly outside of the extent
+            double x = rng.nextDouble() * 16 - 1;
+            double y = rng.nextDouble() * 16 - 1;
+            GeoPoint p = pointForSampleIndex(x, y);
+            cDEM.elevationAndSlopeAt(p.longitude(), p.latitude(), expected);
+            cDEM.elevationAndSlopeAt(p.longitude(), p.latitude(), actual, samples);
+            assertEquals(expected[0], actual[0], 0);
+            assertEquals(expected[1], actual[1], 0);
+            assertEquals(expected[0], cDEM.elevationAt(p.longitude(), p.latitude(), samples), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationAndSlopeAtFailsWithTooSmallSampleArray() {
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(new RandomElevationDEM(EXT_13_13, 1000));
+        cDEM.elevationAndSlopeAt(0, 0, new double[2], new double[4]);
+    }
+
+    @Test
+    public void elevationAtSampleMatchesElevationAt() {
+        DiscreteElevationModel dDEM = new RandomElevationDEM(EXT_13_13, 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            GeoPoint p = pointForSampleIndex(rng.nextDouble() * 13, rng.nextDouble() * 13);
+            double x = DiscreteElevationModel.sampleIndex(p.longitude());
+            double y = DiscreteElevationModel.sampleIndex(p.latitude());
+            assertEquals(cDEM.elevationAt(p), cDEM.elevationAtSample(x, y), 0);
+            assertEquals(cDEM.slopeAt(p), cDEM.slopeAtSample(x, y), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationAndSlopeAtFailsWithTooSmallArray() {
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(new RandomElevationDEM(EXT_13_13, 1000));
+        cDEM.elevationAndSlopeAt(0, 0, new double[1]);
+    }
+
     private static GeoPoint pointForSampleIndex(double x, double y) {
         return new GeoPoint(toRadians(x / 3600d), toRadians(y / 3600d));
     }
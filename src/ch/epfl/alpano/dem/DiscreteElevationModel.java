@@ -1,5 +1,7 @@
 package ch.epfl.alpano.dem;
 
+import static ch.epfl.alpano.Preconditions.checkArgument;
+
 import ch.epfl.alpano.Interval2D;
 
 /**
@@ -54,6 +56,97 @@ public interface DiscreteElevationModel extends AutoCloseable {
      */
     double elevationSample(int x, int y);
 
+    /**
+     * Method that prepares the samples of an area to be read as fast as
+     * possible, for example by loading them in memory, before they are
+     * actually read. It does not change the elevations and does nothing by
+     * default
+     * 
+     * @param area
+     *            the area whose samples will be read, which may exceed the
+     *            extent of the DEM
+     */
+    default void prefetch(Interval2D area) {
+    }
+
+    /**
+     * Method that reads the elevations of a block of samples in the DEM,
+     * checking only once that the block is in the extent
+     * 
+     * @param x
+     *            the first index of the first sample of the block
+     * @param y
+     *            the second index of the first sample of the block
+     * @param width
+     *            the number of samples of each row of the block
+     * @param height
+     *            the number of rows of the block
+     * @param elevations
+     *            the array in which the elevations are written, row by row
+     *            (the sample (x + i, y + j) at index i + j * width)
+     * @throws IllegalArgumentException
+     *             if the block is empty, is not in the extent, or if the array
+     *             is too small
+     */
+    default void elevationSamples(int x, int y, int width, int height,
+            double[] elevations) {
+        checkBlock(this, x, y, width, height, elevations);
+
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                elevations[i + j * width] = elevationSample(x + i, y + j);
+            }
+        }
+    }
+
+    /**
+     * Checks that a block of samples can be read from a DEM
+     * 
+     * @param dem
+     *            the DEM
+     * @param x
+     *            the first index of the first sample of the block
+     * @param y
+     *            the second index of the first sample of the block
+     * @param width
+     *            the number of samples of each row of the block
+     * @param height
+     *            the number of rows of the block
+     * @param elevations
+     *            the array in which the elevations are written
+     * @throws IllegalArgumentException
+     *             if the block is empty, is not in the extent, or if the array
+     *             is too small
+     */
+    static void checkBlock(DiscreteElevationModel dem, int x, int y, int width,
+            int height, double[] elevations) {
+        checkArgument(width > 0 && height > 0, "empty block");
+        checkArgument(elevations.length >= width * height, "array too small");
+        checkArgument(containsBlock(dem.extent(), x, y, width, height),
+                "block not in the extent");
+    }
+
+    /**
+     * Tells if a block of samples is in an area
+     * 
+     * @param area
+     *            the area
+     * @param x
+     *            the first index of the first sample of the block
+     * @param y
+     *            the second index of the first sample of the block
+     * @param width
+     *            the number of samples of each row of the block
+     * @param height
+     *            the number of rows of the block
+     * @return true if all the samples of the block are in the area
+     */
+    static boolean containsBlock(Interval2D area, int x, int y, int width,
+            int height) {
+        return area.contains(x, y)
+                && area.contains(x + width - 1, y + height - 1);
+    }
+
     /**
      * Will make the union between the DEM and an other one
      * 
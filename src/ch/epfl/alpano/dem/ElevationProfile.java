@@ -21,7 +21,8 @@ import ch.epfl.alpano.GeoPoint;
 public final class ElevationProfile {
 
     private final ContinuousElevationModel elevationModel;
-    private final GeoPoint[] positions;
+    private final double[] longitudes;
+    private final double[] latitudes;
     private final double length;
 
     private final static double POINT_INTERVAL = 4096;
@@ -51,8 +52,10 @@ public final class ElevationProfile {
         this.length = length;
         this.elevationModel = requireNonNull(elevationModel);
 
-        // construct an array containing several positions split regularly
-        positions = new GeoPoint[(int) ceil((length / POINT_INTERVAL)) + 1];
+        // construct arrays containing several positions split regularly
+        int pointCount = (int) ceil((length / POINT_INTERVAL)) + 1;
+        longitudes = new double[pointCount];
+        latitudes = new double[pointCount];
 
         double oriLatitude = origin.latitude();
         double cosLat = cos(oriLatitude);
@@ -62,7 +65,7 @@ public final class ElevationProfile {
         double cosAz = cos(mathAzimuth);
         double oriLongitude = origin.longitude();
 
-        for (int i = 0; i < positions.length; ++i) {
+        for (int i = 0; i < pointCount; ++i) {
             double latitude = asin((sinLat
                     * cos(Distance.toRadians(i * POINT_INTERVAL)))
                     + (cosLat * sin(Distance.toRadians(i * POINT_INTERVAL))
@@ -73,7 +76,8 @@ public final class ElevationProfile {
                             / cos(latitude)),
                     oriLongitude);
 
-            positions[i] = new GeoPoint(longitude, latitude);
+            longitudes[i] = longitude;
+            latitudes[i] = latitude;
         }
 
     }
@@ -89,9 +93,7 @@ public final class ElevationProfile {
      */
 
     public double slopeAt(double x) {
-        checkArgument(x <= length && x >= 0);
-        GeoPoint p = positionAt(x);
-        return elevationModel.slopeAt(p);
+        return elevationModel.slopeAt(longitudeAt(x), latitudeAt(x));
     }
 
     /**
@@ -104,9 +106,66 @@ public final class ElevationProfile {
      *             if x is negative is bigger than the length
      */
     public double elevationAt(double x) {
-        checkArgument(x <= length && x >= 0);
-        GeoPoint p = positionAt(x);
-        return elevationModel.elevationAt(p);
+        return elevationModel.elevationAt(longitudeAt(x), latitudeAt(x));
+    }
+
+    /**
+     * Compute the elevation at a certain distance from the original location,
+     * reading the samples of the elevation model in a given array
+     *
+     * @param x
+     *            : the distance from the original location
+     * @param samples
+     *            : the array in which the samples are read, of at least four
+     *            elements
+     * @return the elevation at a wanted distance from the original location
+     * @throws IllegalArgumentException
+     *             if x is negative is bigger than the length, or if the array
+     *             has less than four elements
+     * @see ContinuousElevationModel#elevationAt(double, double, double[])
+     */
+    public double elevationAt(double x, double[] samples) {
+        return elevationModel.elevationAt(longitudeAt(x), latitudeAt(x),
+                samples);
+    }
+
+    /**
+     * Gives an upper bound of the elevation of the profile between two
+     * distances from the original location
+     * 
+     * @param from
+     *            : the first distance from the original location
+     * @param to
+     *            : the second distance from the original location
+     * @return an upper bound of the elevation between the two distances
+     * @throws IllegalArgumentException
+     *             if from is negative, if to is bigger than the length or if
+     *             from is bigger than to
+     * @see ContinuousElevationModel#maxElevationBetween(double, double,
+     *      double, double)
+     */
+    public double maxElevationBetween(double from, double to) {
+        checkArgument(from >= 0 && from <= to && to <= length);
+
+        // the positions between from and to are interpolated between these
+        // points, thus contained in the area they delimit
+        int first = (int) floor(from / POINT_INTERVAL);
+        int last = min((int) floor(to / POINT_INTERVAL) + 1,
+                longitudes.length - 1);
+
+        double minLongitude = longitudes[first];
+        double maxLongitude = minLongitude;
+        double minLatitude = latitudes[first];
+        double maxLatitude = minLatitude;
+        for (int i = first + 1; i <= last; ++i) {
+            minLongitude = min(minLongitude, longitudes[i]);
+            maxLongitude = max(maxLongitude, longitudes[i]);
+            minLatitude = min(minLatitude, latitudes[i]);
+            maxLatitude = max(maxLatitude, latitudes[i]);
+        }
+
+        return elevationModel.maxElevationBetween(minLongitude, minLatitude,
+                maxLongitude, maxLatitude);
     }
 
     /**
@@ -118,16 +177,48 @@ public final class ElevationProfile {
      * @return the location (GeoPoint) at a certain distance from the origin
      * @throws IllegalArgumentException
      *             if x is negative is bigger than the length
+     * @see #longitudeAt(double)
+     * @see #latitudeAt(double)
      */
     public GeoPoint positionAt(double x) {
+        return new GeoPoint(longitudeAt(x), latitudeAt(x));
+    }
+
+    /**
+     * Compute the longitude at a certain distance from the origin location
+     * using linear interpolation, without creating any object
+     * 
+     * @param x
+     *            : the distance from the original location
+     * @return the longitude at a certain distance from the origin
+     * @throws IllegalArgumentException
+     *             if x is negative is bigger than the length
+     */
+    public double longitudeAt(double x) {
+        return interpolate(longitudes, x);
+    }
+
+    /**
+     * Compute the latitude at a certain distance from the origin location
+     * using linear interpolation, without creating any object
+     * 
+     * @param x
+     *            : the distance from the original location
+     * @return the latitude at a certain distance from the origin
+     * @throws IllegalArgumentException
+     *             if x is negative is bigger than the length
+     */
+    public double latitudeAt(double x) {
+        return interpolate(latitudes, x);
+    }
+
+    // linear interpolation of the points of a coordinate
+    private double interpolate(double[] coordinates, double x) {
         checkArgument(x <= length && x >= 0);
         int x1 = (int) floor(x / POINT_INTERVAL);
 
-        double longitude = lerp(positions[x1].longitude(),
-                positions[x1 + 1].longitude(), x / POINT_INTERVAL - x1);
-        double latitude = lerp(positions[x1].latitude(),
-                positions[x1 + 1].latitude(), x / POINT_INTERVAL - x1);
-        return new GeoPoint(longitude, latitude);
+        return lerp(coordinates[x1], coordinates[x1 + 1],
+                x / POINT_INTERVAL - x1);
     }
 
 }
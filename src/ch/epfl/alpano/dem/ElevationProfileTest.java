@@ -125,6 +125,23 @@ public class ElevationProfileTest {
         p.positionAt(-1);
     }
 
+    @Test
+    public void longitudeAndLatitudeAtMatchPositionAt() {
+        ElevationProfile p = new ElevationProfile(newConstantSlopeDEM(), new GeoPoint(toRadians(3),toRadians(40)), 1, 100_000);
+        for (int i = 0; i < 100; ++i) {
+            double x = 999d * i;
+            GeoPoint g = p.positionAt(x);
+            assertEquals(g.longitude(), p.longitudeAt(x), 0);
+            assertEquals(g.latitude(), p.latitudeAt(x), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void latitudeAtFailsWhenXIsTooBig() {
+        ElevationProfile p = new ElevationProfile(newConstantSlopeDEM(), new GeoPoint(0,0), 0, 100);
+        p.latitudeAt(101);
+    }
+
     private static ContinuousElevationModel newConstantSlopeDEM() {
         Interval2D extent = new Interval2D(
                 new Interval1D(-10_000, 10_000),
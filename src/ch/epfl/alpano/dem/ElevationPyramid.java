@@ -0,0 +1,223 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.*;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * Class that represents a pyramid of maximum elevations over an area of a DEM
+ * (immutable class). The first level gives the maximum elevation of blocks of
+ * 16x16 samples, each following level the maximum of 2x2 blocks of the
+ * previous one. It allows to bound the elevation of large areas with a few
+ * reads only
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see DiscreteElevationModel
+ */
+public final class ElevationPyramid {
+
+    private static final int BASE_BLOCK_SIZE = 16;
+
+    private final DiscreteElevationModel dem;
+    private final Interval2D area;
+    private final float[][] levels;
+    private final int[] levelWidths;
+
+    /**
+     * Construct the pyramid over the whole extent of a DEM, reading all its
+     * samples once
+     *
+     * @param dem
+     *            the DEM
+     * @throws NullPointerException
+     *             if the dem is <code>null</code>
+     */
+    public ElevationPyramid(DiscreteElevationModel dem) {
+        this(dem, dem.extent());
+    }
+
+    /**
+     * Construct the pyramid over an area of a DEM, reading all the samples of
+     * this area once
+     *
+     * @param dem
+     *            the DEM
+     * @param area
+     *            the area covered by the pyramid
+     * @throws NullPointerException
+     *             if the dem or the area is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the area is not contained in the extent of the dem
+     */
+    public ElevationPyramid(DiscreteElevationModel dem, Interval2D area) {
+        this.dem = requireNonNull(dem);
+        this.area = requireNonNull(area);
+        // the bounds are compared, the sizes of large areas overflowing
+        Interval2D extent = dem.extent();
+        checkArgument(extent.contains(area.iX().includedFrom(),
+                area.iY().includedFrom())
+                && extent.contains(area.iX().includedTo(),
+                        area.iY().includedTo()));
+
+        // number of levels needed to end with a single block
+        int width = blocks(area.iX().size(), BASE_BLOCK_SIZE);
+        int height = blocks(area.iY().size(), BASE_BLOCK_SIZE);
+        int levelCount = 1;
+        while (width > 1 || height > 1) {
+            width = blocks(width, 2);
+            height = blocks(height, 2);
+            ++levelCount;
+        }
+
+        levels = new float[levelCount][];
+        levelWidths = new int[levelCount];
+
+        width = blocks(area.iX().size(), BASE_BLOCK_SIZE);
+        height = blocks(area.iY().size(), BASE_BLOCK_SIZE);
+        levels[0] = baseLevel(width, height);
+        levelWidths[0] = width;
+
+        for (int l = 1; l < levelCount; ++l) {
+            int previousWidth = width;
+            int previousHeight = height;
+            width = blocks(width, 2);
+            height = blocks(height, 2);
+
+            float[] previous = levels[l - 1];
+            float[] level = new float[width * height];
+            Arrays.fill(level, Float.NEGATIVE_INFINITY);
+            for (int y = 0; y < previousHeight; ++y) {
+                for (int x = 0; x < previousWidth; ++x) {
+                    int i = (y / 2) * width + x / 2;
+                    level[i] = max(level[i], previous[y * previousWidth + x]);
+                }
+            }
+
+            levels[l] = level;
+            levelWidths[l] = width;
+        }
+    }
+
+    // maximum of each block of BASE_BLOCK_SIZE x BASE_BLOCK_SIZE samples
+    private float[] baseLevel(int width, int height) {
+        float[] level = new float[width * height];
+        Arrays.fill(level, Float.NEGATIVE_INFINITY);
+
+        int fromX = area.iX().includedFrom();
+        int fromY = area.iY().includedFrom();
+
+        for (int y = fromY; y <= area.iY().includedTo(); ++y) {
+            int row = ((y - fromY) / BASE_BLOCK_SIZE) * width;
+            for (int x = fromX; x <= area.iX().includedTo(); ++x) {
+                int i = row + (x - fromX) / BASE_BLOCK_SIZE;
+                level[i] = max(level[i], upperFloat(dem.elevationSample(x, y)));
+            }
+        }
+        return level;
+    }
+
+    // smallest float greater or equal to v
+    private static float upperFloat(double v) {
+        float f = (float) v;
+        return f < v ? nextUp(f) : f;
+    }
+
+    // number of blocks of a given size needed to cover a length
+    private static int blocks(int length, int size) {
+        return (length + size - 1) / size;
+    }
+
+    /**
+     * The area covered by the pyramid
+     *
+     * @return the area
+     * @see Interval2D
+     */
+    public Interval2D area() {
+        return area;
+    }
+
+    // the DEM from which the pyramid was built
+    DiscreteElevationModel dem() {
+        return dem;
+    }
+
+    /**
+     * Gives an upper bound of the elevation of all the samples in a rectangle,
+     * samples outside of the extent of the DEM having an elevation of 0
+     *
+     * @param fromX
+     *            first included index of the rectangle
+     * @param fromY
+     *            second included index of the rectangle
+     * @param toX
+     *            last included first index of the rectangle
+     * @param toY
+     *            last included second index of the rectangle
+     * @return an upper bound of the elevation, infinity if a part of the
+     *         rectangle is inside the extent of the DEM but outside the area of
+     *         the pyramid
+     * @throws IllegalArgumentException
+     *             if the rectangle is empty
+     */
+    public double maxElevation(int fromX, int fromY, int toX, int toY) {
+        checkArgument(fromX <= toX && fromY <= toY);
+
+        Interval2D extent = dem.extent();
+        Interval1D eX = extent.iX();
+        Interval1D eY = extent.iY();
+
+        // clip the rectangle to the extent of the dem, elevation being 0
+        // outside of it
+        int cFromX = max(fromX, eX.includedFrom());
+        int cFromY = max(fromY, eY.includedFrom());
+        int cToX = min(toX, eX.includedTo());
+        int cToY = min(toY, eY.includedTo());
+
+        if (cFromX > cToX || cFromY > cToY) {
+            return 0;
+        }
+
+        Interval1D aX = area.iX();
+        Interval1D aY = area.iY();
+        if (!aX.contains(cFromX) || !aX.contains(cToX) || !aY.contains(cFromY)
+                || !aY.contains(cToY)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        boolean clipped = cFromX != fromX || cFromY != fromY || cToX != toX
+                || cToY != toY;
+
+        // finest level whose blocks are as large as the rectangle, which then
+        // spans at most 2x2 blocks
+        int span = max(cToX - cFromX, cToY - cFromY) + 1;
+        int l = 0;
+        while (l < levels.length - 1 && (BASE_BLOCK_SIZE << l) < span) {
+            ++l;
+        }
+
+        int blockSize = BASE_BLOCK_SIZE << l;
+        int bFromX = (cFromX - aX.includedFrom()) / blockSize;
+        int bToX = (cToX - aX.includedFrom()) / blockSize;
+        int bFromY = (cFromY - aY.includedFrom()) / blockSize;
+        int bToY = (cToY - aY.includedFrom()) / blockSize;
+
+        float[] level = levels[l];
+        int width = levelWidths[l];
+        float maxElevation = clipped ? 0 : Float.NEGATIVE_INFINITY;
+        for (int y = bFromY; y <= bToY; ++y) {
+            for (int x = bFromX; x <= bToX; ++x) {
+                maxElevation = max(maxElevation, level[y * width + x]);
+            }
+        }
+
+        return maxElevation;
+    }
+}
@@ -0,0 +1,122 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Double.POSITIVE_INFINITY;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class ElevationPyramidTest {
+    private final static Interval2D EXTENT = new Interval2D(
+            new Interval1D(-100, 200),
+            new Interval1D(50, 130));
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullDEM() {
+        new ElevationPyramid(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithAreaOutsideOfExtent() {
+        new ElevationPyramid(new RandomDEM(EXTENT), new Interval2D(
+                new Interval1D(0, 300),
+                new Interval1D(50, 130)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithAreaOutsideOfExtentWhoseSizeOverflows() {
+        // 65536 * 65537 overflows to the size of the intersection
+        new ElevationPyramid(new ConstantDEM(new Interval2D(
+                new Interval1D(0, 65535),
+                new Interval1D(0, 0)), 0), new Interval2D(
+                new Interval1D(0, 65535),
+                new Interval1D(0, 65536)));
+    }
+
+    @Test
+    public void maxElevationIsMaxOfSamples() {
+        RandomDEM dem = new RandomDEM(EXTENT);
+        ElevationPyramid pyramid = new ElevationPyramid(dem);
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            int fromX = -100 + rng.nextInt(301), toX = fromX + rng.nextInt(201 - fromX);
+            int fromY = 50 + rng.nextInt(81), toY = fromY + rng.nextInt(131 - fromY);
+            double bound = pyramid.maxElevation(fromX, fromY, toX, toY);
+            double max = Double.NEGATIVE_INFINITY;
+            for (int x = fromX; x <= toX; ++x)
+                for (int y = fromY; y <= toY; ++y)
+                    max = Math.max(max, dem.elevationSample(x, y));
+            assertEquals(true, bound >= max);
+        }
+    }
+
+    @Test
+    public void maxElevationIsExactOnConstantDEM() {
+        ElevationPyramid pyramid = new ElevationPyramid(new ConstantDEM(EXTENT, 1234));
+        assertEquals(1234, pyramid.maxElevation(-100, 50, 200, 130), 0);
+        assertEquals(1234, pyramid.maxElevation(3, 60, 3, 60), 0);
+    }
+
+    @Test
+    public void maxElevationIsZeroOutsideOfExtent() {
+        ElevationPyramid pyramid = new ElevationPyramid(new RandomDEM(EXTENT));
+        assertEquals(0, pyramid.maxElevation(201, 0, 300, 40), 0);
+    }
+
+    @Test
+    public void maxElevationIsInfiniteOutsideOfArea() {
+        RandomDEM dem = new RandomDEM(EXTENT);
+        ElevationPyramid pyramid = new ElevationPyramid(dem, new Interval2D(
+                new Interval1D(0, 100),
+                new Interval1D(50, 130)));
+        assertEquals(POSITIVE_INFINITY, pyramid.maxElevation(90, 60, 110, 70), 0);
+    }
+
+    private final static class RandomDEM implements DiscreteElevationModel {
+        private final Interval2D extent;
+
+        public RandomDEM(Interval2D extent) { this.extent = extent; }
+
+        @Override
+        public void close() throws Exception { }
+
+        @Override
+        public Interval2D extent() { return extent; }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            if (! extent.contains(x, y))
+                throw new IllegalArgumentException();
+            return new Random(31L * x + y).nextDouble() * 4000 - 100;
+        }
+    }
+
+    private final static class ConstantDEM implements DiscreteElevationModel {
+        private final Interval2D extent;
+        private final double elevation;
+
+        public ConstantDEM(Interval2D extent, double elevation) {
+            this.extent = extent;
+            this.elevation = elevation;
+        }
+
+        @Override
+        public void close() throws Exception { }
+
+        @Override
+        public Interval2D extent() { return extent; }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            if (! extent.contains(x, y))
+                throw new IllegalArgumentException();
+            return elevation;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ch.epfl.alpano.dem;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * Class that represents a DEM made of tiles of one degree, indexed in a grid
+ * so that the tile containing a sample is found in constant time, whatever
+ * the number of tiles. The coverage may be sparse, the samples of the missing
+ * tiles having an elevation of 0
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see DiscreteElevationModel
+ * @see HgtDiscreteElevationModel
+ */
+public final class GridDiscreteElevationModel
+        implements DiscreteElevationModel {
+
+    private final DiscreteElevationModel[] tiles;
+    private final TileGrid grid;
+
+    /**
+     * Construct the DEM from its tiles
+     *
+     * @param tiles
+     *            the tiles, each one covering exactly one degree
+     * @throws NullPointerException
+     *             if the list or one of the tiles is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the list is empty, if a tile does not cover exactly one
+     *             degree or if two tiles cover the same degree
+     */
+    public GridDiscreteElevationModel(
+            List<? extends DiscreteElevationModel> tiles) {
+        List<Interval2D> extents = new ArrayList<>();
+        for (DiscreteElevationModel tile : tiles) {
+            extents.add(requireNonNull(tile).extent());
+        }
+        grid = new TileGrid(extents);
+
+        this.tiles = new DiscreteElevationModel[grid.cellCount()];
+        for (DiscreteElevationModel tile : tiles) {
+            this.tiles[grid.cellOf(tile.extent())] = tile;
+        }
+    }
+
+    /**
+     * Construct the DEM from all the hgt files of a directory
+     *
+     * @param directory
+     *            the directory containing the hgt files
+     * @return the DEM
+     * @throws NullPointerException
+     *             if the directory is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the directory cannot be read, contains no hgt file or if
+     *             one of them is invalid
+     * @see HgtDiscreteElevationModel#HgtDiscreteElevationModel(File)
+     */
+    public static GridDiscreteElevationModel fromDirectory(File directory) {
+        List<DiscreteElevationModel> tiles = new ArrayList<>();
+        for (File file : HgtDiscreteElevationModel.filesIn(directory)) {
+            tiles.add(new HgtDiscreteElevationModel(file));
+        }
+        return new GridDiscreteElevationModel(tiles);
+    }
+
+    @Override
+    public Interval2D extent() {
+        return grid.extent();
+    }
+
+    @Override
+    public double elevationSample(int x, int y) {
+        int cell = grid.cellOfSample(x, y);
+        return cell == -1 ? 0 : tiles[cell].elevationSample(x, y);
+    }
+
+    @Override
+    public void elevationSamples(int x, int y, int width, int height,
+            double[] elevations) {
+        // the whole block is read from a single tile if possible, which
+        // checks it
+        int cell = grid.cellOfBlock(x, y, width, height);
+        if (cell != -1) {
+            tiles[cell].elevationSamples(x, y, width, height, elevations);
+            return;
+        }
+
+        DiscreteElevationModel.super.elevationSamples(x, y, width, height,
+                elevations);
+    }
+
+    @Override
+    public void prefetch(Interval2D area) {
+        for (DiscreteElevationModel tile : tiles) {
+            if (tile != null) {
+                tile.prefetch(area);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DiscreteElevationModel tile : tiles) {
+            if (tile != null) {
+                tile.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class GridDiscreteElevationModelTest {
+    private final static int D = SAMPLES_PER_DEGREE;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithoutTiles() {
+        new GridDiscreteElevationModel(Collections.emptyList());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullTile() {
+        new GridDiscreteElevationModel(Arrays.asList(new CellDEM(0, 0, 1), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithUnalignedTile() {
+        Interval2D e = new Interval2D(new Interval1D(1, D + 1), new Interval1D(0, D));
+        new GridDiscreteElevationModel(Arrays.asList(new CellDEM(e, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTwoTilesAtSamePlace() {
+        new GridDiscreteElevationModel(Arrays.asList(new CellDEM(6, 45, 1), new CellDEM(6, 45, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromDirectoryFailsWithMissingDirectory() {
+        GridDiscreteElevationModel.fromDirectory(new File("missing-hgt-directory"));
+    }
+
+    @Test
+    public void extentIsBoundingBoxOfTiles() {
+        GridDiscreteElevationModel dem = new GridDiscreteElevationModel(Arrays.asList(
+                new CellDEM(6, 45, 1), new CellDEM(9, 46, 2)));
+        assertEquals(new Interval2D(new Interval1D(6 * D, 10 * D), new Interval1D(45 * D, 47 * D)), dem.extent());
+    }
+
+    @Test
+    public void elevationSampleUsesTheRightTile() {
+        GridDiscreteElevationModel dem = new GridDiscreteElevationModel(Arrays.asList(
+                new CellDEM(6, 45, 1), new CellDEM(7, 45, 2), new CellDEM(-1, -1, 3), new CellDEM(7, 46, 4)));
+        assertEquals(1, dem.elevationSample(6 * D + 10, 45 * D + 10), 0);
+        assertEquals(2, dem.elevationSample(7 * D + 10, 45 * D + 10), 0);
+        assertEquals(3, dem.elevationSample(-1, -1), 0);
+        assertEquals(3, dem.elevationSample(-D, -D), 0);
+        assertEquals(4, dem.elevationSample(8 * D, 47 * D), 0);
+    }
+
+    @Test
+    public void elevationSampleIsZeroInMissingTiles() {
+        GridDiscreteElevationModel dem = new GridDiscreteElevationModel(Arrays.asList(
+                new CellDEM(6, 45, 1), new CellDEM(8, 46, 2)));
+        assertEquals(0, dem.elevationSample(7 * D + 10, 45 * D + 10), 0);
+        assertEquals(0, dem.elevationSample(6 * D + 10, 46 * D + 10), 0);
+    }
+
+    @Test
+    public void elevationSampleOnBorderUsesExistingNeighbour() {
+        GridDiscreteElevationModel dem = new GridDiscreteElevationModel(Arrays.asList(
+                new CellDEM(6, 45, 1), new CellDEM(8, 46, 2)));
+        assertEquals(1, dem.elevationSample(7 * D, 45 * D + 10), 0);
+        assertEquals(1, dem.elevationSample(6 * D + 10, 46 * D), 0);
+        assertEquals(1, dem.elevationSample(7 * D, 46 * D), 0);
+        assertEquals(2, dem.elevationSample(8 * D, 46 * D), 0);
+    }
+
+    @Test
+    public void elevationSamplesMatchesElevationSample() {
+        GridDiscreteElevationModel dem = new GridDiscreteElevationModel(Arrays.asList(
+                new CellDEM(6, 45, 1), new CellDEM(7, 45, 2), new CellDEM(7, 46, 4)));
+        int[][] origins = { { 6 * D + 10, 45 * D + 10 }, { 7 * D - 1, 45 * D + 10 },
+                { 7 * D - 1, 46 * D - 1 }, { 8 * D - 2, 47 * D - 2 } };
+        double[] z = new double[9];
+        for (int[] o : origins) {
+            dem.elevationSamples(o[0], o[1], 3, 3, z);
+            for (int j = 0; j < 3; ++j)
+                for (int i = 0; i < 3; ++i)
+                    assertEquals(dem.elevationSample(o[0] + i, o[1] + j), z[i + 3 * j], 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationSamplesFailsWithTooSmallArray() {
+        new GridDiscreteElevationModel(Arrays.asList(new CellDEM(6, 45, 1)))
+            .elevationSamples(6 * D, 45 * D, 3, 3, new double[8]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationSampleFailsOutsideOfExtent() {
+        new GridDiscreteElevationModel(Arrays.asList(new CellDEM(6, 45, 1)))
+            .elevationSample(5 * D, 45 * D);
+    }
+
+    private final static class CellDEM implements DiscreteElevationModel {
+        private final Interval2D extent;
+        private final double elevation;
+
+        public CellDEM(int longitude, int latitude, double elevation) {
+            this(new Interval2D(
+                    new Interval1D(longitude * D, (longitude + 1) * D),
+                    new Interval1D(latitude * D, (latitude + 1) * D)), elevation);
+        }
+
+        public CellDEM(Interval2D extent, double elevation) {
+            this.extent = extent;
+            this.elevation = elevation;
+        }
+
+        @Override
+        public void close() throws Exception { }
+
+        @Override
+        public Interval2D extent() { return extent; }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            if (! extent.contains(x, y))
+                throw new IllegalArgumentException();
+            return elevation;
+        }
+    }
+}
@@ -7,10 +7,13 @@ import java.io.IOException;
 import java.lang.Integer;
 import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.regex.Pattern;
 
 import ch.epfl.alpano.Interval1D;
 import ch.epfl.alpano.Interval2D;
 import static ch.epfl.alpano.Preconditions.*;
+import static java.util.Objects.requireNonNull;
 
 /**
  * A class that represents a discrete elevation model taken from a certain file
@@ -23,8 +26,24 @@ import static ch.epfl.alpano.Preconditions.*;
 
 public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
 
+    /**
+     * Length of a hgt file, in bytes
+     */
+    static final long FILE_LENGTH = 2L * (SAMPLES_PER_DEGREE + 1)
+            * (SAMPLES_PER_DEGREE + 1);
+
+    private static final int ROW_LENGTH = SAMPLES_PER_DEGREE + 1;
+
+    private static final Pattern HGT_FILE_NAME = Pattern
+            .compile("[NS]\\d{2}[EW]\\d{3}\\.hgt");
+
     private ShortBuffer buffer;
+    // the samples decoded in memory by prefetch, null until then
+    private volatile short[] samples;
     private final Interval2D extent;
+    // index of the first sample of the file, the rows going south
+    private final int fromX;
+    private final int toY;
 
     /**
      * Construct a dem from a hgt file
@@ -36,8 +55,34 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
      *             occurs when reading the file
      */
     public HgtDiscreteElevationModel(File file) {
-        String fileName = file.getName();
+        extent = extentOf(file.getName());
+        fromX = extent.iX().includedFrom();
+        toY = extent.iY().includedTo();
+
+        try (FileInputStream fileStream = new FileInputStream(file)) {
 
+            long length = file.length();
+
+            checkArgument(length == FILE_LENGTH, "wrong length");
+
+            buffer = fileStream.getChannel().map(MapMode.READ_ONLY, 0, length)
+                    .asShortBuffer();
+        } catch (IOException e) {
+            // if exception, input file wrongly formatted
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Gives the extent of the hgt file of a given name
+     * 
+     * @param fileName
+     *            the name of the file
+     * @return the extent covered by the file
+     * @throws IllegalArgumentException
+     *             if the file name is not properly formated
+     */
+    static Interval2D extentOf(String fileName) {
         checkArgument(fileName.length() == 11, "wrong length");
         checkArgument(fileName.charAt(0) == 'N' || fileName.charAt(0) == 'S',
                 "Should begin by N or S");
@@ -64,30 +109,64 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
 
         checkArgument(fileName.substring(7).equals(".hgt"), "should be a .hgt");
 
-        // create the extent
-        extent = new Interval2D(
+        return new Interval2D(
                 new Interval1D(fromLongitude * SAMPLES_PER_DEGREE,
                         (fromLongitude + 1) * SAMPLES_PER_DEGREE),
                 new Interval1D(fromLatitude * SAMPLES_PER_DEGREE,
                         (fromLatitude + 1) * SAMPLES_PER_DEGREE));
+    }
 
-        try (FileInputStream fileStream = new FileInputStream(file)) {
-
-            long length = file.length();
-
-            checkArgument(length == 25934402, "wrong length");
-
-            buffer = fileStream.getChannel().map(MapMode.READ_ONLY, 0, length)
-                    .asShortBuffer();
-        } catch (IOException e) {
-            // if exception, input file wrongly formatted
-            throw new IllegalArgumentException();
-        }
+    /**
+     * Gives the hgt files of a directory, sorted by name
+     * 
+     * @param directory
+     *            the directory
+     * @return the files whose name is the one of a hgt file
+     * @throws NullPointerException
+     *             if the directory is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the directory cannot be read
+     */
+    static File[] filesIn(File directory) {
+        File[] files = requireNonNull(directory).listFiles(
+                (d, name) -> HGT_FILE_NAME.matcher(name).matches());
+        checkArgument(files != null, "cannot read directory");
+        Arrays.sort(files);
+        return files;
     }
 
     @Override
     public void close() {
         buffer = null;
+        samples = null;
+    }
+
+    /**
+     * {@inheritDoc} The whole file is decoded in an array if the area
+     * intersects the extent, so that the samples are read without byte
+     * swapping nor page faults
+     */
+    @Override
+    public void prefetch(Interval2D area) {
+        if (samples == null && intersects(extent, area)) {
+            decode();
+        }
+    }
+
+    // tells if two areas have a common sample, without computing the size of
+    // their intersection which may overflow
+    static boolean intersects(Interval2D a, Interval2D b) {
+        return a.iX().sizeOfIntersectionWith(b.iX()) > 0
+                && a.iY().sizeOfIntersectionWith(b.iY()) > 0;
+    }
+
+    // decode all the samples only once, even if several threads prefetch
+    private synchronized void decode() {
+        if (samples == null && buffer != null) {
+            short[] decoded = new short[buffer.capacity()];
+            buffer.duplicate().get(decoded);
+            samples = decoded;
+        }
     }
 
     @Override
@@ -99,10 +178,29 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
     public double elevationSample(int x, int y) {
         checkArgument(extent().contains(x, y));
 
-        return buffer.get(Math.abs(x - extent().iX().includedFrom())
-                + Math.abs(y - (extent().iY().includedTo()))
-                        * (SAMPLES_PER_DEGREE + 1));
+        int index = (x - fromX) + (toY - y) * ROW_LENGTH;
+        short[] samples = this.samples;
+        return samples == null ? buffer.get(index) : samples[index];
+    }
 
+    @Override
+    public void elevationSamples(int x, int y, int width, int height,
+            double[] elevations) {
+        DiscreteElevationModel.checkBlock(this, x, y, width, height,
+                elevations);
+
+        // the block being in the extent, no sample needs to be checked
+        short[] samples = this.samples;
+        ShortBuffer buffer = this.buffer;
+        int row = (x - fromX) + (toY - y) * ROW_LENGTH;
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                elevations[i + j * width] = samples == null
+                        ? buffer.get(row + i)
+                        : samples[row + i];
+            }
+            row -= ROW_LENGTH;
+        }
     }
 
 }
@@ -143,6 +143,29 @@ public class HgtDiscreteElevationModelTest {
         }
     }
 
+    @Test
+    public void prefetchDoesNotChangeElevations() throws Exception {
+        Path p = FAKE_HGT_DIR.resolve("N03E003.hgt");
+        try (FileChannel c = FileChannel.open(p, CREATE_NEW, READ, WRITE)) {
+            ShortBuffer b = c.map(MapMode.READ_WRITE, 0, HGT_FILE_SIZE).asShortBuffer();
+            for (int i = 0; i < 3601 * 3601; i += 97)
+                b.put(i, (short) (i % 9000 - 500));
+        }
+        try (HgtDiscreteElevationModel dem = new HgtDiscreteElevationModel(p.toFile());
+             HgtDiscreteElevationModel prefetched = new HgtDiscreteElevationModel(p.toFile())) {
+            prefetched.prefetch(new Interval2D(new Interval1D(0, 3 * 3600), new Interval1D(0, 3 * 3600)));
+            double[] z1 = new double[12], z2 = new double[12];
+            for (int y = 3 * 3600; y <= 4 * 3600; y += 7) {
+                for (int x = 3 * 3600; x <= 4 * 3600; x += 13)
+                    assertEquals(dem.elevationSample(x, y), prefetched.elevationSample(x, y), 0);
+                dem.elevationSamples(3 * 3600 + 50, y, 4, 1, z1);
+                prefetched.elevationSamples(3 * 3600 + 50, y, 4, 1, z2);
+                for (int i = 0; i < 4; ++i)
+                    assertEquals(z1[i], z2[i], 0);
+            }
+        }
+    }
+
     private static void createHgtDemWithFileNamed(String hgtFileName) throws Exception {
         Path p = copyEmptyHgtFileAs(hgtFileName);
         try (DiscreteElevationModel d = new HgtDiscreteElevationModel(p.toFile())) {}
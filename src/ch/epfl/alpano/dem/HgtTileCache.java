@@ -0,0 +1,354 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * Class that represents a DEM made of all the hgt files of a directory, which
+ * are only mapped in memory when one of their samples is read for the first
+ * time. At most a given number of bytes of tiles are kept in the cache, the
+ * least recently used tiles being evicted first. An evicted tile is closed as
+ * soon as the reads in progress on it end, which releases its buffer and its
+ * decoded samples; the memory of the mapping itself is given back when the
+ * buffer is garbage collected, Java having no public way to unmap a file. To
+ * keep the reads cheap, the recency is only measured between two mappings:
+ * all the tiles read since the last mapping are considered as recent. The
+ * coverage may be sparse, the samples of the missing tiles having an
+ * elevation of 0
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see HgtDiscreteElevationModel
+ * @see GridDiscreteElevationModel
+ */
+public final class HgtTileCache implements DiscreteElevationModel {
+
+    private final File[] files;
+    private final AtomicReferenceArray<Tile> tiles;
+    private final TileGrid grid;
+    private final long maxBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicInteger openTiles = new AtomicInteger();
+
+    // incremented at each miss, the tiles remembering the last value at which
+    // they were read
+    private volatile long clock;
+    private long mappedBytes;
+
+    private HgtTileCache(File directory, long maxBytes) {
+        File[] hgtFiles = HgtDiscreteElevationModel.filesIn(directory);
+        checkArgument(hgtFiles.length > 0, "no hgt file");
+
+        List<Interval2D> extents = new ArrayList<>();
+        for (File file : hgtFiles) {
+            extents.add(HgtDiscreteElevationModel.extentOf(file.getName()));
+        }
+        grid = new TileGrid(extents);
+        this.maxBytes = maxBytes;
+
+        files = new File[grid.cellCount()];
+        for (int i = 0; i < hgtFiles.length; ++i) {
+            files[grid.cellOf(extents.get(i))] = hgtFiles[i];
+        }
+        tiles = new AtomicReferenceArray<>(files.length);
+    }
+
+    /**
+     * Construct the DEM of the hgt files of a directory, keeping at most a
+     * given number of tiles mapped
+     *
+     * @param directory
+     *            the directory containing the hgt files
+     * @param maxTiles
+     *            the maximal number of tiles mapped at the same time
+     * @return the DEM
+     * @throws NullPointerException
+     *             if the directory is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the directory cannot be read, contains no hgt file or if
+     *             the number of tiles is not strictly positive
+     */
+    public static HgtTileCache withMaxTiles(File directory, int maxTiles) {
+        checkArgument(maxTiles > 0, "no tile can be mapped");
+        return new HgtTileCache(directory,
+                maxTiles * HgtDiscreteElevationModel.FILE_LENGTH);
+    }
+
+    /**
+     * Construct the DEM of the hgt files of a directory, keeping at most a
+     * given number of bytes of tiles mapped
+     *
+     * @param directory
+     *            the directory containing the hgt files
+     * @param maxBytes
+     *            the maximal number of bytes mapped at the same time, which
+     *            must allow at least one tile
+     * @return the DEM
+     * @throws NullPointerException
+     *             if the directory is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the directory cannot be read, contains no hgt file or if
+     *             the budget is smaller than one tile
+     */
+    public static HgtTileCache withMaxBytes(File directory, long maxBytes) {
+        checkArgument(maxBytes >= HgtDiscreteElevationModel.FILE_LENGTH,
+                "no tile can be mapped");
+        return new HgtTileCache(directory, maxBytes);
+    }
+
+    @Override
+    public Interval2D extent() {
+        return grid.extent();
+    }
+
+    /**
+     * {@inheritDoc} The tile of the sample is mapped if it is not already
+     *
+     * @throws IllegalArgumentException
+     *             if the sample is not in the extent, or if its hgt file cannot
+     *             be read
+     */
+    @Override
+    public double elevationSample(int x, int y) {
+        int cell = grid.cellOfSample(x, y);
+        if (cell == -1) {
+            return 0;
+        }
+
+        Tile tile = acquire(cell);
+        try {
+            return tile.dem.elevationSample(x, y);
+        } finally {
+            release(tile);
+        }
+    }
+
+    /**
+     * {@inheritDoc} A block read from a single tile acquires it only once,
+     * which is how the continuous elevation models read the samples around a
+     * location when given an array; the blocks crossing the border of a tile
+     * are read sample by sample
+     *
+     * @see ContinuousElevationModel#elevationAt(double, double, double[])
+     */
+    @Override
+    public void elevationSamples(int x, int y, int width, int height,
+            double[] elevations) {
+        // the whole block is read from a single tile if possible, which
+        // checks it
+        int cell = grid.cellOfBlock(x, y, width, height);
+        if (cell != -1) {
+            Tile tile = acquire(cell);
+            try {
+                tile.dem.elevationSamples(x, y, width, height, elevations);
+            } finally {
+                release(tile);
+            }
+            return;
+        }
+
+        DiscreteElevationModel.super.elevationSamples(x, y, width, height,
+                elevations);
+    }
+
+    /**
+     * {@inheritDoc} The tiles intersecting the area are mapped and decoded,
+     * the closest ones to the center of the area first, until the budget is
+     * full. The other tiles are mapped when they are read, decoding them would
+     * only evict the first ones
+     * 
+     * @throws IllegalArgumentException
+     *             if the hgt file of one of these tiles cannot be read
+     */
+    @Override
+    public void prefetch(Interval2D area) {
+        List<Integer> cells = new ArrayList<>();
+        for (int i = 0; i < files.length; ++i) {
+            if (grid.hasTile(i) && HgtDiscreteElevationModel
+                    .intersects(grid.cellExtent(i), area)) {
+                cells.add(i);
+            }
+        }
+        cells.sort(Comparator.comparingLong(
+                i -> squaredDistanceOfCenters(grid.cellExtent(i), area)));
+
+        long budget = maxBytes / HgtDiscreteElevationModel.FILE_LENGTH;
+        for (int i = 0; i < cells.size() && i < budget; ++i) {
+            Tile tile = acquire(cells.get(i));
+            try {
+                tile.dem.prefetch(area);
+            } finally {
+                release(tile);
+            }
+        }
+    }
+
+    // the square of the distance between the centers of two areas, in samples
+    private static long squaredDistanceOfCenters(Interval2D a, Interval2D b) {
+        long dX = (long) a.iX().includedFrom() + a.iX().includedTo()
+                - b.iX().includedFrom() - b.iX().includedTo();
+        long dY = (long) a.iY().includedFrom() + a.iY().includedTo()
+                - b.iY().includedFrom() - b.iY().includedTo();
+        return dX * dX + dY * dY;
+    }
+
+    // the tile of a cell having a file, mapped if needed, which is not closed
+    // before it is released
+    private Tile acquire(int index) {
+        while (true) {
+            Tile tile = tiles.get(index);
+            if (tile == null) {
+                tile = mapTile(index);
+            } else {
+                hits.increment();
+            }
+
+            // the tile may have been evicted and closed in the meantime, in
+            // which case it is mapped again
+            if (tile.acquire()) {
+                long now = clock;
+                if (tile.lastUse != now) {
+                    tile.lastUse = now;
+                }
+                return tile;
+            }
+        }
+    }
+
+    // drop a reference to a tile, closing it if it was the last one
+    private void release(Tile tile) {
+        if (tile.release()) {
+            tile.dem.close();
+            openTiles.decrementAndGet();
+        }
+    }
+
+    // map the tile of a cell, releasing the least recently used tiles if the
+    // budget is exceeded
+    private synchronized Tile mapTile(int index) {
+        Tile tile = tiles.get(index);
+        if (tile != null) {
+            hits.increment();
+            return tile;
+        }
+
+        misses.increment();
+        tile = new Tile(new HgtDiscreteElevationModel(files[index]));
+        openTiles.incrementAndGet();
+        mappedBytes += HgtDiscreteElevationModel.FILE_LENGTH;
+
+        while (mappedBytes > maxBytes) {
+            int lru = -1;
+            for (int i = 0; i < tiles.length(); ++i) {
+                Tile t = tiles.get(i);
+                if (t != null
+                        && (lru == -1 || t.lastUse < tiles.get(lru).lastUse)) {
+                    lru = i;
+                }
+            }
+            // the tile is closed by the last of the readers still holding it
+            release(tiles.getAndSet(lru, null));
+            mappedBytes -= HgtDiscreteElevationModel.FILE_LENGTH;
+            evictions.increment();
+        }
+
+        tile.lastUse = ++clock;
+        tiles.set(index, tile);
+        return tile;
+    }
+
+    /**
+     * The number of reads from a tile that was already mapped, a block read
+     * from a single tile counting as one read
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * The number of times a tile had to be mapped
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * The number of tiles released to respect the budget
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * The number of tiles currently mapped and not closed yet, including the
+     * evicted tiles on which a read is still in progress
+     *
+     * @return the number of tiles
+     */
+    public int mappedTiles() {
+        return openTiles.get();
+    }
+
+    /**
+     * {@inheritDoc} All the tiles are evicted, and closed once the reads in
+     * progress end. They are mapped again if a sample is read afterwards
+     */
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < tiles.length(); ++i) {
+            Tile tile = tiles.getAndSet(i, null);
+            if (tile != null) {
+                release(tile);
+            }
+        }
+        mappedBytes = 0;
+    }
+
+    private static final class Tile {
+        private final HgtDiscreteElevationModel dem;
+        // the number of reads in progress, plus one while the tile is in the
+        // cache, the tile being closed when it drops to 0
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile long lastUse;
+
+        Tile(HgtDiscreteElevationModel dem) {
+            this.dem = dem;
+        }
+
+        // false if the tile is already closed
+        boolean acquire() {
+            int r;
+            do {
+                r = references.get();
+                if (r == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(r, r + 1));
+            return true;
+        }
+
+        // true if this was the last reference
+        boolean release() {
+            return references.decrementAndGet() == 0;
+        }
+    }
+}
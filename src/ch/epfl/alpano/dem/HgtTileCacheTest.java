@@ -0,0 +1,217 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class HgtTileCacheTest {
+    private final static int D = SAMPLES_PER_DEGREE;
+    private final static long HGT_FILE_SIZE = 3601L * 3601L * 2L;
+    private static Path HGT_DIR;
+
+    @BeforeClass
+    public static void createHgtFiles() throws IOException {
+        HGT_DIR = Files.createTempDirectory("hgt");
+        // three of the four tiles of a 2x2 square, each one having a
+        // constant elevation
+        createHgtFile("N45E006.hgt", 1);
+        createHgtFile("N45E007.hgt", 2);
+        createHgtFile("N46E006.hgt", 3);
+    }
+
+    private static void createHgtFile(String name, int elevation) throws IOException {
+        try (FileChannel c = FileChannel.open(HGT_DIR.resolve(name), CREATE_NEW, READ, WRITE)) {
+            ShortBuffer b = c.map(MapMode.READ_WRITE, 0, HGT_FILE_SIZE).asShortBuffer();
+            while (b.hasRemaining())
+                b.put((short) elevation);
+        }
+    }
+
+    @AfterClass
+    public static void deleteHgtFiles() throws IOException {
+        for (File f : HGT_DIR.toFile().listFiles())
+            Files.delete(f.toPath());
+        Files.delete(HGT_DIR);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withMaxTilesFailsWithZeroTiles() {
+        HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withMaxBytesFailsWithBudgetSmallerThanOneTile() {
+        HgtTileCache.withMaxBytes(HGT_DIR.toFile(), HGT_FILE_SIZE - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withMaxTilesFailsWithMissingDirectory() {
+        HgtTileCache.withMaxTiles(new File(HGT_DIR.toFile(), "missing"), 1);
+    }
+
+    @Test
+    public void extentIsBoundingBoxOfFiles() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 1);
+        Interval2D expected = new Interval2D(new Interval1D(6 * D, 8 * D), new Interval1D(45 * D, 47 * D));
+        assertEquals(expected, dem.extent());
+    }
+
+    @Test
+    public void tilesAreOnlyMappedWhenRead() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 3);
+        assertEquals(0, dem.mappedTiles());
+        assertEquals(0, dem.misses());
+        assertEquals(1, dem.elevationSample(6 * D + 10, 45 * D + 10), 0);
+        assertEquals(1, dem.mappedTiles());
+        assertEquals(1, dem.misses());
+        assertEquals(0, dem.hits());
+    }
+
+    @Test
+    public void elevationSampleIsCorrectInEachTile() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 1);
+        assertEquals(1, dem.elevationSample(6 * D + 10, 45 * D + 10), 0);
+        assertEquals(2, dem.elevationSample(7 * D + 10, 45 * D + 10), 0);
+        assertEquals(3, dem.elevationSample(6 * D + 10, 46 * D + 10), 0);
+        assertEquals(0, dem.elevationSample(7 * D + 10, 46 * D + 10), 0);
+    }
+
+    @Test
+    public void bordersOfMissingTileAreReadFromNeighbours() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 3);
+        assertEquals(2, dem.elevationSample(7 * D + 10, 46 * D), 0);
+        assertEquals(3, dem.elevationSample(7 * D, 46 * D + 10), 0);
+        assertEquals(0, dem.elevationSample(8 * D, 47 * D), 0);
+    }
+
+    @Test
+    public void elevationSamplesReadsAcrossTiles() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 3);
+        double[] z = new double[4];
+        dem.elevationSamples(7 * D - 1, 46 * D - 1, 2, 2, z);
+        assertArrayEquals(new double[] { 1, 2, 3, 3 }, z, 0);
+        dem.elevationSamples(7 * D + 1, 45 * D + 1, 2, 2, z);
+        assertArrayEquals(new double[] { 2, 2, 2, 2 }, z, 0);
+    }
+
+    @Test
+    public void interpolationAcquiresItsTileOncePerBlock() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 3);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dem);
+        double[] elevationAndSlope = new double[2];
+        double[] samples = new double[9];
+        double longitude = Math.toRadians(7.5);
+        double latitude = Math.toRadians(45.5);
+
+        assertEquals(2, cDEM.elevationAt(longitude, latitude, samples), 0);
+        cDEM.elevationAndSlopeAt(longitude, latitude, elevationAndSlope, samples);
+        assertEquals(2, elevationAndSlope[0], 0);
+        assertEquals(1, dem.misses());
+        assertEquals(1, dem.hits());
+    }
+
+    @Test
+    public void prefetchMapsOnlyTheTilesOfTheArea() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 3);
+        dem.prefetch(new Interval2D(new Interval1D(6 * D + 10, 6 * D + 20), new Interval1D(45 * D, 47 * D)));
+        assertEquals(2, dem.mappedTiles());
+        assertEquals(3, dem.elevationSample(6 * D + 15, 46 * D + 15), 0);
+        assertEquals(2, dem.misses());
+    }
+
+    @Test
+    public void prefetchStopsWhenTheBudgetIsFull() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 1);
+        // the area is centered in the tile N46E006
+        dem.prefetch(new Interval2D(new Interval1D(6 * D - 100, 7 * D + 100), new Interval1D(45 * D, 48 * D)));
+        assertEquals(1, dem.misses());
+        assertEquals(0, dem.evictions());
+        assertEquals(3, dem.elevationSample(6 * D + 15, 46 * D + 15), 0);
+        assertEquals(1, dem.misses());
+    }
+
+    @Test
+    public void leastRecentlyUsedTileIsEvicted() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 2);
+        dem.elevationSample(6 * D + 1, 45 * D + 1);
+        dem.elevationSample(7 * D + 1, 45 * D + 1);
+        dem.elevationSample(7 * D + 2, 45 * D + 2);
+        assertEquals(2, dem.misses());
+        assertEquals(1, dem.hits());
+
+        // the tile N45E006 is the least recently used one
+        dem.elevationSample(6 * D + 1, 46 * D + 1);
+        assertEquals(1, dem.evictions());
+        assertEquals(2, dem.mappedTiles());
+
+        dem.elevationSample(7 * D + 3, 45 * D + 3);
+        assertEquals(3, dem.misses());
+        dem.elevationSample(6 * D + 2, 45 * D + 2);
+        assertEquals(4, dem.misses());
+        assertEquals(2, dem.evictions());
+    }
+
+    @Test
+    public void byteBudgetLimitsTheNumberOfMappedTiles() {
+        HgtTileCache dem = HgtTileCache.withMaxBytes(HGT_DIR.toFile(), 2 * HGT_FILE_SIZE + 1);
+        dem.elevationSample(6 * D + 1, 45 * D + 1);
+        dem.elevationSample(7 * D + 1, 45 * D + 1);
+        dem.elevationSample(6 * D + 1, 46 * D + 1);
+        assertEquals(2, dem.mappedTiles());
+        assertEquals(1, dem.evictions());
+    }
+
+    @Test
+    public void evictedTilesAreClosedWhileOtherThreadsReadThem() throws InterruptedException {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 1);
+        AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            int lon = 6 + t % 2;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2_000; ++i) {
+                        if (dem.elevationSample(lon * D + 1 + i % 100, 45 * D + 1) != lon - 5)
+                            errors.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    errors.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(0, errors.get());
+        assertEquals(1, dem.mappedTiles());
+    }
+
+    @Test
+    public void closeReleasesAllTiles() {
+        HgtTileCache dem = HgtTileCache.withMaxTiles(HGT_DIR.toFile(), 3);
+        dem.elevationSample(6 * D + 1, 45 * D + 1);
+        dem.close();
+        assertEquals(0, dem.mappedTiles());
+        assertEquals(1, dem.elevationSample(6 * D + 1, 45 * D + 1), 0);
+        assertEquals(2, dem.misses());
+    }
+}
@@ -0,0 +1,260 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+import static java.lang.Math.*;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * Class that represents the slopes of all the samples of a DEM, quantized on
+ * 16 bits. The slopes are computed lazily by cells of one degree, the first
+ * time a sample of a cell is read, and can be cached on disk so that the next
+ * instances only have to map the files. The quantization error is at most
+ * {@value #MAX_ERROR} radians
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see ContinuousElevationModel#withSlopeGrid(SlopeGrid)
+ */
+public final class SlopeGrid {
+
+    /**
+     * The maximal difference between a slope given by the grid and the exact
+     * one, in radians
+     */
+    public static final double MAX_ERROR = PI / 2 / 0xFFFF / 2;
+
+    private static final double STEP = PI / 2 / 0xFFFF;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final DiscreteElevationModel dem;
+    private final File cacheDirectory;
+    private final int fromCellX;
+    private final int fromCellY;
+    private final int cellsWidth;
+    private final AtomicReferenceArray<Cell> cells;
+
+    /**
+     * Construct the slope grid of a DEM, the slopes being kept in memory
+     *
+     * @param dem
+     *            the DEM
+     * @throws NullPointerException
+     *             if the dem is <code>null</code>
+     */
+    public SlopeGrid(DiscreteElevationModel dem) {
+        this(dem, Optional.empty());
+    }
+
+    /**
+     * Construct the slope grid of a DEM, the slopes of each cell being stored
+     * in a file of a cache directory and memory mapped. The files of a
+     * previous instance are reused, the directory must thus be specific to
+     * the DEM
+     *
+     * @param dem
+     *            the DEM
+     * @param cacheDirectory
+     *            the directory containing the slope files
+     * @throws NullPointerException
+     *             if the dem or the directory is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the directory does not exist
+     */
+    public SlopeGrid(DiscreteElevationModel dem, File cacheDirectory) {
+        this(dem, Optional.of(cacheDirectory));
+        checkArgument(cacheDirectory.isDirectory(), "not a directory");
+    }
+
+    private SlopeGrid(DiscreteElevationModel dem,
+            Optional<File> cacheDirectory) {
+        this.dem = requireNonNull(dem);
+        this.cacheDirectory = cacheDirectory.orElse(null);
+
+        Interval2D extent = dem.extent();
+        fromCellX = cellOf(extent.iX().includedFrom());
+        fromCellY = cellOf(extent.iY().includedFrom());
+        cellsWidth = cellOf(extent.iX().includedTo()) - fromCellX + 1;
+        int cellsHeight = cellOf(extent.iY().includedTo()) - fromCellY + 1;
+        cells = new AtomicReferenceArray<>(cellsWidth * cellsHeight);
+    }
+
+    // the DEM from which the slopes are computed
+    DiscreteElevationModel dem() {
+        return dem;
+    }
+
+    /**
+     * Gives the slope of a sample of the DEM
+     *
+     * @param x
+     *            the first index of the sample
+     * @param y
+     *            the second index of the sample
+     * @return the slope of the sample, with an error of at most
+     *         {@value #MAX_ERROR}
+     * @throws IllegalArgumentException
+     *             if the sample is not in the extent of the DEM
+     * @throws UncheckedIOException
+     *             if the cache file of the cell cannot be read or written
+     */
+    public double slopeSample(int x, int y) {
+        checkArgument(dem.extent().contains(x, y));
+
+        int index = (cellOf(y) - fromCellY) * cellsWidth + cellOf(x)
+                - fromCellX;
+        Cell cell = cells.get(index);
+        if (cell == null) {
+            cell = createCell(index, x, y);
+        }
+
+        return cell.slopes.get((x - cell.fromX) + (y - cell.fromY) * cell.width)
+                * STEP;
+    }
+
+    // compute the cell containing a sample only once, even if several threads
+    // need it
+    private synchronized Cell createCell(int index, int x, int y) {
+        Cell cell = cells.get(index);
+        if (cell == null) {
+            Interval2D extent = dem.extent();
+            int cellX = cellOf(x) * SAMPLES_PER_DEGREE;
+            int cellY = cellOf(y) * SAMPLES_PER_DEGREE;
+            Interval2D area = new Interval2D(
+                    new Interval1D(max(cellX, extent.iX().includedFrom()),
+                            min(cellX + SAMPLES_PER_DEGREE - 1,
+                                    extent.iX().includedTo())),
+                    new Interval1D(max(cellY, extent.iY().includedFrom()),
+                            min(cellY + SAMPLES_PER_DEGREE - 1,
+                                    extent.iY().includedTo())));
+
+            try {
+                cell = cacheDirectory == null
+                        ? new Cell(area, CharBuffer.wrap(computeSlopes(area)))
+                        : cachedCell(area);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cells.set(index, cell);
+        }
+        return cell;
+    }
+
+    // map the file of a cell, creating it first if needed
+    private Cell cachedCell(Interval2D area) throws IOException {
+        File file = new File(cacheDirectory, fileName(area));
+        long length = HEADER_BYTES + 2L * area.size();
+
+        if (!isValidCacheFile(file, area, length)) {
+            char[] slopes = computeSlopes(area);
+            ByteBuffer bytes = ByteBuffer.allocate((int) length);
+            bytes.putInt(area.iX().includedFrom())
+                    .putInt(area.iY().includedFrom())
+                    .putInt(area.iX().includedTo())
+                    .putInt(area.iY().includedTo());
+            bytes.asCharBuffer().put(slopes);
+
+            // written aside, then moved so that no partial file can be read
+            File temporary = File.createTempFile("slope", ".tmp",
+                    cacheDirectory);
+            Files.write(temporary.toPath(), bytes.array());
+            Files.move(temporary.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            CharBuffer slopes = channel
+                    .map(MapMode.READ_ONLY, HEADER_BYTES,
+                            length - HEADER_BYTES)
+                    .asCharBuffer();
+            return new Cell(area, slopes);
+        }
+    }
+
+    private static boolean isValidCacheFile(File file, Interval2D area,
+            long length) throws IOException {
+        if (!file.isFile() || file.length() != length) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0,
+                    HEADER_BYTES);
+            return header.getInt() == area.iX().includedFrom()
+                    && header.getInt() == area.iY().includedFrom()
+                    && header.getInt() == area.iX().includedTo()
+                    && header.getInt() == area.iY().includedTo();
+        }
+    }
+
+    // quantized slopes of all the samples of an area, row by row
+    private char[] computeSlopes(Interval2D area) {
+        int fromX = area.iX().includedFrom();
+        int fromY = area.iY().includedFrom();
+        int width = area.iX().size();
+        char[] slopes = new char[area.size()];
+
+        for (int y = fromY; y <= area.iY().includedTo(); ++y) {
+            for (int x = fromX; x <= area.iX().includedTo(); ++x) {
+                double z = elevationAtIndex(x, y);
+                double slope = ContinuousElevationModel.slope(z,
+                        elevationAtIndex(x + 1, y), elevationAtIndex(x, y + 1));
+                slopes[(x - fromX) + (y - fromY) * width] = (char) round(
+                        slope / STEP);
+            }
+        }
+        return slopes;
+    }
+
+    // same convention as the continuous model: 0 outside of the extent
+    private double elevationAtIndex(int x, int y) {
+        return dem.extent().contains(x, y) ? dem.elevationSample(x, y) : 0;
+    }
+
+    private static int cellOf(int sample) {
+        return Math.floorDiv(sample, SAMPLES_PER_DEGREE);
+    }
+
+    // name of the file of a cell, given by its bounds
+    private static String fileName(Interval2D area) {
+        Locale l = null;
+        return String.format(l, "%d_%d_%d_%d.slope", area.iX().includedFrom(),
+                area.iY().includedFrom(), area.iX().includedTo(),
+                area.iY().includedTo());
+    }
+
+    // slopes of a cell, stored row by row
+    private static final class Cell {
+        private final int fromX;
+        private final int fromY;
+        private final int width;
+        private final CharBuffer slopes;
+
+        Cell(Interval2D area, CharBuffer slopes) {
+            this.fromX = area.iX().includedFrom();
+            this.fromY = area.iY().includedFrom();
+            this.width = area.iX().size();
+            this.slopes = slopes;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class SlopeGridTest {
+    private final static Interval2D EXT_13_13 = new Interval2D(
+            new Interval1D(0, 13),
+            new Interval1D(0, 13));
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullDEM() {
+        new SlopeGrid(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithMissingDirectory() {
+        new SlopeGrid(new RandomDEM(EXT_13_13, 1000), new File("missing-slope-directory"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void slopeSampleFailsOutsideOfExtent() {
+        new SlopeGrid(new RandomDEM(EXT_13_13, 1000)).slopeSample(14, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void withSlopeGridFailsWithGridOfOtherDEM() {
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(new RandomDEM(EXT_13_13, 1000));
+        cDEM.withSlopeGrid(new SlopeGrid(new RandomDEM(EXT_13_13, 1000)));
+    }
+
+    @Test
+    public void slopeAtIsCloseToComputedSlope() {
+        DiscreteElevationModel dDEM = new RandomDEM(EXT_13_13, 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        ContinuousElevationModel gridDEM = cDEM.withSlopeGrid(new SlopeGrid(dDEM));
+        assertSameSlopes(cDEM, gridDEM);
+    }
+
+    @Test
+    public void cachedSlopesAreReused() throws IOException {
+        File directory = Files.createTempDirectory("slope").toFile();
+        try {
+            DiscreteElevationModel dDEM = new RandomDEM(EXT_13_13, 1000);
+            ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+            SlopeGrid first = new SlopeGrid(dDEM, directory);
+            first.slopeSample(0, 0);
+            assertEquals(1, directory.listFiles().length);
+
+            assertSameSlopes(cDEM, cDEM.withSlopeGrid(new SlopeGrid(dDEM, directory)));
+            assertEquals(1, directory.listFiles().length);
+        } finally {
+            for (File f : directory.listFiles())
+                f.delete();
+            directory.delete();
+        }
+    }
+
+    private static void assertSameSlopes(ContinuousElevationModel expected, ContinuousElevationModel actual) {
+        Random rng = newRandom();
+        double[] elevationAndSlope = new double[2];
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            GeoPoint p = new GeoPoint(toRadians(rng.nextDouble() * 15 / 3600d), toRadians(rng.nextDouble() * 15 / 3600d));
+            double slope = expected.slopeAt(p);
+            assertEquals(slope, actual.slopeAt(p), SlopeGrid.MAX_ERROR);
+            actual.elevationAndSlopeAt(p.longitude(), p.latitude(), elevationAndSlope);
+            assertEquals(expected.elevationAt(p), elevationAndSlope[0], 0);
+            assertEquals(slope, elevationAndSlope[1], SlopeGrid.MAX_ERROR);
+            assertTrue(0 <= actual.slopeAt(p));
+        }
+    }
+
+    private final static class RandomDEM implements DiscreteElevationModel {
+        private final Interval2D extent;
+        private final double[][] elevations;
+
+        public RandomDEM(Interval2D extent, int maxElevation) {
+            this.extent = extent;
+            this.elevations = new double[extent.iX().size()][extent.iY().size()];
+            Random rng = newRandom();
+            for (int x = 0; x < elevations.length; ++x) {
+                for (int y = 0; y < elevations[x].length; ++y) {
+                    elevations[x][y] = rng.nextInt(maxElevation + 1);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws Exception { }
+
+        @Override
+        public Interval2D extent() { return extent; }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            return elevations[x - extent.iX().includedFrom()][y - extent.iY().includedFrom()];
+        }
+    }
+}
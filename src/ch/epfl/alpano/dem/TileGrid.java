@@ -0,0 +1,214 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+
+import java.util.List;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * Class that places tiles of one degree in a grid of cells, so that the tile
+ * giving a sample is found in constant time, whatever the number of tiles.
+ * The cells are numbered row by row from the south-west corner of the grid,
+ * and some of them may have no tile
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see GridDiscreteElevationModel
+ * @see HgtTileCache
+ */
+final class TileGrid {
+
+    private final Interval2D extent;
+    private final int fromX;
+    private final int fromY;
+    private final int cellsWidth;
+    private final int cellsHeight;
+    private final boolean[] hasTile;
+
+    /**
+     * Construct the grid of some tiles
+     *
+     * @param tileExtents
+     *            the extents of the tiles, each one covering exactly one
+     *            degree
+     * @throws IllegalArgumentException
+     *             if the list is empty, if a tile does not cover exactly one
+     *             degree or if two tiles cover the same degree
+     */
+    TileGrid(List<Interval2D> tileExtents) {
+        checkArgument(!tileExtents.isEmpty(), "no tile");
+
+        Interval2D bounds = null;
+        for (Interval2D e : tileExtents) {
+            checkArgument(isDegreeCell(e.iX()) && isDegreeCell(e.iY()),
+                    "tile not aligned on one degree");
+            bounds = bounds == null ? e : bounds.boundingUnion(e);
+        }
+
+        extent = bounds;
+        fromX = extent.iX().includedFrom();
+        fromY = extent.iY().includedFrom();
+        cellsWidth = (extent.iX().size() - 1) / SAMPLES_PER_DEGREE;
+        cellsHeight = (extent.iY().size() - 1) / SAMPLES_PER_DEGREE;
+
+        hasTile = new boolean[cellsWidth * cellsHeight];
+        for (Interval2D e : tileExtents) {
+            int i = cellOf(e);
+            checkArgument(!hasTile[i], "two tiles at same place");
+            hasTile[i] = true;
+        }
+    }
+
+    private static boolean isDegreeCell(Interval1D interval) {
+        return interval.size() == SAMPLES_PER_DEGREE + 1 && Math
+                .floorMod(interval.includedFrom(), SAMPLES_PER_DEGREE) == 0;
+    }
+
+    /**
+     * The bounding box of the tiles
+     *
+     * @return the extent of the grid
+     */
+    Interval2D extent() {
+        return extent;
+    }
+
+    /**
+     * The number of cells of the grid, with or without a tile
+     *
+     * @return the number of cells
+     */
+    int cellCount() {
+        return hasTile.length;
+    }
+
+    /**
+     * Gives the cell of one of the tiles of the grid
+     *
+     * @param tileExtent
+     *            the extent of the tile
+     * @return the index of its cell
+     */
+    int cellOf(Interval2D tileExtent) {
+        return ((tileExtent.iY().includedFrom() - fromY) / SAMPLES_PER_DEGREE)
+                * cellsWidth
+                + (tileExtent.iX().includedFrom() - fromX) / SAMPLES_PER_DEGREE;
+    }
+
+    /**
+     * Gives the extent of a cell
+     *
+     * @param cell
+     *            the index of the cell
+     * @return the extent covered by the cell
+     */
+    Interval2D cellExtent(int cell) {
+        int x = fromX + (cell % cellsWidth) * SAMPLES_PER_DEGREE;
+        int y = fromY + (cell / cellsWidth) * SAMPLES_PER_DEGREE;
+        return new Interval2D(new Interval1D(x, x + SAMPLES_PER_DEGREE),
+                new Interval1D(y, y + SAMPLES_PER_DEGREE));
+    }
+
+    /**
+     * Tells if a cell has a tile
+     *
+     * @param cell
+     *            the index of the cell
+     * @return true if the cell has a tile
+     */
+    boolean hasTile(int cell) {
+        return hasTile[cell];
+    }
+
+    /**
+     * Gives the cell of the tile from which a sample is read. The samples on
+     * the border between two cells belong to both tiles, they are read from
+     * the cell the most to the north-east having a tile
+     *
+     * @param x
+     *            the first index of the sample
+     * @param y
+     *            the second index of the sample
+     * @return the index of the cell, -1 if no tile contains the sample
+     * @throws IllegalArgumentException
+     *             if the sample is not in the extent
+     */
+    int cellOfSample(int x, int y) {
+        checkArgument(extent.contains(x, y));
+
+        int dX = x - fromX;
+        int dY = y - fromY;
+        int cellX = dX / SAMPLES_PER_DEGREE;
+        int cellY = dY / SAMPLES_PER_DEGREE;
+
+        // the samples on the border between two cells belong to both tiles
+        boolean borderX = dX % SAMPLES_PER_DEGREE == 0 && cellX > 0;
+        boolean borderY = dY % SAMPLES_PER_DEGREE == 0 && cellY > 0;
+        if (cellX == cellsWidth) {
+            --cellX;
+            borderX = false;
+        }
+        if (cellY == cellsHeight) {
+            --cellY;
+            borderY = false;
+        }
+
+        int i = cellY * cellsWidth + cellX;
+        if (!hasTile[i] && borderX) {
+            i = cellY * cellsWidth + cellX - 1;
+        }
+        if (!hasTile[i] && borderY) {
+            i = (cellY - 1) * cellsWidth + cellX;
+        }
+        if (!hasTile[i] && borderX && borderY) {
+            i = (cellY - 1) * cellsWidth + cellX - 1;
+        }
+
+        return hasTile[i] ? i : -1;
+    }
+
+    /**
+     * Gives the cell of the tile from which all the samples of a block are
+     * read, if they are all read from the same one
+     *
+     * @param x
+     *            the first index of the first sample of the block
+     * @param y
+     *            the second index of the first sample of the block
+     * @param width
+     *            the number of samples of each row of the block
+     * @param height
+     *            the number of rows of the block
+     * @return the index of the cell, -1 if the samples are not all read from
+     *         the same tile
+     * @see #cellOfSample(int, int)
+     */
+    int cellOfBlock(int x, int y, int width, int height) {
+        if (!extent.contains(x, y)) {
+            return -1;
+        }
+
+        int cellX = Math.min((x - fromX) / SAMPLES_PER_DEGREE, cellsWidth - 1);
+        int cellY = Math.min((y - fromY) / SAMPLES_PER_DEGREE,
+                cellsHeight - 1);
+        int i = cellY * cellsWidth + cellX;
+
+        // the samples of the upper borders of the tile are read from the next
+        // tiles if they are not on the border of the whole extent
+        int toX = x + width - 1;
+        int toY = y + height - 1;
+        int tileToX = fromX + (cellX + 1) * SAMPLES_PER_DEGREE;
+        int tileToY = fromY + (cellY + 1) * SAMPLES_PER_DEGREE;
+        boolean owned = hasTile[i]
+                && (toX < tileToX || tileToX == extent.iX().includedTo()
+                        && toX == tileToX)
+                && (toY < tileToY || tileToY == extent.iY().includedTo()
+                        && toY == tileToY);
+
+        return owned ? i : -1;
+    }
+}
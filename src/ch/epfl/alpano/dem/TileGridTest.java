@@ -0,0 +1,77 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class TileGridTest {
+    private final static int D = SAMPLES_PER_DEGREE;
+
+    // three of the four cells of a 2x2 square, the north-east one missing
+    private final static TileGrid GRID = new TileGrid(Arrays.asList(
+            cell(6, 45), cell(7, 45), cell(6, 46)));
+
+    private static Interval2D cell(int lon, int lat) {
+        return new Interval2D(new Interval1D(lon * D, (lon + 1) * D),
+                new Interval1D(lat * D, (lat + 1) * D));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithoutTiles() {
+        new TileGrid(Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithUnalignedTile() {
+        new TileGrid(Arrays.asList(new Interval2D(new Interval1D(1, D + 1), new Interval1D(0, D))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTwoTilesAtSamePlace() {
+        new TileGrid(Arrays.asList(cell(6, 45), cell(6, 45)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cellOfSampleFailsOutsideOfExtent() {
+        GRID.cellOfSample(6 * D - 1, 45 * D);
+    }
+
+    @Test
+    public void cellsAreNumberedRowByRow() {
+        assertEquals(4, GRID.cellCount());
+        assertEquals(0, GRID.cellOf(cell(6, 45)));
+        assertEquals(1, GRID.cellOf(cell(7, 45)));
+        assertEquals(2, GRID.cellOf(cell(6, 46)));
+        assertEquals(cell(7, 46), GRID.cellExtent(3));
+        assertTrue(GRID.hasTile(2));
+        assertFalse(GRID.hasTile(3));
+    }
+
+    @Test
+    public void cellOfSampleReadsBordersOfMissingCellFromNeighbours() {
+        assertEquals(0, GRID.cellOfSample(6 * D + 10, 45 * D + 10));
+        assertEquals(1, GRID.cellOfSample(7 * D, 45 * D + 10));
+        assertEquals(1, GRID.cellOfSample(7 * D + 10, 46 * D));
+        assertEquals(2, GRID.cellOfSample(7 * D, 46 * D + 10));
+        assertEquals(-1, GRID.cellOfSample(7 * D + 10, 46 * D + 10));
+        assertEquals(-1, GRID.cellOfSample(8 * D, 47 * D));
+    }
+
+    @Test
+    public void cellOfBlockNeedsASingleTile() {
+        assertEquals(0, GRID.cellOfBlock(6 * D + 1, 45 * D + 1, 2, 2));
+        assertEquals(-1, GRID.cellOfBlock(7 * D - 1, 45 * D + 1, 2, 2));
+        assertEquals(1, GRID.cellOfBlock(8 * D - 1, 45 * D + 1, 2, 2));
+        assertEquals(-1, GRID.cellOfBlock(7 * D + 1, 46 * D + 1, 2, 2));
+        assertEquals(-1, GRID.cellOfBlock(5 * D, 45 * D, 2, 2));
+    }
+}
@@ -4,15 +4,19 @@ import javafx.util.StringConverter;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
 import ch.epfl.alpano.Azimuth;
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaCache;
 import ch.epfl.alpano.PanoramaParameters;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.ElevationPyramid;
+import ch.epfl.alpano.dem.GridDiscreteElevationModel;
 import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
 import ch.epfl.alpano.summit.GazetteerParser;
 import ch.epfl.alpano.summit.Summit;
@@ -27,6 +31,7 @@ import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
@@ -55,6 +60,13 @@ public final class Alpano extends Application {
      * Parameters of the GUI
      */
     private static final PanoramaUserParameters FIRST_PANORAMA = PredefinedPanoramas.JURA_ALPS;
+    private static final int MIN_LONGITUDE = 6;
+    private static final int MAX_LONGITUDE = 9;
+    private static final int MIN_LATITUDE = 45;
+    private static final int MAX_LATITUDE = 46;
+    private static final String CACHE_DIRECTORY = "panorama-cache";
+    private static final long CACHE_DISK_SIZE = 2L << 30;
+    private static final int CACHE_MEMORY_SIZE = 4;
     private static final Insets GRID_PADDING = new Insets(7, 5, 5, 5);
     private static final int GRID_VERTICAL_GAP = 3;
     private static final int GRID_HORIZONTAL_GAP = 10;
@@ -63,6 +75,7 @@ public final class Alpano extends Application {
     private static final int UPDATE_TEXT_SIZE = 40;
     private static final String UPDATE_TEXT = "Les paramètres du panorama ont changé."
             + " \nCliquez ici pour mettre le dessin à jour.";
+    private static final String FAILURE_TEXT = "Le calcul du panorama a échoué : ";
 
     private final PanoramaParametersBean parametersBean;
     private final PanoramaComputerBean computerBean;
@@ -73,9 +86,20 @@ public final class Alpano extends Application {
                 .readSummitsFrom(new File("alps.txt"));
         parametersBean = new PanoramaParametersBean(
                 FIRST_PANORAMA);
-        computerBean = new PanoramaComputerBean(summits, createDem());
+        List<File> tiles = tileFiles();
+        computerBean = new PanoramaComputerBean(summits, createDem(tiles),
+                new PanoramaCache(new File(CACHE_DIRECTORY),
+                        PanoramaCache.identityOf(tiles), CACHE_DISK_SIZE,
+                        CACHE_MEMORY_SIZE));
 
         infoText = new SimpleObjectProperty<>();
+        // a failed computation is reported where the information about the
+        // point under the mouse is shown
+        computerBean.failureProperty().addListener((p, oldF, newF) -> {
+            if (newF != null) {
+                infoText.set(FAILURE_TEXT + newF);
+            }
+        });
 
     }
 
@@ -92,24 +116,27 @@ public final class Alpano extends Application {
 
     }
 
-    @SuppressWarnings("resource")
-    private ContinuousElevationModel createDem() throws Exception {
-        DiscreteElevationModel dem1 = new HgtDiscreteElevationModel(
-                new File("N45E006.hgt")).union(
-                        new HgtDiscreteElevationModel(new File("N45E007.hgt")))
-                        .union(new HgtDiscreteElevationModel(
-                                new File("N45E008.hgt")))
-                        .union(new HgtDiscreteElevationModel(
-                                new File("N45E009.hgt")));
-        DiscreteElevationModel dem2 = new HgtDiscreteElevationModel(
-                new File("N46E006.hgt")).union(
-                        new HgtDiscreteElevationModel(new File("N46E007.hgt")))
-                        .union(new HgtDiscreteElevationModel(
-                                new File("N46E008.hgt")))
-                        .union(new HgtDiscreteElevationModel(
-                                new File("N46E009.hgt")));
-
-        return new ContinuousElevationModel(dem1.union(dem2));
+    private List<File> tileFiles() {
+        List<File> files = new ArrayList<>();
+        for (int lat = MIN_LATITUDE; lat <= MAX_LATITUDE; ++lat) {
+            for (int lon = MIN_LONGITUDE; lon <= MAX_LONGITUDE; ++lon) {
+                files.add(new File(String.format((Locale) null,
+                        "N%02dE%03d.hgt", lat, lon)));
+            }
+        }
+        return files;
+    }
+
+    private ContinuousElevationModel createDem(List<File> files)
+            throws Exception {
+        List<DiscreteElevationModel> tiles = new ArrayList<>();
+        for (File file : files) {
+            tiles.add(new HgtDiscreteElevationModel(file));
+        }
+
+        DiscreteElevationModel dem = new GridDiscreteElevationModel(tiles);
+        return new ContinuousElevationModel(dem)
+                .withPyramid(new ElevationPyramid(dem));
     }
 
     private GridPane paramsGrid() {
@@ -240,11 +267,25 @@ public final class Alpano extends Application {
 
         ScrollPane panoScrollPane = new ScrollPane(panoGroup);
 
-        StackPane panoPane = new StackPane(panoScrollPane, updateNotice());
+        StackPane panoPane = new StackPane(panoScrollPane, updateNotice(),
+                progressBar());
 
         return panoPane;
     }
 
+    private ProgressBar progressBar() {
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.progressProperty().bind(computerBean.progressProperty());
+        // only shown while a panorama is computed
+        progressBar.visibleProperty()
+                .bind(computerBean.progressProperty().lessThan(1));
+        progressBar.setMaxWidth(Double.MAX_VALUE);
+        StackPane.setAlignment(progressBar, BOTTOM_CENTER);
+
+        return progressBar;
+    }
+
     private StackPane updateNotice() {
 
         Text text = new Text(UPDATE_TEXT);
@@ -309,25 +350,26 @@ public final class Alpano extends Application {
 
         double longitude, latitude, elevation, distance, altitude, azimuth;
 
-        PanoramaUserParameters computerParameters = computerBean
-                .getParameters();
+        Panorama panorama = computerBean.getPanorama();
+        // nothing is shown before the first panorama is computed
+        if (panorama == null) {
+            return;
+        }
 
-        double resize = pow(2, computerParameters.superSamplingExponent());
+        // the panorama shown may not be the one of the parameters while the
+        // next one is computed, only its own parameters are used
+        PanoramaParameters panoramaParameters = panorama.parameters();
+        double resize = resize(e, panoramaParameters);
 
         double x = e.getX() * resize;
         double y = e.getY() * resize;
 
-        PanoramaParameters panoramaParameters = computerParameters
-                .panoramaParameters();
-
         altitude = panoramaParameters.altitudeForY(y);
         azimuth = panoramaParameters.azimuthForX(x);
 
         int indexX = (int) round(x);
         int indexY = (int) round(y);
 
-        Panorama panorama = computerBean.getPanorama();
-
         distance = panorama.distanceAt(indexX, indexY);
         latitude = panorama.latitudeAt(indexX, indexY);
         longitude = panorama.longitudeAt(indexX, indexY);
@@ -348,14 +390,16 @@ public final class Alpano extends Application {
 
     private void onMouseClicked(MouseEvent e) throws Error {
 
-        double resize = pow(2,
-                computerBean.getParameters().superSamplingExponent());
+        Panorama panorama = computerBean.getPanorama();
+        if (panorama == null) {
+            return;
+        }
+
+        double resize = resize(e, panorama.parameters());
 
         int x = (int) round(e.getX() * resize);
         int y = (int) round(e.getY() * resize);
 
-        Panorama panorama = computerBean.getPanorama();
-
         double latitude = panorama.latitudeAt(x, y);
         double longitude = panorama.longitudeAt(x, y);
 
@@ -374,6 +418,14 @@ public final class Alpano extends Application {
         }
     }
 
+    // ratio between the size of the panorama and the one of the image view
+    // on which the mouse event occurred
+    private static double resize(MouseEvent e,
+            PanoramaParameters panoramaParameters) {
+        return panoramaParameters.width()
+                / ((ImageView) e.getSource()).getFitWidth();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,122 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.floor;
+import static java.lang.Math.round;
+
+/**
+ * Tool interface to pack colors in the int ARGB format (8 bits per component,
+ * alpha first) without creating a <code>Color</code>. The packed colors are
+ * exactly the ones a <code>PixelWriter</code> writes for the colors built by
+ * the methods of the same name of <code>javafx.scene.paint.Color</code>, whose
+ * conversions (done in double, the components being stored as float) they
+ * reproduce
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ */
+public interface Argb {
+
+    /**
+     * Pack a color given its red, green, blue and opacity components
+     *
+     * @param red
+     *            the red component, between 0 and 1
+     * @param green
+     *            the green component, between 0 and 1
+     * @param blue
+     *            the blue component, between 0 and 1
+     * @param opacity
+     *            the opacity, between 0 and 1
+     * @return the packed color
+     * @throws IllegalArgumentException
+     *             if a component is not between 0 and 1
+     */
+    public static int rgb(double red, double green, double blue,
+            double opacity) {
+        checkArgument(isValid(red), "invalid red");
+        checkArgument(isValid(green), "invalid green");
+        checkArgument(isValid(blue), "invalid blue");
+        checkArgument(isValid(opacity), "invalid opacity");
+        return component(opacity) << 24 | component(red) << 16
+                | component(green) << 8 | component(blue);
+    }
+
+    /**
+     * Pack a color given its hue, saturation, brightness and opacity
+     *
+     * @param hue
+     *            the hue, in degrees (taken modulo 360)
+     * @param saturation
+     *            the saturation, between 0 and 1
+     * @param brightness
+     *            the brightness, between 0 and 1
+     * @param opacity
+     *            the opacity, between 0 and 1
+     * @return the packed color
+     * @throws IllegalArgumentException
+     *             if the saturation, the brightness or the opacity is not
+     *             between 0 and 1
+     */
+    public static int hsb(double hue, double saturation, double brightness,
+            double opacity) {
+        checkArgument(isValid(saturation), "invalid saturation");
+        checkArgument(isValid(brightness), "invalid brightness");
+
+        if (saturation == 0) {
+            return rgb(brightness, brightness, brightness, opacity);
+        }
+
+        double h = ((hue % 360) + 360) % 360 / 360;
+        double sector = (h - floor(h)) * 6;
+        double f = sector - floor(sector);
+        double p = brightness * (1 - saturation);
+        double q = brightness * (1 - saturation * f);
+        double t = brightness * (1 - saturation * (1 - f));
+
+        switch ((int) sector) {
+        case 0:
+            return rgb(brightness, t, p, opacity);
+        case 1:
+            return rgb(q, brightness, p, opacity);
+        case 2:
+            return rgb(p, brightness, t, opacity);
+        case 3:
+            return rgb(p, q, brightness, opacity);
+        case 4:
+            return rgb(t, p, brightness, opacity);
+        case 5:
+            return rgb(brightness, p, q, opacity);
+        default:
+            // the sector is rounded to 6 for a hue just below 360
+            return rgb(0, 0, 0, opacity);
+        }
+    }
+
+    /**
+     * Pack a gray color
+     *
+     * @param gray
+     *            the gray level, from 0 (black) to 1 (white)
+     * @param opacity
+     *            the opacity, between 0 and 1
+     * @return the packed color
+     * @throws IllegalArgumentException
+     *             if the gray level or the opacity is not between 0 and 1
+     */
+    public static int gray(double gray, double opacity) {
+        return rgb(gray, gray, gray, opacity);
+    }
+
+    // tells if a component is between 0 and 1, accepting like Color a
+    // component which is not a number
+    static boolean isValid(double c) {
+        return !(c < 0 || c > 1);
+    }
+
+    // the 8 bits of a component stored as a float, rounded to the nearest
+    static int component(double c) {
+        return (int) round((double) (float) c * 255);
+    }
+}
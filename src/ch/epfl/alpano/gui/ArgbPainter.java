@@ -0,0 +1,94 @@
+package ch.epfl.alpano.gui;
+
+/**
+ * Functional interface that paints rows of pixels packed in the int ARGB
+ * format. Unlike {@link ImagePainter}, it does not depend on JavaFX, so that
+ * panoramas can be painted on machines without it
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see Argb
+ * @see PanoramaExporter
+ */
+@FunctionalInterface
+public interface ArgbPainter {
+
+    /**
+     * Give the colors at consecutive points of a row packed in the int ARGB
+     * format
+     *
+     * @param x
+     *            the first index of the first point
+     * @param y
+     *            the second index of the points
+     * @param length
+     *            the number of points
+     * @param pixels
+     *            the array receiving the color at (x + i, y) at index offset
+     *            + i
+     * @param offset
+     *            the index of the first color in the array
+     * @throws IndexOutOfBoundsException
+     *             if the array is too short
+     */
+    public abstract void argbAt(int x, int y, int length, int[] pixels,
+            int offset);
+
+    /**
+     * Give a painter given the hue, the saturation, the brightness and the
+     * opacity channels
+     *
+     * @param hue
+     *            the hue channel
+     * @param saturation
+     *            the saturation channel
+     * @param brightness
+     *            the brightness channel
+     * @param opacity
+     *            the opacity channel
+     * @return the painter
+     * @see Argb#hsb(double, double, double, double)
+     */
+    public static ArgbPainter hsb(ChannelPainter hue,
+            ChannelPainter saturation, ChannelPainter brightness,
+            ChannelPainter opacity) {
+        return (x, y, length, pixels, offset) -> {
+            // each channel is evaluated on the whole row
+            float[] h = new float[length];
+            float[] s = new float[length];
+            float[] b = new float[length];
+            float[] o = new float[length];
+            hue.valuesAt(x, y, length, h);
+            saturation.valuesAt(x, y, length, s);
+            brightness.valuesAt(x, y, length, b);
+            opacity.valuesAt(x, y, length, o);
+            for (int i = 0; i < length; ++i) {
+                pixels[offset + i] = Argb.hsb(h[i], s[i], b[i], o[i]);
+            }
+        };
+    }
+
+    /**
+     * Give a painter given a gray channel and an opacity channel
+     *
+     * @param gray
+     *            the gray channel
+     * @param opacity
+     *            the opacity channel
+     * @return the painter
+     * @see Argb#gray(double, double)
+     */
+    public static ArgbPainter gray(ChannelPainter gray,
+            ChannelPainter opacity) {
+        return (x, y, length, pixels, offset) -> {
+            float[] g = new float[length];
+            float[] o = new float[length];
+            gray.valuesAt(x, y, length, g);
+            opacity.valuesAt(x, y, length, o);
+            for (int i = 0; i < length; ++i) {
+                pixels[offset + i] = Argb.gray(g[i], o[i]);
+            }
+        };
+    }
+}
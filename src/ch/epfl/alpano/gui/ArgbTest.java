@@ -0,0 +1,73 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import javafx.scene.paint.Color;
+
+public class ArgbTest {
+    // the packing of PixelWriter.setColor
+    private static int argbOf(Color c) {
+        return (int) Math.round(c.getOpacity() * 255) << 24
+                | (int) Math.round(c.getRed() * 255) << 16
+                | (int) Math.round(c.getGreen() * 255) << 8
+                | (int) Math.round(c.getBlue() * 255);
+    }
+
+    @Test
+    public void hsbIsTheSameAsColor() {
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            float h = (rng.nextFloat() - 0.25f) * 1000;
+            float s = rng.nextInt(10) == 0 ? 0 : rng.nextFloat();
+            float b = rng.nextFloat();
+            float o = rng.nextInt(2);
+            assertEquals(argbOf(Color.hsb(h, s, b, o)), Argb.hsb(h, s, b, o));
+        }
+    }
+
+    @Test
+    public void hsbIsTheSameAsColorOnSectorBorders() {
+        for (int h = -360; h <= 720; h += 30) {
+            assertEquals(argbOf(Color.hsb(h, 0.5, 0.8, 1)), Argb.hsb(h, 0.5, 0.8, 1));
+        }
+        float justBelow = Math.nextDown(360f);
+        assertEquals(argbOf(Color.hsb(justBelow, 1, 1, 1)), Argb.hsb(justBelow, 1, 1, 1));
+    }
+
+    @Test
+    public void grayIsTheSameAsColor() {
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            float g = rng.nextFloat();
+            float o = rng.nextFloat();
+            assertEquals(argbOf(Color.gray(g, o)), Argb.gray(g, o));
+        }
+    }
+
+    @Test
+    public void rgbPacksComponentsAlphaFirst() {
+        assertEquals(0xFF_FF_80_00, Argb.rgb(1, 0.5, 0, 1));
+        assertEquals(0x00_00_00_FF, Argb.rgb(0, 0, 1, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hsbFailsWithInvalidSaturation() {
+        Argb.hsb(0, 1.5, 0.5, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hsbFailsWithInvalidOpacity() {
+        Argb.hsb(0, 0.5, 0.5, -0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void grayFailsWithInvalidGray() {
+        Argb.gray(2, 1);
+    }
+}
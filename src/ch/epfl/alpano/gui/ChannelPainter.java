@@ -7,7 +7,13 @@ import ch.epfl.alpano.Math2;
 import ch.epfl.alpano.Panorama;
 
 /**
- * Functional interface representing a channel painter
+ * Functional interface representing a channel painter. Besides the value at
+ * a point, a channel painter can give the values of a whole row segment at
+ * once: the painters built by the combinators evaluate it with one loop over
+ * the row per combinator instead of a chain of calls per point. Each
+ * combinator defines its operation in a single method, used both by the
+ * value at a point and by its own loop, so that this loop stays specialized
+ * for the operation
  * 
  * @author Louis Amaudruz (271808)
  * @author Mathieu Chevalley (274698) *
@@ -26,6 +32,73 @@ public interface ChannelPainter {
      */
     public abstract float valueAt(int x, int y);
 
+    /**
+     * Give the values of the channel painter at consecutive points of a row,
+     * the same as the ones given by {@link #valueAt(int, int)}
+     * 
+     * @param x
+     *            first index of the first point
+     * @param y
+     *            second index of the points
+     * @param length
+     *            the number of points
+     * @param values
+     *            the array receiving the value at (x + i, y) at index i
+     * @throws IndexOutOfBoundsException
+     *             if the array is shorter than the number of points
+     */
+    public default void valuesAt(int x, int y, int length, float[] values) {
+        for (int i = 0; i < length; ++i) {
+            values[i] = valueAt(x + i, y);
+        }
+    }
+
+    /**
+     * Give the channel painter of the distance of the samples of a panorama
+     * 
+     * @param p
+     *            the panorama
+     * @return the channel painter
+     */
+    public static ChannelPainter distance(Panorama p) {
+        return new ChannelPainter() {
+            @Override
+            public float valueAt(int x, int y) {
+                return p.distanceAt(x, y);
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                for (int i = 0; i < length; ++i) {
+                    values[i] = p.distanceAt(x + i, y);
+                }
+            }
+        };
+    }
+
+    /**
+     * Give the channel painter of the slope of the samples of a panorama
+     * 
+     * @param p
+     *            the panorama
+     * @return the channel painter
+     */
+    public static ChannelPainter slope(Panorama p) {
+        return new ChannelPainter() {
+            @Override
+            public float valueAt(int x, int y) {
+                return p.slopeAt(x, y);
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                for (int i = 0; i < length; ++i) {
+                    values[i] = p.slopeAt(x + i, y);
+                }
+            }
+        };
+    }
+
     /**
      * Compute the Channel painter which will return a value with respect to
      * some inforamtion about the panorama
@@ -49,7 +122,25 @@ public interface ChannelPainter {
      * @return the channel painter with the addition
      */
     public default ChannelPainter add(float d) {
-        return (x, y) -> valueAt(x, y) + d;
+        ChannelPainter painter = this;
+        return new ChannelPainter() {
+            private float apply(float v) {
+                return v + d;
+            }
+
+            @Override
+            public float valueAt(int x, int y) {
+                return apply(painter.valueAt(x, y));
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                painter.valuesAt(x, y, length, values);
+                for (int i = 0; i < length; ++i) {
+                    values[i] = apply(values[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -60,7 +151,25 @@ public interface ChannelPainter {
      * @return the channel painter with the multiplication
      */
     public default ChannelPainter mul(float d) {
-        return (x, y) -> valueAt(x, y) * d;
+        ChannelPainter painter = this;
+        return new ChannelPainter() {
+            private float apply(float v) {
+                return v * d;
+            }
+
+            @Override
+            public float valueAt(int x, int y) {
+                return apply(painter.valueAt(x, y));
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                painter.valuesAt(x, y, length, values);
+                for (int i = 0; i < length; ++i) {
+                    values[i] = apply(values[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -71,7 +180,25 @@ public interface ChannelPainter {
      * @return the channel painter with the subtraction
      */
     public default ChannelPainter sub(float d) {
-        return (x, y) -> valueAt(x, y) - d;
+        ChannelPainter painter = this;
+        return new ChannelPainter() {
+            private float apply(float v) {
+                return v - d;
+            }
+
+            @Override
+            public float valueAt(int x, int y) {
+                return apply(painter.valueAt(x, y));
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                painter.valuesAt(x, y, length, values);
+                for (int i = 0; i < length; ++i) {
+                    values[i] = apply(values[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -82,7 +209,25 @@ public interface ChannelPainter {
      * @return the channel painter with the division
      */
     public default ChannelPainter div(float d) {
-        return (x, y) -> valueAt(x, y) / d;
+        ChannelPainter painter = this;
+        return new ChannelPainter() {
+            private float apply(float v) {
+                return v / d;
+            }
+
+            @Override
+            public float valueAt(int x, int y) {
+                return apply(painter.valueAt(x, y));
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                painter.valuesAt(x, y, length, values);
+                for (int i = 0; i < length; ++i) {
+                    values[i] = apply(values[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -93,7 +238,25 @@ public interface ChannelPainter {
      * @return the channel painter to which the function was applied
      */
     public default ChannelPainter map(DoubleUnaryOperator p) {
-        return (x, y) -> (float) p.applyAsDouble(valueAt(x, y));
+        ChannelPainter painter = this;
+        return new ChannelPainter() {
+            private float apply(float v) {
+                return (float) p.applyAsDouble(v);
+            }
+
+            @Override
+            public float valueAt(int x, int y) {
+                return apply(painter.valueAt(x, y));
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                painter.valuesAt(x, y, length, values);
+                for (int i = 0; i < length; ++i) {
+                    values[i] = apply(values[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -103,7 +266,25 @@ public interface ChannelPainter {
      * @return the channel painter to which the function (clamp) was applied
      */
     public default ChannelPainter clamp() {
-        return (x, y) -> max(0, min(valueAt(x, y), 1));
+        ChannelPainter painter = this;
+        return new ChannelPainter() {
+            private float apply(float v) {
+                return max(0, min(v, 1));
+            }
+
+            @Override
+            public float valueAt(int x, int y) {
+                return apply(painter.valueAt(x, y));
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                painter.valuesAt(x, y, length, values);
+                for (int i = 0; i < length; ++i) {
+                    values[i] = apply(values[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -112,8 +293,25 @@ public interface ChannelPainter {
      * @return the channel painter to which the function (cycle) was applied
      */
     public default ChannelPainter cycle() {
-        return (x, y) -> (float) Math2.floorMod(valueAt(x, y), 1);
+        ChannelPainter painter = this;
+        return new ChannelPainter() {
+            private float apply(float v) {
+                return (float) Math2.floorMod(v, 1);
+            }
+
+            @Override
+            public float valueAt(int x, int y) {
+                return apply(painter.valueAt(x, y));
+            }
 
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                painter.valuesAt(x, y, length, values);
+                for (int i = 0; i < length; ++i) {
+                    values[i] = apply(values[i]);
+                }
+            }
+        };
     }
 
     /**
@@ -122,7 +320,25 @@ public interface ChannelPainter {
      * @return the channel painter to which the function (invert) was applied
      */
     public default ChannelPainter invert() {
-        return (x, y) -> 1 - valueAt(x, y);
+        ChannelPainter painter = this;
+        return new ChannelPainter() {
+            private float apply(float v) {
+                return 1 - v;
+            }
+
+            @Override
+            public float valueAt(int x, int y) {
+                return apply(painter.valueAt(x, y));
+            }
+
+            @Override
+            public void valuesAt(int x, int y, int length, float[] values) {
+                painter.valuesAt(x, y, length, values);
+                for (int i = 0; i < length; ++i) {
+                    values[i] = apply(values[i]);
+                }
+            }
+        };
     }
 
 }
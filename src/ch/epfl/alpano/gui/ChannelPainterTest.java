@@ -0,0 +1,74 @@
+package ch.epfl.alpano.gui;
+
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaParameters;
+
+public class ChannelPainterTest {
+    private static Panorama panorama() {
+        PanoramaParameters ps = new PanoramaParameters(new GeoPoint(0, 0), 1000, toRadians(60), toRadians(60), 100_000, 13, 5);
+        Panorama.Builder b = new Panorama.Builder(ps);
+        for (int x = 0; x < ps.width(); ++x) {
+            for (int y = 0; y < ps.height(); ++y) {
+                if ((x + y) % 4 != 0) {
+                    b.setDistanceAt(x, y, 37_000 * x + 11_000 * y);
+                }
+                b.setSlopeAt(x, y, 0.1f * x - 0.2f * y);
+            }
+        }
+        return b.build();
+    }
+
+    private static void assertRowsEqualValues(ChannelPainter painter, int width, int height) {
+        float[] values = new float[width + 2];
+        for (int y = 0; y < height; ++y) {
+            painter.valuesAt(1, y, width - 1, values);
+            for (int x = 1; x < width; ++x) {
+                assertEquals(painter.valueAt(x, y), values[x - 1], 0);
+            }
+        }
+    }
+
+    @Test
+    public void combinedPainterGivesTheSameValuesByRows() {
+        Panorama p = panorama();
+        ChannelPainter dist = ChannelPainter.distance(p);
+        ChannelPainter slo = ChannelPainter.slope(p);
+        ChannelPainter[] painters = {
+                dist, slo,
+                dist.div(100_000).cycle().mul(360),
+                dist.div(200_000).clamp().invert(),
+                slo.mul(2).div((float) Math.PI).invert().mul(0.7f).add(0.3f).sub(0.1f),
+                dist.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1),
+                ChannelPainter.maxDistanceToNeighbors(p).sub(500).div(4500).clamp()
+        };
+        for (ChannelPainter painter : painters) {
+            assertRowsEqualValues(painter, p.parameters().width(), p.parameters().height());
+        }
+    }
+
+    @Test
+    public void lambdaPainterGivesItsValuesByRows() {
+        ChannelPainter painter = (x, y) -> x * 10 + y;
+        assertRowsEqualValues(painter.add(1).mul(3), 8, 3);
+    }
+
+    @Test
+    public void rowLengthCanBeShorterThanTheArray() {
+        float[] values = { -1, -1, -1 };
+        ((ChannelPainter) (x, y) -> x).invert().valuesAt(4, 0, 2, values);
+        assertEquals(-3, values[0], 0);
+        assertEquals(-4, values[1], 0);
+        assertEquals(-1, values[2], 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void valuesAtFailsWithTooShortArray() {
+        ((ChannelPainter) (x, y) -> x).add(1).valuesAt(0, 0, 3, new float[2]);
+    }
+}
@@ -3,14 +3,15 @@ package ch.epfl.alpano.gui;
 import javafx.scene.paint.Color;
 
 /**
- * Functional interface that creates an image painter
+ * Functional interface that creates an image painter, which is also an
+ * {@link ArgbPainter}
  * 
  * @author Louis Amaudruz (271808)
  * @author Mathieu Chevalley (274698)
  */
 
 @FunctionalInterface
-public interface ImagePainter {
+public interface ImagePainter extends ArgbPainter {
 
     /**
      * Give the color at a given index
@@ -24,6 +25,46 @@ public interface ImagePainter {
      */
     public abstract Color colorAt(int x, int y);
 
+    /**
+     * Give the colors at consecutive points of a row, the same as the ones
+     * given by {@link #colorAt(int, int)}
+     * 
+     * @param x
+     *            the first index of the first point
+     * @param y
+     *            the second index of the points
+     * @param length
+     *            the number of points
+     * @param colors
+     *            the array receiving the color at (x + i, y) at index i
+     * @throws IndexOutOfBoundsException
+     *             if the array is shorter than the number of points
+     */
+    public default void colorsAt(int x, int y, int length, Color[] colors) {
+        for (int i = 0; i < length; ++i) {
+            colors[i] = colorAt(x + i, y);
+        }
+    }
+
+    /**
+     * {@inheritDoc} The colors are the same as the ones a
+     * <code>PixelWriter</code> writes for the colors given by
+     * {@link #colorAt(int, int)}
+     * 
+     * @see Argb
+     */
+    @Override
+    public default void argbAt(int x, int y, int length, int[] pixels,
+            int offset) {
+        Color[] colors = new Color[length];
+        colorsAt(x, y, length, colors);
+        for (int i = 0; i < length; ++i) {
+            Color c = colors[i];
+            pixels[offset + i] = Argb.rgb(c.getRed(), c.getGreen(),
+                    c.getBlue(), c.getOpacity());
+        }
+    }
+
     /**
      * Give an image painter given the hue, the saturation, the brightness and
      * the opacity channels at a point
@@ -42,8 +83,23 @@ public interface ImagePainter {
     public static ImagePainter hsb(ChannelPainter hue,
             ChannelPainter saturation, ChannelPainter brightness,
             ChannelPainter opacity) {
-        return (x, y) -> Color.hsb(hue.valueAt(x, y), saturation.valueAt(x, y),
-                brightness.valueAt(x, y), opacity.valueAt(x, y));
+        // the rows are painted by the ARGB painter, which evaluates each
+        // channel on the whole row
+        ArgbPainter argb = ArgbPainter.hsb(hue, saturation, brightness,
+                opacity);
+        return new ImagePainter() {
+            @Override
+            public Color colorAt(int x, int y) {
+                return Color.hsb(hue.valueAt(x, y), saturation.valueAt(x, y),
+                        brightness.valueAt(x, y), opacity.valueAt(x, y));
+            }
+
+            @Override
+            public void argbAt(int x, int y, int length, int[] pixels,
+                    int offset) {
+                argb.argbAt(x, y, length, pixels, offset);
+            }
+        };
     }
 
     /**
@@ -58,6 +114,18 @@ public interface ImagePainter {
      */
     public static ImagePainter gray(ChannelPainter gray,
             ChannelPainter opacity) {
-        return (x, y) -> Color.gray(gray.valueAt(x, y), opacity.valueAt(x, y));
+        ArgbPainter argb = ArgbPainter.gray(gray, opacity);
+        return new ImagePainter() {
+            @Override
+            public Color colorAt(int x, int y) {
+                return Color.gray(gray.valueAt(x, y), opacity.valueAt(x, y));
+            }
+
+            @Override
+            public void argbAt(int x, int y, int length, int[] pixels,
+                    int offset) {
+                argb.argbAt(x, y, length, pixels, offset);
+            }
+        };
     }
 }
@@ -2,14 +2,16 @@ package ch.epfl.alpano.gui;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.function.DoubleUnaryOperator;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import ch.epfl.alpano.GeoPoint;
-import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.Panorama;
 import ch.epfl.alpano.PanoramaParameters;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
 import ch.epfl.alpano.summit.Summit;
+import ch.epfl.alpano.summit.SummitIndex;
 import javafx.scene.Node;
 import javafx.scene.shape.Line;
 import javafx.scene.text.Text;
@@ -19,7 +21,8 @@ import javafx.scene.transform.Translate;
 import static ch.epfl.alpano.Math2.angularDistance;
 import static java.util.Objects.requireNonNull;
 import static java.lang.Math.*;
-import static ch.epfl.alpano.PanoramaComputer.rayToGroundDistance;
+import static ch.epfl.alpano.PanoramaComputer.curvatureAndRefraction;
+import static ch.epfl.alpano.PanoramaComputer.firstIntervalContainingRoot;
 
 import java.util.ArrayList;
 import java.util.BitSet;
@@ -35,11 +38,11 @@ import java.util.BitSet;
 public final class Labelizer {
 
     private final ContinuousElevationModel cem;
-    private final List<Summit> summits;
+    private final SummitIndex summits;
 
     /**
      * Construct the labelizer given a continuous elevation model and a list of
-     * all the summits
+     * all the summits, which are indexed by position
      *
      * @param cem
      *            the continuous elevation model
@@ -50,7 +53,7 @@ public final class Labelizer {
      */
     public Labelizer(ContinuousElevationModel cem, List<Summit> summits) {
         this.cem = requireNonNull(cem);
-        this.summits = Collections.unmodifiableList(requireNonNull(summits));
+        this.summits = new SummitIndex(summits);
     }
 
     private static final int ABOVE_BORDER = 170;
@@ -68,9 +71,27 @@ public final class Labelizer {
      * @return the list of nodes
      */
     public List<Node> labels(PanoramaParameters parameters) {
+        return labels(parameters, null);
+    }
+
+    /**
+     * Construct a list of nodes representing all the summits that can be drawn
+     * given some constraints in a panorama, the visibility of the summits
+     * being read in the panorama already computed when it is clear enough
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @param panorama
+     *            the panorama computed for the same view, possibly with more
+     *            samples, or null to cast a ray to each summit
+     * @return the list of nodes
+     */
+    public List<Node> labels(PanoramaParameters parameters,
+            Panorama panorama) {
 
         final List<Node> labels = new ArrayList<>();
-        final List<VisibleSummit> visibleSummits = visibleSummits(parameters);
+        final List<VisibleSummit> visibleSummits = visibleSummits(parameters,
+                panorama);
 
         Collections.sort(visibleSummits, (x, y) -> {
 
@@ -151,14 +172,35 @@ public final class Labelizer {
     }
 
     private static final int ERROR_CONSTANT = 200;
-    private static final int INTERVAL = 64;
+    // width of the band around the limit of visibility in which the
+    // distances of the panorama are not trusted
+    private static final int PANORAMA_TOLERANCE = 100;
 
     // Construct a list of all the visible summits in a panorama
 
-    private List<VisibleSummit> visibleSummits(PanoramaParameters parameters) {
+    private List<VisibleSummit> visibleSummits(PanoramaParameters parameters,
+            Panorama panorama) {
+
+        GeoPoint observerPosition = parameters.observerPosition();
+        int maxDistance = parameters.maxDistance();
+        double centerAzimuth = parameters.centerAzimuth();
+        double halfHorizontal = parameters.horizontalFieldOfView() / 2d;
 
-        List<VisibleSummit> visibleSummits = new ArrayList<>();
+        // only the summits in the horizontal field of view are examined, each
+        // one independently of the others, the order of the list being kept
+        return summits
+                .summitsInSector(observerPosition, maxDistance, centerAzimuth,
+                        halfHorizontal)
+                .parallelStream()
+                .map(s -> visibleSummit(s, parameters, panorama))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
 
+    // The summit with its position in the panorama if it is visible, null
+    // otherwise
+    private VisibleSummit visibleSummit(Summit s, PanoramaParameters parameters,
+            Panorama panorama) {
 
         GeoPoint observerPosition = parameters.observerPosition();
         int observerElevation = parameters.observerElevation();
@@ -168,39 +210,76 @@ public final class Labelizer {
         double halfHorizontal = parameters.horizontalFieldOfView() / 2d;
         double halfVertical = parameters.verticalFieldOfView() / 2d;
 
-        for (Summit s : summits) {
-
-            GeoPoint summitPosition = s.position();
+        GeoPoint summitPosition = s.position();
 
-            double distance = observerPosition.distanceTo(summitPosition);
-            double azimuth = observerPosition.azimuthTo(summitPosition);
+        double distance = observerPosition.distanceTo(summitPosition);
+        double azimuth = observerPosition.azimuthTo(summitPosition);
 
-            ElevationProfile profile = new ElevationProfile(cem,
-                    observerPosition, azimuth, distance);
+        // the distance between the summit and the horizontal ray, read at the
+        // summit itself as no profile is needed to tell it
+        double height = observerElevation - cem.elevationAt(summitPosition)
+                + curvatureAndRefraction(distance);
+        double slope = -height / distance;
 
-            double height = rayToGroundDistance(profile, observerElevation, 0)
-                    .applyAsDouble(distance);
-            double slope = -height / distance;
+        double altitude = atan(slope);
 
-            DoubleUnaryOperator f = rayToGroundDistance(profile,
-                    observerElevation, slope);
+        if (distance <= maxDistance
+                && abs(angularDistance(centerAzimuth, azimuth)) <= halfHorizontal
+                && abs(altitude) <= halfVertical
+                && isVisible(panorama, observerPosition, observerElevation,
+                        distance, azimuth, slope)) {
 
-            double altitude = atan(slope);
+            int x = (int) round(parameters.xForAzimuth(azimuth));
+            int y = (int) round(parameters.yForAltitude(altitude));
+            return new VisibleSummit(s, x, y);
+        }
+        return null;
+    }
 
-            if (distance <= maxDistance
-                    && abs(angularDistance(centerAzimuth,
-                            azimuth)) <= halfHorizontal
-                    && abs(altitude) <= halfVertical
-                    && Math2.firstIntervalContainingRoot(f, 0, distance,
-                            INTERVAL) >= distance - ERROR_CONSTANT) {
+    // Tells if nothing hides a summit, the panorama telling it if the rays of
+    // its four samples around the summit all reach it, or all stop before it
+    // (the rays going higher than the summit stopping farther if it is not
+    // hidden), and the ray to the summit being cast otherwise
+    private boolean isVisible(Panorama panorama, GeoPoint observerPosition,
+            int observerElevation, double distance, double azimuth,
+            double slope) {
+        double limit = distance - ERROR_CONSTANT;
+
+        if (panorama != null) {
+            PanoramaParameters parameters = panorama.parameters();
+            int x = (int) floor(parameters.xForAzimuth(azimuth));
+            int y = (int) floor(parameters.yForAltitude(atan(slope)));
+
+            double nearest = Double.POSITIVE_INFINITY;
+            double farthest = 0;
+            for (int i = 0; i <= 1; ++i) {
+                for (int j = 0; j <= 1; ++j) {
+                    int sampleX = max(0, min(x + i, parameters.width() - 1));
+                    int sampleY = max(0, min(y + j, parameters.height() - 1));
+                    // horizontal distance, as the one of the summit
+                    double abscissa = panorama.distanceAt(sampleX, sampleY)
+                            * cos(parameters.altitudeForY(sampleY));
+                    nearest = min(nearest, abscissa);
+                    farthest = max(farthest, abscissa);
+                }
+            }
 
-                int x = (int) round(parameters.xForAzimuth(azimuth));
-                int y = (int) round(parameters.yForAltitude(altitude));
-                visibleSummits.add(new VisibleSummit(s, x, y));
+            // a ray just below the summit hits its slopes, so the sky all
+            // around it only comes from an observer below the ground
+            if (nearest >= limit + PANORAMA_TOLERANCE
+                    && nearest != Double.POSITIVE_INFINITY) {
+                return true;
+            }
+            if (farthest < limit - PANORAMA_TOLERANCE) {
+                return false;
             }
         }
 
-        return visibleSummits;
+        // only built when the panorama cannot tell it
+        ElevationProfile profile = new ElevationProfile(cem, observerPosition,
+                azimuth, distance);
+        return firstIntervalContainingRoot(profile, observerElevation, slope,
+                distance) >= limit;
     }
 
     // Ease the access to data that have already been calculated
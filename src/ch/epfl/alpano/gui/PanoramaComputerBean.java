@@ -1,14 +1,29 @@
 package ch.epfl.alpano.gui;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaCache;
 import ch.epfl.alpano.PanoramaComputer;
 import ch.epfl.alpano.PanoramaParameters;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.summit.Summit;
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
 import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -16,7 +31,13 @@ import javafx.scene.Node;
 import javafx.scene.image.Image;
 
 /**
- * A bean that contains the proprieties of the panorama (image, labels...)
+ * A bean that contains the proprieties of the panorama (image, labels...).
+ * They are computed in a background thread each time the parameters change,
+ * the computation for the previous parameters being cancelled, and published
+ * on the JavaFX thread once done. Coarse previews of the panorama and of its
+ * image, without labels, are published while it is computed. A panorama
+ * already computed may be taken from a cache instead. If the computation
+ * fails, the previous panorama stays and the failure is published
  * 
  * @author Mathieu Chevalley (274698)
  * @author Louis Amaudruz (271808)
@@ -25,14 +46,26 @@ import javafx.scene.image.Image;
 
 public final class PanoramaComputerBean {
 
+    // stride of the columns and rows of the first preview
+    private static final int FIRST_STRIDE = 16;
+
     private final ObjectProperty<PanoramaUserParameters> parameters;
     private final ObjectProperty<Image> image;
     private final ObjectProperty<Panorama> panorama;
+    private final ReadOnlyDoubleWrapper progress;
+    private final ReadOnlyObjectWrapper<Throwable> failure;
 
     private final ObservableList<Node> labels;
     private final ObservableList<Node> unmodifiableLabels;
     private final Labelizer labelizer;
     private final PanoramaComputer computer;
+    // null if the panoramas are not cached
+    private final PanoramaCache cache;
+    private final boolean prefetch;
+    private final Executor executor;
+    // incremented each time the parameters change, a computation being
+    // cancelled as soon as it is not the last one
+    private final AtomicLong generation;
 
     /**
      * Construct a panorama computer bean given all the summits and a continuous
@@ -45,12 +78,66 @@ public final class PanoramaComputerBean {
      */
     public PanoramaComputerBean(List<Summit> summits,
             ContinuousElevationModel dem) {
-        computer = new PanoramaComputer(dem);
+        this(summits, dem, null);
+    }
+
+    /**
+     * Construct a panorama computer bean given all the summits, a continuous
+     * elevation model and a cache of the panoramas computed from it
+     * 
+     * @param summits
+     *            all the summits
+     * @param dem
+     *            the continuous elevation model
+     * @param cache
+     *            the cache of the panoramas, consulted before computing a
+     *            panorama and given the panoramas computed, or null
+     */
+    public PanoramaComputerBean(List<Summit> summits,
+            ContinuousElevationModel dem, PanoramaCache cache) {
+        this(summits, dem, cache, false);
+    }
+
+    /**
+     * Construct a panorama computer bean given all the summits, a continuous
+     * elevation model and a cache of the panoramas computed from it, the
+     * samples of the elevation model within reach of the observer being
+     * possibly prefetched before each computation. As prefetching usually
+     * keeps the samples in memory, it should only be asked for a model that
+     * bounds the memory it uses, like a HgtTileCache
+     * 
+     * @param summits
+     *            all the summits
+     * @param dem
+     *            the continuous elevation model
+     * @param cache
+     *            the cache of the panoramas, consulted before computing a
+     *            panorama and given the panoramas computed, or null
+     * @param prefetch
+     *            true if the samples within reach of the observer are
+     *            prefetched before each computation
+     * @see PanoramaComputer#prefetch(PanoramaParameters)
+     * @see ch.epfl.alpano.dem.HgtTileCache
+     */
+    public PanoramaComputerBean(List<Summit> summits,
+            ContinuousElevationModel dem, PanoramaCache cache,
+            boolean prefetch) {
+        this.cache = cache;
+        this.prefetch = prefetch;
+        computer = new PanoramaComputer(dem, ForkJoinPool.commonPool());
         labelizer = new Labelizer(dem, summits);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "panorama-computer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        generation = new AtomicLong();
 
         parameters = new SimpleObjectProperty<>();
         panorama = new SimpleObjectProperty<>();
         image = new SimpleObjectProperty<>();
+        progress = new ReadOnlyDoubleWrapper(1);
+        failure = new ReadOnlyObjectWrapper<>();
         labels = FXCollections.observableArrayList();
         unmodifiableLabels = FXCollections.unmodifiableObservableList(labels);
 
@@ -59,32 +146,128 @@ public final class PanoramaComputerBean {
 
     }
 
-    // Compute all the values with the new parameters
+    // Compute all the values with the new parameters in the background,
+    // cancelling the computation of the previous ones
     private void compute(PanoramaUserParameters newParam) {
+        long id = generation.incrementAndGet();
+        BooleanSupplier cancelled = () -> generation.get() != id;
+        progress.set(0);
+        failure.set(null);
+
+        executor.execute(() -> {
+            // superseded before having started
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+
+            try {
+                PanoramaParameters parameters = newParam.panoramaParameters();
+
+                Panorama cachedPanorama = cache == null ? null
+                        : cache.get(parameters);
+                Panorama newPanorama = cachedPanorama;
+                if (newPanorama == null) {
+                    // the tiles around the observer are decoded before the
+                    // rays are cast
+                    if (prefetch) {
+                        computer.prefetch(parameters);
+                    }
+                    newPanorama = computer.computePanoramaProgressively(
+                            parameters, FIRST_STRIDE,
+                            previewPublisher(cancelled),
+                            progressReporter(cancelled), cancelled);
+                }
+
+                List<Node> newLabels = labelizer
+                        .labels(newParam.panoramaDisplayParameters(),
+                                newPanorama);
+                if (cancelled.getAsBoolean()) {
+                    return;
+                }
+                Image newImage = computeImage(newPanorama);
 
-        PanoramaParameters parameters = newParam.panoramaParameters();
+                Panorama publishedPanorama = newPanorama;
+                Platform.runLater(() -> {
+                    if (!cancelled.getAsBoolean()) {
+                        panorama.set(publishedPanorama);
+                        labels.setAll(newLabels);
+                        image.set(newImage);
+                        progress.set(1);
+                    }
+                });
 
-        panorama.set(computer.computePanorama(parameters));
+                // once published, so that writing it does not delay it
+                if (cache != null && cachedPanorama == null) {
+                    cache.put(newPanorama);
+                }
+            } catch (CancellationException e) {
+                // newer parameters are being computed
+            } catch (IOException e) {
+                // the panorama is only kept in memory by the cache
+            } catch (RuntimeException | Error e) {
+                // the previous panorama stays, the progress ends anyway
+                Platform.runLater(() -> {
+                    if (!cancelled.getAsBoolean()) {
+                        failure.set(e);
+                        progress.set(1);
+                    }
+                });
+                if (e instanceof Error) {
+                    throw (Error) e;
+                }
+            }
+        });
+    }
+
+    // publish the previews and their images on the JavaFX thread, the labels
+    // of the previous panorama being removed with the first one
+    private Consumer<Panorama> previewPublisher(BooleanSupplier cancelled) {
+        return preview -> {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            Image previewImage = computeImage(preview);
 
-        labels.setAll(labelizer.labels(newParam.panoramaDisplayParameters()));
+            Platform.runLater(() -> {
+                if (!cancelled.getAsBoolean()) {
+                    panorama.set(preview);
+                    labels.clear();
+                    image.set(previewImage);
+                }
+            });
+        };
+    }
 
-        image.set(computeImage(getPanorama()));
+    // publish the progress on the JavaFX thread, by steps of one percent
+    private DoubleConsumer progressReporter(BooleanSupplier cancelled) {
+        AtomicInteger lastPercent = new AtomicInteger();
+        return p -> {
+            int percent = (int) (p * 100);
+            int last = lastPercent.get();
+            if (percent > last && lastPercent.compareAndSet(last, percent)) {
+                Platform.runLater(() -> {
+                    if (!cancelled.getAsBoolean()) {
+                        progress.set(percent / 100d);
+                    }
+                });
+            }
+        };
     }
 
     // compute the new image
     private Image computeImage(Panorama panorama) {
-        ChannelPainter dist = panorama::distanceAt;
+        ChannelPainter dist = ChannelPainter.distance(panorama);
         ChannelPainter hue = dist.div(100_000).cycle().mul(360);
         ChannelPainter s = dist.div(200_000).clamp().invert();
 
-        ChannelPainter slo = panorama::slopeAt;
+        ChannelPainter slo = ChannelPainter.slope(panorama);
         ChannelPainter b = slo.mul(2).div((float) Math.PI).invert().mul(0.7f)
                 .add(0.3f);
-        ChannelPainter o = (x,
-                y) -> dist.valueAt(x, y) == Float.POSITIVE_INFINITY ? 0 : 1;
+        ChannelPainter o = dist
+                .map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
 
         ImagePainter painter = ImagePainter.hsb(hue, s, b, o);
-        return PanoramaRenderer.renderPanorama(panorama, painter);
+        return PanoramaRenderer.renderPanoramaInParallel(panorama, painter);
     }
 
     /**
@@ -116,7 +299,8 @@ public final class PanoramaComputerBean {
     }
 
     /**
-     * The property of the panorama
+     * The property of the panorama, which may be a coarse preview while the
+     * panorama of the parameters is computed
      * 
      * @return the property
      */
@@ -133,6 +317,46 @@ public final class PanoramaComputerBean {
         return panoramaProperty().get();
     }
 
+    /**
+     * The property of the progress of the computation of the panorama, from 0
+     * when the parameters change to 1 once the panorama, its labels and its
+     * image are updated
+     * 
+     * @return the property
+     */
+    public ReadOnlyDoubleProperty progressProperty() {
+        return progress.getReadOnlyProperty();
+    }
+
+    /**
+     * The progress of the computation of the panorama
+     * 
+     * @return the progress, between 0 and 1
+     */
+    public double getProgress() {
+        return progressProperty().get();
+    }
+
+    /**
+     * The property of the failure of the computation of the panorama, its
+     * labels or its image, set on the JavaFX thread when it occurs and reset
+     * to null when the parameters change
+     * 
+     * @return the property
+     */
+    public ReadOnlyObjectProperty<Throwable> failureProperty() {
+        return failure.getReadOnlyProperty();
+    }
+
+    /**
+     * The failure of the computation of the panorama
+     * 
+     * @return the failure, or null if the computation did not fail
+     */
+    public Throwable getFailure() {
+        return failureProperty().get();
+    }
+
     /**
      * The property of the image
      * 
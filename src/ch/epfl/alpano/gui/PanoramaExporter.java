@@ -0,0 +1,233 @@
+package ch.epfl.alpano.gui;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Objects.requireNonNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import ch.epfl.alpano.Panorama;
+
+/**
+ * Class that writes the image of a panorama in a file format, without JavaFX.
+ * The image is painted and written row by row, so that only one row of it is
+ * in memory at a time. The given stream is neither buffered nor closed
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see ArgbPainter
+ */
+public final class PanoramaExporter {
+
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G',
+            '\r', '\n', 0x1A, '\n' };
+    // 8 bits per component, RGBA
+    private static final int PNG_BIT_DEPTH = 8;
+    private static final int PNG_COLOR_TYPE = 6;
+    // each byte minus the same byte of the previous pixel
+    private static final int PNG_SUB_FILTER = 1;
+    private static final int PNG_HEADER_LENGTH = 13;
+    private static final int PNG_CHUNK_LENGTH = 1 << 16;
+
+    // private builder, this class cannot be instantiated
+    private PanoramaExporter() {
+    }
+
+    /**
+     * Write the image of a panorama in the PNG format, with the opacity
+     *
+     * @param panorama
+     *            the panorama
+     * @param painter
+     *            the painter of the image
+     * @param out
+     *            the stream the image is written to
+     * @throws IOException
+     *             if the stream cannot be written
+     * @throws NullPointerException
+     *             if one of the arguments is null
+     */
+    public static void writePng(Panorama panorama, ArgbPainter painter,
+            OutputStream out) throws IOException {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+        requireNonNull(painter);
+        DataOutputStream data = new DataOutputStream(requireNonNull(out));
+
+        data.write(PNG_SIGNATURE);
+        PngChunkOutputStream header = new PngChunkOutputStream("IHDR", data,
+                PNG_HEADER_LENGTH);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(PNG_BIT_DEPTH);
+        headerData.writeByte(PNG_COLOR_TYPE);
+        // deflate compression, adaptive filtering, no interlacing
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        header.close();
+
+        int[] pixels = new int[width];
+        byte[] row = new byte[1 + 4 * width];
+        row[0] = PNG_SUB_FILTER;
+        Deflater deflater = new Deflater();
+        try (DeflaterOutputStream image = new DeflaterOutputStream(
+                new PngChunkOutputStream("IDAT", data, PNG_CHUNK_LENGTH),
+                deflater, PNG_CHUNK_LENGTH)) {
+            for (int y = 0; y < height; ++y) {
+                painter.argbAt(0, y, width, pixels, 0);
+                for (int x = 0; x < width; ++x) {
+                    putInt(row, 1 + 4 * x, pixels[x] << 8 | pixels[x] >>> 24);
+                }
+                // from the end, so that the previous bytes are still raw
+                for (int i = row.length - 1; i > 4; --i) {
+                    row[i] -= row[i - 4];
+                }
+                image.write(row);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        new PngChunkOutputStream("IEND", data, 0).close();
+        data.flush();
+    }
+
+    /**
+     * Write the image of a panorama in the binary PPM format (P6), the
+     * opacity being ignored
+     *
+     * @param panorama
+     *            the panorama
+     * @param painter
+     *            the painter of the image
+     * @param out
+     *            the stream the image is written to
+     * @throws IOException
+     *             if the stream cannot be written
+     * @throws NullPointerException
+     *             if one of the arguments is null
+     */
+    public static void writePpm(Panorama panorama, ArgbPainter painter,
+            OutputStream out) throws IOException {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+        requireNonNull(painter);
+
+        out.write(("P6\n" + width + " " + height + "\n255\n")
+                .getBytes(US_ASCII));
+        int[] pixels = new int[width];
+        byte[] row = new byte[3 * width];
+        for (int y = 0; y < height; ++y) {
+            painter.argbAt(0, y, width, pixels, 0);
+            for (int x = 0; x < width; ++x) {
+                row[3 * x] = (byte) (pixels[x] >>> 16);
+                row[3 * x + 1] = (byte) (pixels[x] >>> 8);
+                row[3 * x + 2] = (byte) pixels[x];
+            }
+            out.write(row);
+        }
+        out.flush();
+    }
+
+    /**
+     * Write the image of a panorama as raw bytes, row by row, each pixel
+     * being given by its red, green, blue and opacity components (not
+     * premultiplied)
+     *
+     * @param panorama
+     *            the panorama
+     * @param painter
+     *            the painter of the image
+     * @param out
+     *            the stream the image is written to
+     * @throws IOException
+     *             if the stream cannot be written
+     * @throws NullPointerException
+     *             if one of the arguments is null
+     */
+    public static void writeRgba(Panorama panorama, ArgbPainter painter,
+            OutputStream out) throws IOException {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+        requireNonNull(painter);
+        requireNonNull(out);
+
+        int[] pixels = new int[width];
+        byte[] row = new byte[4 * width];
+        for (int y = 0; y < height; ++y) {
+            painter.argbAt(0, y, width, pixels, 0);
+            for (int x = 0; x < width; ++x) {
+                putInt(row, 4 * x, pixels[x] << 8 | pixels[x] >>> 24);
+            }
+            out.write(row);
+        }
+        out.flush();
+    }
+
+    private static void putInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >>> 24);
+        bytes[index + 1] = (byte) (value >>> 16);
+        bytes[index + 2] = (byte) (value >>> 8);
+        bytes[index + 3] = (byte) value;
+    }
+
+    // stream writing the bytes written to it in PNG chunks of a type, a new
+    // chunk being started each time the buffer is full
+    private static final class PngChunkOutputStream extends OutputStream {
+        private final byte[] type;
+        private final DataOutputStream out;
+        private final byte[] buffer;
+        private final CRC32 crc = new CRC32();
+        private int length;
+
+        PngChunkOutputStream(String type, DataOutputStream out,
+                int maxLength) {
+            this.type = type.getBytes(US_ASCII);
+            this.out = out;
+            this.buffer = new byte[maxLength];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == buffer.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        // the last chunk is written even if empty, as IEND always is
+        @Override
+        public void close() throws IOException {
+            writeChunk();
+        }
+
+        private void writeChunk() throws IOException {
+            crc.reset();
+            crc.update(type);
+            crc.update(buffer, 0, length);
+            out.writeInt(length);
+            out.write(type);
+            out.write(buffer, 0, length);
+            out.writeInt((int) crc.getValue());
+            length = 0;
+        }
+    }
+}
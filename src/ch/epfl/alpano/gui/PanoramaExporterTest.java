@@ -0,0 +1,123 @@
+package ch.epfl.alpano.gui;
+
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaParameters;
+
+public class PanoramaExporterTest {
+    private static Panorama panorama(int width, int height) {
+        PanoramaParameters ps = new PanoramaParameters(new GeoPoint(0, 0), 1000, toRadians(60), toRadians(60), 100_000, width, height);
+        Panorama.Builder b = new Panorama.Builder(ps);
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
+                if ((x * 7 + y * 3) % 11 != 0) {
+                    b.setDistanceAt(x, y, 1_000 * x + 3_000 * y);
+                }
+                b.setSlopeAt(x, y, 0.01f * x);
+            }
+        }
+        return b.build();
+    }
+
+    private static ArgbPainter hsbPainter(Panorama p) {
+        ChannelPainter dist = ChannelPainter.distance(p);
+        return ArgbPainter.hsb(dist.div(100_000).cycle().mul(360),
+                dist.div(200_000).clamp().invert(),
+                ChannelPainter.slope(p).mul(2).div((float) Math.PI).invert(),
+                dist.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1));
+    }
+
+    // a painter whose colors hardly compress
+    private static ArgbPainter noisePainter() {
+        return (x, y, length, pixels, offset) -> {
+            for (int i = 0; i < length; ++i) {
+                int h = (x + i) * 0x9E3779B1 ^ y * 0x85EBCA6B;
+                pixels[offset + i] = h ^ h >>> 15;
+            }
+        };
+    }
+
+    private static int[] pixels(ArgbPainter painter, int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            painter.argbAt(0, y, width, pixels, y * width);
+        }
+        return pixels;
+    }
+
+    private static void assertPngIsTheImage(Panorama p, ArgbPainter painter) throws IOException {
+        int w = p.parameters().width(), h = p.parameters().height();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PanoramaExporter.writePng(p, painter, out);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(w, image.getWidth());
+        assertEquals(h, image.getHeight());
+        int[] expected = pixels(painter, w, h);
+        for (int y = 0; y < h; ++y) {
+            for (int x = 0; x < w; ++x) {
+                assertEquals(expected[x + y * w], image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void pngIsReadBackIdentical() throws IOException {
+        Panorama p = panorama(31, 17);
+        assertPngIsTheImage(p, hsbPainter(p));
+    }
+
+    @Test
+    public void pngSpanningSeveralChunksIsReadBackIdentical() throws IOException {
+        assertPngIsTheImage(panorama(400, 200), noisePainter());
+    }
+
+    @Test
+    public void ppmHasHeaderAndRgbBytes() throws IOException {
+        Panorama p = panorama(5, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PanoramaExporter.writePpm(p, noisePainter(), out);
+        byte[] bytes = out.toByteArray();
+        byte[] header = "P6\n5 3\n255\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(header.length + 5 * 3 * 3, bytes.length);
+        for (int i = 0; i < header.length; ++i) {
+            assertEquals(header[i], bytes[i]);
+        }
+        int[] expected = pixels(noisePainter(), 5, 3);
+        for (int i = 0; i < expected.length; ++i) {
+            int j = header.length + 3 * i;
+            assertEquals(expected[i] & 0xFFFFFF, (bytes[j] & 0xFF) << 16 | (bytes[j + 1] & 0xFF) << 8 | bytes[j + 2] & 0xFF);
+        }
+    }
+
+    @Test
+    public void rgbaHasOpacityLast() throws IOException {
+        Panorama p = panorama(6, 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PanoramaExporter.writeRgba(p, noisePainter(), out);
+        byte[] bytes = out.toByteArray();
+        int[] expected = pixels(noisePainter(), 6, 4);
+        assertEquals(4 * expected.length, bytes.length);
+        for (int i = 0; i < expected.length; ++i) {
+            int rgba = (bytes[4 * i] & 0xFF) << 24 | (bytes[4 * i + 1] & 0xFF) << 16 | (bytes[4 * i + 2] & 0xFF) << 8 | bytes[4 * i + 3] & 0xFF;
+            assertEquals(expected[i], rgba >>> 8 | rgba << 24);
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void writePngFailsWithNullPainter() throws IOException {
+        PanoramaExporter.writePng(panorama(2, 2), null, new ByteArrayOutputStream());
+    }
+}
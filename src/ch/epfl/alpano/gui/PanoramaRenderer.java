@@ -1,13 +1,16 @@
 package ch.epfl.alpano.gui;
 
+import java.util.stream.IntStream;
+
 import ch.epfl.alpano.Panorama;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 
 /**
- * Tool class to render a panorama in an image
- * 
+ * Tool class to render a panorama in an image. The colors are packed row by
+ * row in an int ARGB buffer, which is written in the image at once
+ *
  * @author Louis Amaudruz (271808)
  * @author Mathieu Chevalley (274698)
  *
@@ -16,7 +19,7 @@ public interface PanoramaRenderer {
 
     /**
      * Render a panorama in an image
-     * 
+     *
      * @param panorama
      *            the panorama to be rendered
      * @param painter
@@ -26,18 +29,60 @@ public interface PanoramaRenderer {
      */
     public static Image renderPanorama(Panorama panorama,
             ImagePainter painter) {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+        int[] pixels = new int[width * height];
 
-        WritableImage image = new WritableImage(panorama.parameters().width(),
-                panorama.parameters().height());
-        PixelWriter writer = image.getPixelWriter();
-
-        // drawing of the image using the painter
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                writer.setColor(x, y, painter.colorAt(x, y));
-            }
+        // drawing of the image using the painter, row by row
+        for (int y = 0; y < height; y++) {
+            painter.argbAt(0, y, width, pixels, y * width);
         }
 
+        return image(width, height, pixels);
+    }
+
+    /**
+     * Render a panorama in an image, the rows being painted in parallel in
+     * the common fork/join pool
+     *
+     * @param panorama
+     *            the panorama to be rendered
+     * @param painter
+     *            the image painter, which must be usable from several
+     *            threads at the same time, as the painters built from
+     *            channel painters are
+     * @return the resulting image, the same as the one given by
+     *         {@link #renderPanorama(Panorama, ImagePainter)}
+     * @see javafx.scene.image#Image
+     */
+    public static Image renderPanoramaInParallel(Panorama panorama,
+            ImagePainter painter) {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+        int[] pixels = new int[width * height];
+
+        IntStream.range(0, height).parallel()
+                .forEach(y -> painter.argbAt(0, y, width, pixels, y * width));
+
+        return image(width, height, pixels);
+    }
+
+    /**
+     * Create an image from its colors
+     *
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @param pixels
+     *            the colors in the int ARGB format, row by row
+     * @return the image
+     * @see Argb
+     */
+    public static Image image(int width, int height, int[] pixels) {
+        WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(), pixels, 0, width);
         return image;
     }
 }
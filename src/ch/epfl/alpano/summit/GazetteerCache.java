@@ -0,0 +1,225 @@
+package ch.epfl.alpano.summit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.epfl.alpano.GeoPoint;
+
+/**
+ * Class used to read and write the binary cache of a file containing summits
+ * (cannot be instantiated). The cache of a file is stored next to it, with
+ * the extension ".bin" added, and is up to date as long as the file keeps
+ * the length and the modification date it had when the cache was written.
+ * <p>
+ * After a header, the cache contains the columns of the summits: their
+ * longitudes and their latitudes (doubles, in radians), their elevations
+ * (ints) and the index of the end of their names (ints) in the table of
+ * names (UTF-8) which follows. It is read by mapping it in memory
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see GazetteerParser
+ */
+public final class GazetteerCache {
+
+    private static final String EXTENSION = ".bin";
+    // "ALPG"
+    private static final int MAGIC = 0x414C5047;
+    private static final int VERSION = 1;
+    // magic, version, source length and date, number of summits and length
+    // of the table of names
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 8 + 4 + 4;
+
+    // private builder, this class cannot be instantiated
+    private GazetteerCache() {
+    }
+
+    /**
+     * The file of the cache of a file containing summits
+     *
+     * @param source
+     *            the file containing the summits
+     * @return the file of the cache, which may not exist
+     */
+    public static File cacheFileOf(File source) {
+        return new File(source.getPath() + EXTENSION);
+    }
+
+    /**
+     * Tells if the cache of a file containing summits exists and was written
+     * for its current version
+     *
+     * @param source
+     *            the file containing the summits
+     * @return true if the cache is up to date
+     */
+    public static boolean isUpToDate(File source) {
+        File cache = cacheFileOf(source);
+        if (!source.isFile() || !cache.isFile()) {
+            return false;
+        }
+
+        try (FileInputStream in = new FileInputStream(cache)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining()
+                    && in.getChannel().read(header) >= 0) {
+            }
+            header.flip();
+            return header.remaining() == HEADER_LENGTH
+                    && header.getInt() == MAGIC && header.getInt() == VERSION
+                    && header.getLong() == source.length()
+                    && header.getLong() == source.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the summits from the cache of a file, without checking that it is
+     * up to date
+     *
+     * @param source
+     *            the file containing the summits
+     * @return the list of the summits, in the order of the file
+     * @throws IOException
+     *             if the cache is unreadable or is not a cache of summits
+     */
+    public static List<Summit> read(File source) throws IOException {
+        File cache = cacheFileOf(source);
+        try (FileInputStream in = new FileInputStream(cache)) {
+            ByteBuffer buffer = in.getChannel().map(MapMode.READ_ONLY, 0,
+                    in.getChannel().size());
+            return summitsOf(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                | IndexOutOfBoundsException e) {
+            throw new IOException("invalid cache " + cache, e);
+        }
+    }
+
+    private static List<Summit> summitsOf(ByteBuffer buffer)
+            throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a cache of summits");
+        }
+        // the source length and date
+        buffer.getLong();
+        buffer.getLong();
+        int count = buffer.getInt();
+        int namesLength = buffer.getInt();
+
+        int longitudes = HEADER_LENGTH;
+        int latitudes = longitudes + 8 * count;
+        int elevations = latitudes + 8 * count;
+        int nameEnds = elevations + 4 * count;
+        int names = nameEnds + 4 * count;
+        if (count < 0 || namesLength < 0
+                || buffer.limit() != names + namesLength) {
+            throw new IOException("truncated cache");
+        }
+
+        byte[] nameBytes = new byte[namesLength];
+        buffer.position(names);
+        buffer.get(nameBytes);
+
+        List<Summit> summits = new ArrayList<>(count);
+        int nameStart = 0;
+        for (int i = 0; i < count; ++i) {
+            int nameEnd = buffer.getInt(nameEnds + 4 * i);
+            GeoPoint position = new GeoPoint(
+                    buffer.getDouble(longitudes + 8 * i),
+                    buffer.getDouble(latitudes + 8 * i));
+            summits.add(new Summit(
+                    new String(nameBytes, nameStart, nameEnd - nameStart,
+                            UTF_8),
+                    position, buffer.getInt(elevations + 4 * i)));
+            nameStart = nameEnd;
+        }
+        return Collections.unmodifiableList(summits);
+    }
+
+    /**
+     * Writes the cache of a file containing summits, for its current version.
+     * The cache is first written in a temporary file, which then replaces it,
+     * so that it is never read partially written
+     *
+     * @param source
+     *            the file containing the summits
+     * @param summits
+     *            the summits of the file
+     * @throws IOException
+     *             if the cache cannot be written
+     */
+    public static void write(File source, List<Summit> summits)
+            throws IOException {
+        File cache = cacheFileOf(source);
+        long length = source.length();
+        long lastModified = source.lastModified();
+
+        List<byte[]> names = new ArrayList<>(summits.size());
+        int namesLength = 0;
+        for (Summit s : summits) {
+            byte[] name = s.name().getBytes(UTF_8);
+            names.add(name);
+            namesLength += name.length;
+        }
+
+        File temporary = File.createTempFile(cache.getName(), null,
+                cache.getAbsoluteFile().getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                out.writeInt(summits.size());
+                out.writeInt(namesLength);
+                for (Summit s : summits) {
+                    out.writeDouble(s.position().longitude());
+                }
+                for (Summit s : summits) {
+                    out.writeDouble(s.position().latitude());
+                }
+                for (Summit s : summits) {
+                    out.writeInt(s.elevation());
+                }
+                int nameEnd = 0;
+                for (byte[] name : names) {
+                    nameEnd += name.length;
+                    out.writeInt(nameEnd);
+                }
+                for (byte[] name : names) {
+                    out.write(name);
+                }
+            }
+
+            try {
+                Files.move(temporary.toPath(), cache.toPath(),
+                        REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), cache.toPath(),
+                        REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ch.epfl.alpano.summit;
+
+import static ch.epfl.alpano.summit.GazetteerParser.readSummitsFrom;
+import static java.lang.Math.toRadians;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+
+public class GazetteerCacheTest {
+    private static final String MOLESON = "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON";
+    private static final String CURT = "  7:25:12 45:08:25  1325  R0 E07 BA MONTE CURT";
+
+    private static File tempFileWithLines(String... lines) throws IOException {
+        File f = Files.createTempFile("summits", ".txt").toFile();
+        f.deleteOnExit();
+        GazetteerCache.cacheFileOf(f).deleteOnExit();
+        Files.write(f.toPath(), Arrays.asList(lines), US_ASCII);
+        return f;
+    }
+
+    private static void assertSameSummits(List<Summit> expected, List<Summit> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            Summit e = expected.get(i), a = actual.get(i);
+            assertEquals(e.name(), a.name());
+            assertEquals(e.elevation(), a.elevation());
+            assertEquals(Double.doubleToRawLongBits(e.position().longitude()),
+                    Double.doubleToRawLongBits(a.position().longitude()));
+            assertEquals(Double.doubleToRawLongBits(e.position().latitude()),
+                    Double.doubleToRawLongBits(a.position().latitude()));
+        }
+    }
+
+    @Test
+    public void writtenCacheIsReadBackIdentical() throws IOException {
+        File f = tempFileWithLines(MOLESON);
+        List<Summit> summits = Arrays.asList(
+                new Summit("LE MOLÉSON", new GeoPoint(toRadians(7.0172), toRadians(46.5489)), 2002),
+                new Summit("", new GeoPoint(-0.1, 0.7), -12),
+                new Summit("MONTE CURT", new GeoPoint(Math.nextUp(0.0), 1e-300), 1325));
+        GazetteerCache.write(f, summits);
+        assertTrue(GazetteerCache.isUpToDate(f));
+        assertSameSummits(summits, GazetteerCache.read(f));
+    }
+
+    @Test
+    public void emptyCacheIsReadBackEmpty() throws IOException {
+        File f = tempFileWithLines();
+        GazetteerCache.write(f, new ArrayList<>());
+        assertTrue(GazetteerCache.read(f).isEmpty());
+    }
+
+    @Test
+    public void parserWritesTheCacheOfTheFile() throws IOException {
+        File f = tempFileWithLines(MOLESON, CURT);
+        List<Summit> parsed = readSummitsFrom(f);
+        assertTrue(GazetteerCache.isUpToDate(f));
+        assertSameSummits(parsed, GazetteerCache.read(f));
+        assertSameSummits(parsed, readSummitsFrom(f));
+    }
+
+    @Test
+    public void parserPrefersTheCacheWhenUpToDate() throws IOException {
+        File f = tempFileWithLines(MOLESON);
+        List<Summit> cached = Arrays.asList(new Summit("CACHED", new GeoPoint(0.1, 0.8), 1));
+        GazetteerCache.write(f, cached);
+        assertSameSummits(cached, readSummitsFrom(f));
+    }
+
+    @Test
+    public void parserIgnoresAStaleCache() throws IOException {
+        File f = tempFileWithLines(MOLESON);
+        readSummitsFrom(f);
+        Files.write(f.toPath(), Arrays.asList(MOLESON, CURT), US_ASCII);
+        assertFalse(GazetteerCache.isUpToDate(f));
+        List<Summit> summits = readSummitsFrom(f);
+        assertEquals(2, summits.size());
+        assertEquals("MONTE CURT", summits.get(1).name());
+        assertTrue(GazetteerCache.isUpToDate(f));
+    }
+
+    @Test
+    public void parserIgnoresATruncatedCache() throws IOException {
+        File f = tempFileWithLines(MOLESON, CURT);
+        List<Summit> parsed = readSummitsFrom(f);
+        try (RandomAccessFile cache = new RandomAccessFile(GazetteerCache.cacheFileOf(f), "rw")) {
+            cache.setLength(cache.length() - 3);
+        }
+        assertTrue(GazetteerCache.isUpToDate(f));
+        assertSameSummits(parsed, readSummitsFrom(f));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsOnAFileWhichIsNotACache() throws IOException {
+        File f = tempFileWithLines(MOLESON);
+        Files.write(GazetteerCache.cacheFileOf(f).toPath(), MOLESON.getBytes(US_ASCII));
+        GazetteerCache.read(f);
+    }
+
+    @Test
+    public void cacheOfAMissingFileIsNotUpToDate() {
+        assertFalse(GazetteerCache.isUpToDate(new File("/   /d:/ééé")));
+    }
+}
@@ -1,100 +1,390 @@
 package ch.epfl.alpano.summit;
 
-import java.io.BufferedReader;
-import static ch.epfl.alpano.Preconditions.*;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import static java.lang.Integer.parseInt;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import ch.epfl.alpano.GeoPoint;
 
 /**
  * Class used to read a file containing summits (cannot be instantiate)
- * 
+ * <p>
+ * The file is read in a buffer of bytes, from which the fields of the lines
+ * are decoded directly, only the names of the summits being decoded as
+ * strings. A line which is wrongly formatted is reported by its number and
+ * its field
+ *
  * @author Mathieu Chevalley (274698)
  * @author Louis Amaudruz (271808)
  */
 public class GazetteerParser {
 
+    // the columns of the fields of a line, the name ending with the line
+    private static final int LONGITUDE_START = 0;
+    private static final int LONGITUDE_END = 9;
+    private static final int LATITUDE_START = 10;
+    private static final int LATITUDE_END = 18;
+    private static final int ELEVATION_START = 20;
+    private static final int ELEVATION_END = 24;
+    private static final int NAME_START = 36;
+
     // private builder, this class cannot be instantiated
     private GazetteerParser() {
     }
 
     /**
-     * Reads the summits from a file
-     * 
+     * Reads the summits from a file, from its binary cache if it is up to
+     * date. Otherwise the file is parsed and its cache is written, if
+     * possible
+     *
      * @param file
      *            file containing the summits
      * @return a list of summit
      * @throws IOException
      *             if input is wrongly formatted or unreadable
+     * @see GazetteerCache
      */
     public static List<Summit> readSummitsFrom(File file) throws IOException {
+        if (GazetteerCache.isUpToDate(file)) {
+            try {
+                return GazetteerCache.read(file);
+            } catch (IOException e) {
+                // the file is parsed again
+            }
+        }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-                new FileInputStream(file), StandardCharsets.US_ASCII))) {
+        // the cache is not written if the file changed while parsed
+        long length = file.length();
+        long lastModified = file.lastModified();
+        List<Summit> summits = new ArrayList<>();
+        forEachSummit(file, p -> true, summits::add);
+        summits = Collections.unmodifiableList(summits);
+        if (file.length() == length && file.lastModified() == lastModified) {
+            try {
+                GazetteerCache.write(file, summits);
+            } catch (IOException e) {
+                // the cache is only an optimization
+            }
+        }
+        return summits;
+    }
 
-            List<Summit> summits = new ArrayList<>();
+    /**
+     * Parses a file containing summits, giving the summits of a region to an
+     * action as they are read. The name of a summit out of the region is not
+     * decoded
+     *
+     * @param file
+     *            file containing the summits
+     * @param region
+     *            the test of the positions of the summits to keep
+     * @param action
+     *            the action given the summits of the region, in the order of
+     *            the file
+     * @throws IOException
+     *             if input is wrongly formatted or unreadable, the summits
+     *             of the lines before the wrong one having been given
+     * @throws NullPointerException
+     *             if one of the arguments is null
+     */
+    public static void forEachSummit(File file,
+            Predicate<? super GeoPoint> region,
+            Consumer<? super Summit> action) throws IOException {
+        requireNonNull(region);
+        requireNonNull(action);
+        try (SummitReader reader = new SummitReader(file)) {
+            Summit summit;
+            while ((summit = reader.next(region)) != null) {
+                action.accept(summit);
+            }
+        }
+    }
 
-            String line = "";
-            // read a line
-            while ((line = reader.readLine()) != null) {
-                summits.add(readSummitLine(line));
+    /**
+     * Parses a file containing summits lazily, as a stream of the summits of
+     * a region. The stream must be closed to close the file
+     *
+     * @param file
+     *            file containing the summits
+     * @param region
+     *            the test of the positions of the summits to keep
+     * @return the stream of the summits of the region, in the order of the
+     *         file, which throws an {@link UncheckedIOException} if input is
+     *         wrongly formatted or unreadable
+     * @throws IOException
+     *             if the file cannot be opened
+     * @throws NullPointerException
+     *             if one of the arguments is null
+     */
+    public static Stream<Summit> summitsOf(File file,
+            Predicate<? super GeoPoint> region) throws IOException {
+        requireNonNull(region);
+        SummitReader reader = new SummitReader(file);
+        Spliterator<Summit> summits = new Spliterators.AbstractSpliterator<Summit>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Summit> action) {
+                try {
+                    Summit summit = reader.next(region);
+                    if (summit == null) {
+                        return false;
+                    }
+                    action.accept(summit);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
             }
+        };
 
-            return Collections.unmodifiableList(summits);
-        }
+        return StreamSupport.stream(summits, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
-    // extract a summit given a line
-    private static Summit readSummitLine(String line) throws IOException {
+    // Convert an angle in degree, minute and second to radian
+    private static double toRadians(double degrees, double minutes,
+            double seconds) {
+        assert (degrees >= 0 && minutes >= 0 && seconds >= 0);
+        double degree = degrees + minutes / 60 + seconds / 3600;
+
+        return Math.toRadians(degree);
+    }
+
+    // reader of the summits of a file, line by line, the lines ending with
+    // "\n", "\r" or "\r\n"
+    private static final class SummitReader implements Closeable {
+        private static final int BUFFER_LENGTH = 1 << 16;
+        // an int has at most 9 digits without overflowing
+        private static final int MAX_DIGITS = 9;
+
+        private final InputStream in;
+        private byte[] buffer = new byte[BUFFER_LENGTH];
+        // the bytes read but not parsed yet are in [start, end[
+        private int start;
+        private int end;
+        private boolean endOfFile;
+        // the last line ended with "\r", which may be followed by "\n"
+        private boolean skipLineFeed;
+
+        // the current line, and the next column of it to decode
+        private int lineNumber;
+        private int lineStart;
+        private int lineEnd;
+        private int cursor;
+
+        SummitReader(File file) throws IOException {
+            in = new FileInputStream(file);
+        }
+
+        // the next summit of the region, or null at the end of the file
+        Summit next(Predicate<? super GeoPoint> region) throws IOException {
+            while (nextLine()) {
+                Summit summit = summitOfLine(region);
+                if (summit != null) {
+                    return summit;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
 
-        try {
+        private boolean nextLine() throws IOException {
+            if (skipLineFeed) {
+                if (start == end) {
+                    fill();
+                }
+                if (start < end && buffer[start] == '\n') {
+                    ++start;
+                }
+                skipLineFeed = false;
+            }
 
-            checkArgument(!line.isEmpty() && line.length() > 36);
+            int i = start;
+            while (true) {
+                while (i < end && buffer[i] != '\n' && buffer[i] != '\r') {
+                    ++i;
+                }
+                if (i < end) {
+                    skipLineFeed = buffer[i] == '\r';
+                    startLine(i, i + 1);
+                    return true;
+                }
+                if (endOfFile) {
+                    if (start == end) {
+                        return false;
+                    }
+                    startLine(end, end);
+                    return true;
+                }
+                // the buffer is compacted by fill
+                i -= start;
+                fill();
+                i += start;
+            }
+        }
 
-            // Longitude
-            String longitude = line.substring(0, 9).trim();
-            String[] hms = longitude.split(":");
-            double longi = toRadians(parseInt(hms[0]), parseInt(hms[1]),
-                    parseInt(hms[2]));
+        private void startLine(int end, int next) {
+            ++lineNumber;
+            lineStart = start;
+            lineEnd = end;
+            start = next;
+        }
 
-            // Latitude
-            String latitude = line.substring(10, 18).trim();
-            hms = latitude.split(":");
-            double lati = toRadians(parseInt(hms[0]), parseInt(hms[1]),
-                    parseInt(hms[2]));
+        // moves the bytes not parsed to the start of the buffer, grown if
+        // full, and reads the following bytes after them
+        private void fill() throws IOException {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+            if (end == buffer.length) {
+                byte[] grown = new byte[2 * buffer.length];
+                System.arraycopy(buffer, 0, grown, 0, end);
+                buffer = grown;
+            }
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                end += read;
+            }
+        }
 
-            // Position using the latitude and longitude
-            GeoPoint position = new GeoPoint(longi, lati);
+        // the summit of the current line, or null if out of the region
+        private Summit summitOfLine(Predicate<? super GeoPoint> region)
+                throws IOException {
+            int length = lineEnd - lineStart;
+            if (length <= NAME_START) {
+                throw error("line too short (" + length + " characters)");
+            }
 
-            // elevation
-            int elevation = parseInt(line.substring(20, 24).trim());
+            double longitude = angle(LONGITUDE_START, LONGITUDE_END,
+                    "longitude");
+            double latitude = angle(LATITUDE_START, LATITUDE_END, "latitude");
+            int elevation = elevation(ELEVATION_START, ELEVATION_END);
 
-            // Name of the summit
-            String name = line.substring(36).trim();
+            GeoPoint position;
+            try {
+                position = new GeoPoint(longitude, latitude);
+            } catch (IllegalArgumentException e) {
+                throw error("invalid position \""
+                        + field(LONGITUDE_START, LATITUDE_END) + "\"");
+            }
+            if (!region.test(position)) {
+                return null;
+            }
 
+            int nameStart = trimmedStart(NAME_START, length);
+            int nameEnd = trimmedEnd(nameStart, length);
+            String name = new String(buffer, lineStart + nameStart,
+                    nameEnd - nameStart, US_ASCII);
             return new Summit(name, position, elevation);
-        } catch (Exception e) {
-            // if exception, file is wrongly formatted
-            throw new IOException("wrongly formatted");
         }
 
-    }
+        // an angle written "degrees:minutes:seconds" in the given columns
+        private double angle(int from, int to, String field)
+                throws IOException {
+            cursor = trimmedStart(from, to);
+            int fieldEnd = trimmedEnd(cursor, to);
+            int degrees = digits(fieldEnd);
+            boolean valid = degrees >= 0 && separator(fieldEnd);
+            int minutes = valid ? digits(fieldEnd) : -1;
+            valid = minutes >= 0 && separator(fieldEnd);
+            int seconds = valid ? digits(fieldEnd) : -1;
+            if (seconds < 0 || cursor != fieldEnd) {
+                throw error("invalid " + field + " \"" + field(from, to)
+                        + "\"");
+            }
+            return toRadians(degrees, minutes, seconds);
+        }
 
-    // Convert an angle in degree, minute and second to radian
-    private static double toRadians(double degrees, double minutes,
-            double seconds) {
-        assert (degrees >= 0 && minutes >= 0 && seconds >= 0);
-        double degree = degrees + minutes / 60 + seconds / 3600;
+        // an integer, which may be negative, in the given columns
+        private int elevation(int from, int to) throws IOException {
+            cursor = trimmedStart(from, to);
+            int fieldEnd = trimmedEnd(cursor, to);
+            boolean negative = cursor < fieldEnd
+                    && buffer[lineStart + cursor] == '-';
+            if (negative) {
+                ++cursor;
+            }
+            int elevation = digits(fieldEnd);
+            if (elevation < 0 || cursor != fieldEnd) {
+                throw error("invalid elevation \"" + field(from, to) + "\"");
+            }
+            return negative ? -elevation : elevation;
+        }
 
-        return Math.toRadians(degree);
-    }
+        // the value of the digits at the cursor, at least one, or -1
+        private int digits(int fieldEnd) {
+            int value = 0;
+            int from = cursor;
+            while (cursor < fieldEnd && cursor - from < MAX_DIGITS) {
+                int digit = buffer[lineStart + cursor] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = 10 * value + digit;
+                ++cursor;
+            }
+            return cursor == from ? -1 : value;
+        }
 
+        private boolean separator(int fieldEnd) {
+            if (cursor < fieldEnd && buffer[lineStart + cursor] == ':') {
+                ++cursor;
+                return true;
+            }
+            return false;
+        }
+
+        // the bounds of the columns [from, to[ without the spaces and the
+        // control characters on both sides, as String.trim
+        private int trimmedStart(int from, int to) {
+            while (from < to && (buffer[lineStart + from] & 0xFF) <= ' ') {
+                ++from;
+            }
+            return from;
+        }
+
+        private int trimmedEnd(int from, int to) {
+            while (to > from && (buffer[lineStart + to - 1] & 0xFF) <= ' ') {
+                --to;
+            }
+            return to;
+        }
+
+        private String field(int from, int to) {
+            int fieldStart = trimmedStart(from, to);
+            int fieldEnd = trimmedEnd(fieldStart, to);
+            return new String(buffer, lineStart + fieldStart,
+                    fieldEnd - fieldStart, US_ASCII);
+        }
+
+        private IOException error(String message) {
+            return new IOException("line " + lineNumber + ": " + message);
+        }
+    }
 }
@@ -5,18 +5,23 @@ import static java.lang.Math.toDegrees;
 import static java.lang.Math.toRadians;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 
@@ -91,6 +96,102 @@ public class GazetteerParserTest {
         }
     }
 
+    @Test
+    public void parserGivesTheExactAngles() throws IOException {
+        List<Summit> summits = readSummitsFrom(tempFileWithLines(
+                "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON"));
+        assertEquals(hmsToRad(7, 1, 2), summits.get(0).position().longitude(), 0);
+        assertEquals(hmsToRad(46, 32, 56), summits.get(0).position().latitude(), 0);
+        assertEquals(2002, summits.get(0).elevation());
+        assertEquals("LE MOLESON", summits.get(0).name());
+    }
+
+    @Test
+    public void parserAcceptsAllLineSeparators() throws IOException {
+        String a = "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON";
+        String b = "  7:25:12 45:08:25  1325  R0 E07 BA MONTE CURT";
+        for (String text : Arrays.asList(a + "\n" + b, a + "\r\n" + b + "\r\n", a + "\r" + b + "\r")) {
+            List<Summit> summits = readSummitsFrom(tempFileWithText(text));
+            assertEquals(2, summits.size());
+            assertEquals("LE MOLESON", summits.get(0).name());
+            assertEquals("MONTE CURT", summits.get(1).name());
+        }
+    }
+
+    @Test
+    public void parserReadsLinesLongerThanItsBuffer() throws IOException {
+        StringBuilder name = new StringBuilder();
+        while (name.length() < 200_000) {
+            name.append("PIZ ");
+        }
+        String l = "  7:01:02 46:32:56  2002  H1 B01 D7 " + name.toString().trim();
+        List<Summit> summits = readSummitsFrom(tempFileWithLines(l, l));
+        assertEquals(2, summits.size());
+        assertEquals(name.toString().trim(), summits.get(1).name());
+    }
+
+    @Test
+    public void parserErrorGivesTheLineAndTheField() throws IOException {
+        String valid = "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON";
+        assertErrorMessage("line 2: invalid longitude \"7:25:1x\"",
+                valid, "  7:25:1x 45:08:25  1325  R0 E07 BA MONTE CURT");
+        assertErrorMessage("line 3: invalid latitude \"45:08\"",
+                valid, valid, "  7:25:12 45:08     1325  R0 E07 BA MONTE CURT");
+        assertErrorMessage("line 1: invalid elevation \"leet\"",
+                "  7:25:12 45:08:25  leet  R0 E07 BA MONTE CURT");
+        assertErrorMessage("line 2: line too short (6 characters)", valid, "blabla");
+        assertErrorMessage("line 1: invalid position \"7:25:12 95:08:25\"",
+                "  7:25:12 95:08:25  1325  R0 E07 BA MONTE CURT");
+    }
+
+    private static void assertErrorMessage(String message, String... lines) throws IOException {
+        try {
+            readSummitsFrom(tempFileWithLines(lines));
+            fail();
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void forEachSummitGivesOnlyTheSummitsOfTheRegion() throws IOException {
+        File f = tempFileWithLines(
+                "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON",
+                "  7:25:12 45:08:25  1325  R0 E07 BA MONTE CURT",
+                "  7:39:27 45:58:35  4476  H1 C03 D1 MATTERHORN");
+        List<String> names = new ArrayList<>();
+        GazetteerParser.forEachSummit(f, p -> p.latitude() > toRadians(45.5), s -> names.add(s.name()));
+        assertEquals(Arrays.asList("LE MOLESON", "MATTERHORN"), names);
+    }
+
+    @Test
+    public void summitsOfIsTheStreamOfTheSummitsOfTheRegion() throws IOException {
+        File f = tempFileWithLines(
+                "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON",
+                "  7:25:12 45:08:25  1325  R0 E07 BA MONTE CURT",
+                "  7:39:27 45:58:35  4476  H1 C03 D1 MATTERHORN");
+        try (Stream<Summit> summits = GazetteerParser.summitsOf(f, p -> p.longitude() > toRadians(7.1))) {
+            assertEquals(Arrays.asList("MONTE CURT", "MATTERHORN"),
+                    summits.map(Summit::name).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void summitsOfIsLazy() throws IOException {
+        File f = tempFileWithLines(
+                "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON",
+                "blabla");
+        try (Stream<Summit> summits = GazetteerParser.summitsOf(f, p -> true)) {
+            assertEquals("LE MOLESON", summits.findFirst().get().name());
+        }
+        try (Stream<Summit> summits = GazetteerParser.summitsOf(f, p -> true)) {
+            summits.count();
+            fail();
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause().getMessage().startsWith("line 2:"));
+        }
+    }
+
     private String formatSummit(Summit s) {
         double lon = s.position().longitude();
         double lat = s.position().latitude();
@@ -123,6 +224,7 @@ public class GazetteerParserTest {
     private static File tempFileWithLines(String... lines) throws IOException {
         File f = Files.createTempFile("summits", ".txt").toFile();
         f.deleteOnExit();
+        GazetteerCache.cacheFileOf(f).deleteOnExit();
         try (BufferedWriter b = new BufferedWriter(
                 new OutputStreamWriter(
                         new FileOutputStream(f), US_ASCII))) {
@@ -133,4 +235,12 @@ public class GazetteerParserTest {
         }
         return f;
     }
+
+    private static File tempFileWithText(String text) throws IOException {
+        File f = Files.createTempFile("summits", ".txt").toFile();
+        f.deleteOnExit();
+        GazetteerCache.cacheFileOf(f).deleteOnExit();
+        Files.write(f.toPath(), text.getBytes(US_ASCII));
+        return f;
+    }
 }
@@ -0,0 +1,254 @@
+package ch.epfl.alpano.summit;
+
+import static ch.epfl.alpano.Azimuth.canonicalize;
+import static ch.epfl.alpano.Azimuth.fromMath;
+import static ch.epfl.alpano.Math2.angularDistance;
+import static ch.epfl.alpano.Math2.haversin;
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.asin;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ch.epfl.alpano.Distance;
+import ch.epfl.alpano.GeoPoint;
+
+/**
+ * Class that represents a spatial index of summits (immutable), which gives
+ * the summits seen from a point in a sector of azimuths and within a maximal
+ * distance without examining all the summits. The summits are stored in the
+ * cells of a grid of longitudes and latitudes, only the cells which may
+ * intersect the sector being examined
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+public final class SummitIndex {
+
+    // a quarter of a degree, about 28 km along a meridian
+    private static final double CELL_SIZE = toRadians(0.25);
+    // margin of the tests on the cells, for the rounding errors
+    private static final double EPSILON = 1e-9;
+
+    private final List<Summit> summits;
+    private final double fromLongitude;
+    private final double fromLatitude;
+    private final int columns;
+    private final int rows;
+    // the indexes of the summits of the cell i are at the indexes
+    // [cellStarts[i], cellStarts[i + 1][ of cellSummits, in increasing order
+    private final int[] cellStarts;
+    private final int[] cellSummits;
+
+    /**
+     * Construct the index of a list of summits
+     *
+     * @param summits
+     *            the summits
+     * @throws NullPointerException
+     *             if the list or one of its summits is null
+     */
+    public SummitIndex(List<Summit> summits) {
+        this.summits = Collections
+                .unmodifiableList(new ArrayList<>(requireNonNull(summits)));
+
+        double minLon = PI, minLat = PI / 2;
+        double maxLon = -PI, maxLat = -PI / 2;
+        for (Summit s : this.summits) {
+            GeoPoint p = s.position();
+            minLon = min(minLon, p.longitude());
+            maxLon = max(maxLon, p.longitude());
+            minLat = min(minLat, p.latitude());
+            maxLat = max(maxLat, p.latitude());
+        }
+
+        fromLongitude = minLon;
+        fromLatitude = minLat;
+        columns = this.summits.isEmpty() ? 0
+                : (int) floor((maxLon - minLon) / CELL_SIZE) + 1;
+        rows = this.summits.isEmpty() ? 0
+                : (int) floor((maxLat - minLat) / CELL_SIZE) + 1;
+
+        // counting sort of the summits by cell, which keeps their order
+        int[] cells = new int[this.summits.size()];
+        cellStarts = new int[columns * rows + 1];
+        for (int i = 0; i < cells.length; ++i) {
+            cells[i] = cellOf(this.summits.get(i).position());
+            ++cellStarts[cells[i] + 1];
+        }
+        for (int i = 1; i < cellStarts.length; ++i) {
+            cellStarts[i] += cellStarts[i - 1];
+        }
+        cellSummits = new int[cells.length];
+        int[] next = Arrays.copyOf(cellStarts, cellStarts.length - 1);
+        for (int i = 0; i < cells.length; ++i) {
+            cellSummits[next[cells[i]]++] = i;
+        }
+    }
+
+    /**
+     * The summits of the index
+     *
+     * @return the summits, in the order of the list given at construction
+     */
+    public List<Summit> summits() {
+        return summits;
+    }
+
+    /**
+     * Give the summits seen from a point in a sector of azimuths, at most at
+     * a given distance of it. Their distance and azimuth are computed by
+     * {@link GeoPoint#distanceTo(GeoPoint)} and
+     * {@link GeoPoint#azimuthTo(GeoPoint)}
+     *
+     * @param observer
+     *            the point
+     * @param maxDistance
+     *            the maximal distance, in meters
+     * @param centerAzimuth
+     *            the azimuth of the center of the sector
+     * @param halfAngle
+     *            the half of the angle of the sector, greater or equal to
+     *            <code>PI</code> for all the azimuths
+     * @return the summits of the sector, in the order of the list given at
+     *         construction
+     * @throws NullPointerException
+     *             if the point is null
+     * @throws IllegalArgumentException
+     *             if the distance or the angle is negative
+     */
+    public List<Summit> summitsInSector(GeoPoint observer, double maxDistance,
+            double centerAzimuth, double halfAngle) {
+        requireNonNull(observer);
+        checkArgument(maxDistance >= 0 && halfAngle >= 0);
+
+        double radius = Distance.toRadians(maxDistance);
+        double lon = observer.longitude();
+        double lat = observer.latitude();
+
+        // the latitudes of the circle, and its half width in longitude, which
+        // is the whole circle if it contains a pole
+        int fromRow = max(0, row(lat - radius));
+        int toRow = min(rows - 1, row(lat + radius));
+        double halfWidth = radius + abs(lat) >= PI / 2 ? PI
+                : min(PI, asin(min(1, sin(radius) / cos(lat))) + EPSILON);
+
+        List<Integer> found = new ArrayList<>();
+        for (int shift = -1; shift <= 1; ++shift) {
+            // the longitudes are shifted by a turn on both sides, for the
+            // circles crossing the antimeridian
+            double shiftedLon = lon + shift * 2 * PI;
+            int fromColumn = max(0, column(shiftedLon - halfWidth));
+            int toColumn = min(columns - 1, column(shiftedLon + halfWidth));
+            if (halfWidth == PI) {
+                if (shift != 0) {
+                    continue;
+                }
+                fromColumn = 0;
+                toColumn = columns - 1;
+            }
+            for (int row = fromRow; row <= toRow; ++row) {
+                for (int column = fromColumn; column <= toColumn; ++column) {
+                    int cell = row * columns + column;
+                    if (cellStarts[cell] < cellStarts[cell + 1]
+                            && mayIntersect(row, column, lon, lat, radius,
+                                    centerAzimuth, halfAngle)) {
+                        addSummitsInSector(cell, observer, maxDistance,
+                                centerAzimuth, halfAngle, found);
+                    }
+                }
+            }
+        }
+
+        // a cell may be examined for two shifts
+        Collections.sort(found);
+        List<Summit> inSector = new ArrayList<>(found.size());
+        int previous = -1;
+        for (int i : found) {
+            if (i != previous) {
+                inSector.add(summits.get(i));
+                previous = i;
+            }
+        }
+        return inSector;
+    }
+
+    private void addSummitsInSector(int cell, GeoPoint observer,
+            double maxDistance, double centerAzimuth, double halfAngle,
+            List<Integer> found) {
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; ++i) {
+            GeoPoint p = summits.get(cellSummits[i]).position();
+            if (observer.distanceTo(p) <= maxDistance && abs(angularDistance(
+                    centerAzimuth, observer.azimuthTo(p))) <= halfAngle) {
+                found.add(cellSummits[i]);
+            }
+        }
+    }
+
+    // tells if a cell may contain points of the sector: its points are at
+    // most at the angle of its farthest corner from its center, so they are
+    // seen from the observer within an angle of the azimuth of its center
+    private boolean mayIntersect(int row, int column, double lon, double lat,
+            double radius, double centerAzimuth, double halfAngle) {
+        double fromLon = fromLongitude + column * CELL_SIZE;
+        double fromLat = fromLatitude + row * CELL_SIZE;
+        double centerLon = fromLon + CELL_SIZE / 2;
+        double centerLat = fromLat + CELL_SIZE / 2;
+
+        double cellRadius = 0;
+        for (int corner = 0; corner < 4; ++corner) {
+            cellRadius = max(cellRadius, angle(centerLon, centerLat,
+                    fromLon + (corner & 1) * CELL_SIZE,
+                    fromLat + (corner >> 1) * CELL_SIZE));
+        }
+        cellRadius += EPSILON;
+
+        double distance = angle(lon, lat, centerLon, centerLat);
+        if (distance - cellRadius > radius) {
+            return false;
+        }
+        if (halfAngle >= PI || distance <= cellRadius
+                || distance + cellRadius >= PI / 2) {
+            return true;
+        }
+
+        double azimuth = fromMath(canonicalize(atan2(
+                sin(lon - centerLon) * cos(centerLat), cos(lat) * sin(centerLat)
+                        - sin(lat) * cos(centerLat) * cos(lon - centerLon))));
+        double spread = asin(sin(cellRadius) / sin(distance)) + EPSILON;
+        return abs(angularDistance(centerAzimuth, azimuth)) <= halfAngle
+                + spread;
+    }
+
+    // the angle between two points, as in GeoPoint
+    private static double angle(double lon1, double lat1, double lon2,
+            double lat2) {
+        return 2 * asin(sqrt(haversin(lat1 - lat2)
+                + cos(lat1) * cos(lat2) * haversin(lon1 - lon2)));
+    }
+
+    private int cellOf(GeoPoint p) {
+        return row(p.latitude()) * columns + column(p.longitude());
+    }
+
+    private int column(double longitude) {
+        return (int) floor((longitude - fromLongitude) / CELL_SIZE);
+    }
+
+    private int row(double latitude) {
+        return (int) floor((latitude - fromLatitude) / CELL_SIZE);
+    }
+}
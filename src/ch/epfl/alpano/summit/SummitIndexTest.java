@@ -0,0 +1,101 @@
+package ch.epfl.alpano.summit;
+
+import static ch.epfl.alpano.Math2.angularDistance;
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+
+public class SummitIndexTest {
+    private static List<Summit> randomSummits(Random rng, int n, double lonFrom, double lonTo, double latFrom, double latTo) {
+        List<Summit> summits = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            double lon = lonFrom + rng.nextDouble() * (lonTo - lonFrom);
+            double lat = latFrom + rng.nextDouble() * (latTo - latFrom);
+            summits.add(new Summit("S" + i, new GeoPoint(lon, lat), rng.nextInt(4000)));
+        }
+        return summits;
+    }
+
+    private static List<Summit> bruteForce(List<Summit> summits, GeoPoint o, double maxDistance, double azimuth, double halfAngle) {
+        List<Summit> inSector = new ArrayList<>();
+        for (Summit s : summits) {
+            if (o.distanceTo(s.position()) <= maxDistance
+                    && abs(angularDistance(azimuth, o.azimuthTo(s.position()))) <= halfAngle) {
+                inSector.add(s);
+            }
+        }
+        return inSector;
+    }
+
+    private static void assertSameAsBruteForce(List<Summit> summits, Random rng, double lonFrom, double lonTo, double latFrom, double latTo) {
+        SummitIndex index = new SummitIndex(summits);
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            GeoPoint o = new GeoPoint(lonFrom + rng.nextDouble() * (lonTo - lonFrom), latFrom + rng.nextDouble() * (latTo - latFrom));
+            double maxDistance = 1_000 + rng.nextDouble() * 400_000;
+            double azimuth = rng.nextDouble() * 2 * PI;
+            double halfAngle = rng.nextInt(10) == 0 ? PI : rng.nextDouble() * PI / 2;
+            assertEquals(bruteForce(summits, o, maxDistance, azimuth, halfAngle),
+                    index.summitsInSector(o, maxDistance, azimuth, halfAngle));
+        }
+    }
+
+    @Test
+    public void summitsInSectorAreTheSameAsAllTheSummitsFiltered() {
+        Random rng = newRandom();
+        List<Summit> summits = randomSummits(rng, 2000, toRadians(5), toRadians(11), toRadians(45), toRadians(48));
+        assertSameAsBruteForce(summits, rng, toRadians(4), toRadians(12), toRadians(44), toRadians(49));
+    }
+
+    @Test
+    public void summitsInSectorWorkAcrossTheAntimeridian() {
+        Random rng = newRandom();
+        List<Summit> summits = randomSummits(rng, 1000, -PI, -PI + toRadians(3), toRadians(-2), toRadians(2));
+        summits.addAll(randomSummits(rng, 1000, PI - toRadians(3), PI, toRadians(-2), toRadians(2)));
+        assertSameAsBruteForce(summits, rng, PI - toRadians(2), PI, toRadians(-1), toRadians(1));
+        assertSameAsBruteForce(summits, rng, -PI, -PI + toRadians(2), toRadians(-1), toRadians(1));
+    }
+
+    @Test
+    public void summitsInSectorWorkNearAPole() {
+        Random rng = newRandom();
+        List<Summit> summits = randomSummits(rng, 2000, -PI, PI, toRadians(85), PI / 2);
+        assertSameAsBruteForce(summits, rng, -PI, PI, toRadians(87), toRadians(89.5));
+    }
+
+    @Test
+    public void summitsInSectorKeepTheOrderOfTheList() {
+        Random rng = newRandom();
+        List<Summit> summits = randomSummits(rng, 500, toRadians(6), toRadians(8), toRadians(46), toRadians(47));
+        Collections.shuffle(summits, rng);
+        List<Summit> all = new SummitIndex(summits).summitsInSector(new GeoPoint(toRadians(7), toRadians(46.5)), 500_000, 0, PI);
+        assertEquals(summits, all);
+    }
+
+    @Test
+    public void emptyIndexHasNoSummitInSector() {
+        assertTrue(new SummitIndex(new ArrayList<>()).summitsInSector(new GeoPoint(0, 0), 100_000, 0, PI).isEmpty());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullList() {
+        new SummitIndex(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void summitsInSectorFailsWithNegativeDistance() {
+        new SummitIndex(new ArrayList<>()).summitsInSector(new GeoPoint(0, 0), -1, 0, PI);
+    }
+}